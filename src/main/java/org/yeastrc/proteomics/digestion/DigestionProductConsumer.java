@@ -0,0 +1,22 @@
+package org.yeastrc.proteomics.digestion;
+
+/**
+ * Receives digestion products one at a time as a protein sequence is digested, without a
+ * {@link DigestionProduct} object being created for each one. See
+ * {@link DigestionUtils#digestProteinSequence(CharSequence, org.yeastrc.proteomics.digestion.protease.proteases.IProtease, DigestionParameters, java.util.Collection, java.util.Collection, DigestionProductConsumer)}.
+ */
+@FunctionalInterface
+public interface DigestionProductConsumer {
+
+    /**
+     * Accept a single digestion product.
+     *
+     * @param proteinPosition Position (inclusive) in the protein that this peptide starts. First position is 1.
+     * @param peptideLength The length of the peptide
+     * @param missedCleavages The number of missed cleavages in the peptide
+     * @param isNTerminal Whether the peptide is at the n-terminus of the protein
+     * @param isCTerminal Whether the peptide is at the c-terminus of the protein
+     */
+    void accept( int proteinPosition, int peptideLength, int missedCleavages, boolean isNTerminal, boolean isCTerminal );
+
+}
@@ -1,10 +1,10 @@
 package org.yeastrc.proteomics.digestion;
 
+import org.yeastrc.proteomics.digestion.protease.CompiledProtease;
 import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
-import org.yeastrc.proteomics.digestion.protease.ProteaseCutSite;
+import org.yeastrc.proteomics.digestion.protease.ProteaseCutSiteFinder;
 import org.yeastrc.proteomics.mass.MassUtils;
-import org.yeastrc.proteomics.peptide.peptide.Peptide;
-import org.yeastrc.proteomics.peptide.peptide.PeptideMassCalculator;
+import org.yeastrc.proteomics.peptide.peptide.ResidueMassTable;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -28,23 +28,15 @@ public class DigestionUtils {
      */
     public static List<Integer> getSortedCutSitesInProtein(String proteinSequence, IProtease protease, Collection<Integer> excludedSites ) {
 
-        List<Integer> cutSites = new ArrayList<>();
+        int[] foundCutSites = ProteaseCutSiteFinder.getSortedCutSites( protease, proteinSequence );
 
-        for (int zeroIndexPosition = 0; zeroIndexPosition < proteinSequence.length(); zeroIndexPosition++) {
+        List<Integer> cutSites = new ArrayList<>( foundCutSites.length );
 
-            // index in protein sequence, starting at one
-            int oneBasedIndexPosition = zeroIndexPosition + 1;
+        for( int cutPosition : foundCutSites ) {
 
-            // the position of the cut, which is the position of the residue the cut is AFTER
-            Integer cutPosition = getValidCutSite( proteinSequence, protease, oneBasedIndexPosition );
-
-            if( cutPosition != null && cutPosition != 0 && cutPosition < proteinSequence.length() ) {
-
-                if( excludedSites == null || !excludedSites.contains( cutPosition ) ) {
-                    cutSites.add(cutPosition);
-                }
+            if( excludedSites == null || !excludedSites.contains( cutPosition ) ) {
+                cutSites.add(cutPosition);
             }
-
         }
 
         return cutSites;
@@ -102,49 +94,144 @@ public class DigestionUtils {
 
         Collection<DigestionProduct> digestionProducts = new HashSet<>();
 
-        // sorted arraylist of cut sites in this protein sequence for this protease
-        List<Integer> sortedCutSites = getSortedCutSitesInProtein( proteinSequence, protease, excludedSites );
+        digestProteinSequence( proteinSequence, protease, parameters, excludedSites, requiredPositions,
+                ( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ->
+                        digestionProducts.add( getDigestionProduct( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ) );
+
+        return digestionProducts;
+    }
+
+    /**
+     * Digest the given protein sequence with the given protease and digestion parameters, passing each
+     * digestion product to the supplied consumer as it is found. No collections are built. Each distinct
+     * digestion product is passed to the consumer exactly once, ordered by start position and then by length.
+     *
+     * @param proteinSequence The protein sequence to be digested
+     * @param protease The protease doing the digesting
+     * @param parameters The filter parameters to determining whether or not to include a digestion product
+     * @param excludedSites A collection of sites that may not be cleaved (eg, PTM sites). Sites are numbered
+     *                      starting at 1 and represent the position of the residue to the left (n-terminus)
+     *                      of the cut site. E.g., an excluded site of 2 would prevent cuts after K in PKPTIDE
+     *                      Set to null to have no excluded sites
+     * @param requiredPositions A collection of protein positions (starting at 1) that the collection of returned
+     *                          digestion products must contain. Set to null to have no required positions
+     * @param consumer Receives the digestion products
+     * @see ProteinPositionSet
+     */
+    public static void digestProteinSequence( CharSequence proteinSequence,
+                                              IProtease protease,
+                                              DigestionParameters parameters,
+                                              Collection<Integer> excludedSites,
+                                              Collection<Integer> requiredPositions,
+                                              DigestionProductConsumer consumer ) {
+
+        // sorted cut sites in this protein sequence for this protease
+        int[] sortedCutSites = new int[ proteinSequence.length() ];
+        int numCutSites = ProteaseCutSiteFinder.findCutSites( CompiledProtease.getInstance( protease ), proteinSequence, sortedCutSites );
+
+        if( excludedSites != null ) {
+            numCutSites = removeExcludedSites( sortedCutSites, numCutSites, toProteinPositionSet( excludedSites ) );
+        }
+
+        ProteinPositionSet requiredPositionSet = requiredPositions != null ? toProteinPositionSet( requiredPositions ) : null;
+
+        // the mass of every candidate is taken from a single running sum of residue masses for this protein
+        CumulativeResidueMasses residueMasses = null;
+        if( parameters.getMaxPeptideMass() != null || parameters.getMinPeptideMass() != null ) {
+            residueMasses = new CumulativeResidueMasses( proteinSequence );
+        }
 
         // add n-terminal digestion products
-        digestionProducts.addAll( getDigestionProductsForStartPosition( proteinSequence, sortedCutSites, parameters, 1, requiredPositions ) );
+        digestFromStartPosition( proteinSequence, sortedCutSites, numCutSites, 0, 1, parameters, requiredPositionSet, residueMasses, consumer );
+
+        for( int i = 0; i < numCutSites; i++ ) {
 
-        for( int cutPosition : sortedCutSites ) {
+            // a protease may report the same cut position twice, which would give the same digestion products
+            if( i > 0 && sortedCutSites[ i ] == sortedCutSites[ i - 1 ] ) {
+                continue;
+            }
 
             // the start position of the digestion product in the protein sequence
-            int startPosition = cutPosition + 1;
+            int startPosition = sortedCutSites[ i ] + 1;
+
+            // the first cut site at or after the start position
+            int firstCutSiteIndex = i + 1;
+            while( firstCutSiteIndex < numCutSites && sortedCutSites[ firstCutSiteIndex ] < startPosition ) {
+                firstCutSiteIndex++;
+            }
 
-            digestionProducts.addAll( getDigestionProductsForStartPosition(proteinSequence, sortedCutSites, parameters, startPosition, requiredPositions)) ;
+            digestFromStartPosition( proteinSequence, sortedCutSites, numCutSites, firstCutSiteIndex, startPosition, parameters, requiredPositionSet, residueMasses, consumer );
         }
+    }
 
-        return digestionProducts;
+
+    /**
+     * Get the given positions as a ProteinPositionSet. Positions less than 1 can't match anything in a protein
+     * and are dropped.
+     */
+    private static ProteinPositionSet toProteinPositionSet( Collection<Integer> positions ) {
+
+        if( positions instanceof ProteinPositionSet ) {
+            return (ProteinPositionSet)positions;
+        }
+
+        return ProteinPositionSet.of( positions.stream().mapToInt( Integer::intValue ).filter( position -> position > 0 ).toArray() );
     }
 
+    private static int removeExcludedSites( int[] sortedCutSites, int numCutSites, ProteinPositionSet excludedSites ) {
 
-    private static Collection<DigestionProduct> getDigestionProductsForStartPosition( String proteinSequence,
-                                                                                      List<Integer> sortedCutSites,
-                                                                                      DigestionParameters parameters,
-                                                                                      int oneBasedStartPosition,
-                                                                                      Collection<Integer> requiredPositions ) {
+        int numKept = 0;
 
-        Collection<DigestionProduct> digestionProducts = new HashSet<>();
+        for( int i = 0; i < numCutSites; i++ ) {
+            if( !excludedSites.contains( sortedCutSites[ i ] ) ) {
+                sortedCutSites[ numKept++ ] = sortedCutSites[ i ];
+            }
+        }
 
-        int numMissedCleavages = 0;
+        return numKept;
+    }
 
-        for( int cutSitePosition : sortedCutSites ) {
 
-            // skip the cut sites preceding our starting position
-            if( cutSitePosition < oneBasedStartPosition ) {
-                continue;
+    private static void digestFromStartPosition( CharSequence proteinSequence,
+                                                 int[] sortedCutSites,
+                                                 int numCutSites,
+                                                 int firstCutSiteIndex,
+                                                 int oneBasedStartPosition,
+                                                 DigestionParameters parameters,
+                                                 ProteinPositionSet requiredPositions,
+                                                 CumulativeResidueMasses residueMasses,
+                                                 DigestionProductConsumer consumer ) {
+
+        int proteinLength = proteinSequence.length();
+        boolean isNTerminal = oneBasedStartPosition == 1;
+
+        // every digestion product from this start position must reach the first required position after it
+        int nextRequiredPosition = 0;
+        if( requiredPositions != null ) {
+
+            nextRequiredPosition = requiredPositions.getNextPosition( oneBasedStartPosition );
+
+            if( nextRequiredPosition > proteinLength ) {
+                return;
             }
+        }
+
+        int numMissedCleavages = 0;
 
-            if( digestionProductMeetsParameters( proteinSequence, oneBasedStartPosition, cutSitePosition, parameters, requiredPositions ) ) {
+        for( int i = firstCutSiteIndex; i < numCutSites; i++ ) {
 
-                int length = cutSitePosition - oneBasedStartPosition + 1;
-                DigestionProduct digestionProduct = getDigestionProduct( oneBasedStartPosition, length, numMissedCleavages, proteinSequence );
+            int cutSitePosition = sortedCutSites[ i ];
+
+            // peptides only get longer and heavier as they are extended, so no later candidate
+            // (including the c-terminal one) can be used
+            if( exceedsUpperBounds( oneBasedStartPosition, cutSitePosition, parameters, residueMasses ) ) {
+                return;
+            }
 
-                digestionProducts.add( digestionProduct );
-                //printJavaBuildCodeforDigestionProduct( digestionProduct );
+            if( digestionProductMeetsParameters( oneBasedStartPosition, cutSitePosition, parameters, nextRequiredPosition, residueMasses ) ) {
 
+                int length = cutSitePosition - oneBasedStartPosition + 1;
+                consumer.accept( oneBasedStartPosition, length, numMissedCleavages, isNTerminal, false );
             }
 
             numMissedCleavages++;
@@ -157,55 +244,41 @@ public class DigestionUtils {
         }
 
         // add c-terminal fragment if necessary (not over the num of allowable missed cleavages)
-        if( proteinSequence.length() > 0 && ( parameters.getNumMissedCleavages() == null || numMissedCleavages <= parameters.getNumMissedCleavages() ) ) {
-
-            if( digestionProductMeetsParameters( proteinSequence, oneBasedStartPosition, proteinSequence.length(), parameters, requiredPositions ) ) {
+        if( proteinLength > 0 && ( parameters.getNumMissedCleavages() == null || numMissedCleavages <= parameters.getNumMissedCleavages() ) ) {
 
-                int length = proteinSequence.length() - oneBasedStartPosition + 1;
-                DigestionProduct digestionProduct = getDigestionProduct( oneBasedStartPosition, length, numMissedCleavages, proteinSequence );
+            if( digestionProductMeetsParameters( oneBasedStartPosition, proteinLength, parameters, nextRequiredPosition, residueMasses ) ) {
 
-                digestionProducts.add(digestionProduct);
-                //printJavaBuildCodeforDigestionProduct( digestionProduct );
+                int length = proteinLength - oneBasedStartPosition + 1;
+                consumer.accept( oneBasedStartPosition, length, numMissedCleavages, isNTerminal, true );
             }
         }
-
-        return digestionProducts;
     }
 
 
-    private static DigestionProduct getDigestionProduct( int startPosition, int length, int missedCleavages, String proteinSequence ) {
+    private static DigestionProduct getDigestionProduct( int startPosition, int length, int missedCleavages, boolean isNTerminal, boolean isCTerminal ) {
 
         DigestionProduct dp = new DigestionProduct();
 
         dp.setProteinPosition( startPosition );
         dp.setPeptideLength( length );
         dp.setMissedCleavages( missedCleavages );
-
-        if( startPosition == 1 ) {
-            dp.setNTerminal( true );
-        } else {
-            dp.setCTerminal( false );
-        }
-
-        if( startPosition + length - 1 == proteinSequence.length() ) {
-            dp.setCTerminal( true );
-        } else {
-            dp.setCTerminal( false );
-        }
+        dp.setNTerminal( isNTerminal );
+        dp.setCTerminal( isCTerminal );
 
         return dp;
     }
 
 
-    private static boolean digestionProductMeetsParameters( String proteinSequence,
-                                                              int startPosition,
-                                                              int endPosition,
-                                                              DigestionParameters parameters,
-                                                              Collection<Integer> requiredPositions) {
+    private static boolean digestionProductMeetsParameters( int startPosition,
+                                                            int endPosition,
+                                                            DigestionParameters parameters,
+                                                            int nextRequiredPosition,
+                                                            CumulativeResidueMasses residueMasses ) {
 
         int length = endPosition - startPosition + 1;
 
-        if( requiredPositions != null && !digestionProductsContainsARequiredPosition( startPosition, endPosition, requiredPositions ) ) {
+        // the product must contain the first required position at or after its start (0 if none are required)
+        if( nextRequiredPosition > endPosition ) {
             return false;
         }
 
@@ -217,12 +290,9 @@ public class DigestionUtils {
             return false;
         }
 
-        if( parameters.getMaxPeptideMass() != null ||
-            parameters.getMinPeptideMass() != null ) {
+        if( residueMasses != null ) {
 
-            String peptideSequence = proteinSequence.substring( startPosition - 1, startPosition - 1 + length );
-            Peptide peptide = new Peptide( peptideSequence );
-            double mass = PeptideMassCalculator.getInstance().getMassForPeptide( peptide, MassUtils.MassType.MONOISOTOPIC );
+            double mass = residueMasses.getPeptideMass( startPosition, endPosition );
 
             if( parameters.getMaxPeptideMass() != null && mass > parameters.getMaxPeptideMass() ) {
                 return false;
@@ -237,182 +307,100 @@ public class DigestionUtils {
     }
 
     /**
-     * Return true if the supplied start/end positions define a range that includes at least
-     * one required position.
-     *
-     * @param startPosition
-     * @param endPosition
-     * @param requiredPositions
-     * @return
+     * Return true if the peptide from startPosition to endPosition is longer than the max peptide length or
+     * heavier than the max peptide mass. The mass bound is only used for proteins whose residues are all valid
+     * amino acids: in other proteins a longer candidate containing an unknown residue must still be checked
+     * against the parameters, so that it throws an InvalidAminoAcidException as it always has.
      */
-    private static boolean digestionProductsContainsARequiredPosition( int startPosition,
-                                                                       int endPosition,
-                                                                       Collection<Integer> requiredPositions ) {
-
-        for( int requiredPosition : requiredPositions ) {
-
-            if( startPosition <= requiredPosition && requiredPosition <= endPosition ) {
-                return true;
-            }
+    private static boolean exceedsUpperBounds( int startPosition,
+                                               int endPosition,
+                                               DigestionParameters parameters,
+                                               CumulativeResidueMasses residueMasses ) {
 
+        if( parameters.getMaxPeptideLength() != null && endPosition - startPosition + 1 > parameters.getMaxPeptideLength() ) {
+            return true;
         }
 
-        return false;
-    }
-
-
-    private static Integer getValidCutSite( String proteinSequence, IProtease protease, int oneBasedPosition ) {
-
-        for( ProteaseCutSite cutSite : protease.getCutSites() ) {
-
-            // indicated position contains valid residue and passes prefix/suffix tests
-            if (cutSite.getCutResidues().contains(proteinSequence.substring(oneBasedPosition - 1, oneBasedPosition)) &&
-                    passesPrefixTests(proteinSequence, cutSite, oneBasedPosition) &&
-                    passesSuffixTests(proteinSequence, cutSite, oneBasedPosition) ) {
-
-                if( cutSite.isCutAfter() ) {
-                    return oneBasedPosition;
-                } else {
-                    return oneBasedPosition - 1;
-                }
-            }
-        }
-
-        return null;
-    }
-
-
-    private static boolean passesPrefixTests( String proteinSequence, ProteaseCutSite cutSite, int position ) {
-
-        if( position == 1 ) { return true; }
-        if( position == proteinSequence.length() ) { return true; }
-
-        if( !hasRequiredPrefixes( proteinSequence, cutSite, position ) ) {
-            return false;
-        }
-
-        if( hasProhibitedPrefixes( proteinSequence, cutSite, position ) ) {
-            return false;
-        }
-
-        return true;
-    }
-
-    private static boolean passesSuffixTests( String proteinSequence, ProteaseCutSite cutSite, int position ) {
-
-        if( position == 1 ) { return true; }
-        if( position == proteinSequence.length() ) { return true; }
-
-        if( !hasRequiredSuffixes( proteinSequence, cutSite, position ) ) {
-            return false;
-        }
-
-        if( hasProhibitedSuffixes( proteinSequence, cutSite, position ) ) {
+        if( residueMasses == null || parameters.getMaxPeptideMass() == null || residueMasses.hasInvalidResidues() ) {
             return false;
         }
 
-        return true;
+        return residueMasses.getPeptideMass( startPosition, endPosition ) > parameters.getMaxPeptideMass();
     }
 
-    private static boolean proteinHasPrefixAtPosition( String proteinSequence, int position, String prefix ) {
-
-        // prefix is longer than the # of residues n-terminal of the position
-        if (prefix.length() >= position) {
-            return false;
-        }
-
-        int prefixStart = position - 1 - prefix.length();
-
-        // prefix is present
-        return proteinSequence.substring(prefixStart, prefixStart + prefix.length()).equals(prefix);
-
-    }
+    /**
+     * The running sum of monoisotopic residue masses along a protein, so the mass of any peptide in
+     * the protein is a single subtraction. Residues that are not valid amino acids contribute no mass,
+     * and asking for the mass of a peptide that contains one throws an InvalidAminoAcidException.
+     */
+    private static final class CumulativeResidueMasses {
 
-    private static boolean proteinHasSuffixAtPosition( String proteinSequence, int position, String suffix ) {
+        CumulativeResidueMasses( CharSequence proteinSequence ) {
 
-        // not enough residues at end of protein to contain this suffix, so nope
-        if( position + suffix.length() > proteinSequence.length() ) {
-            return false;
-        }
+            this.proteinSequence = proteinSequence;
+            this.cumulativeMasses = new double[ proteinSequence.length() + 1 ];
 
-        // suffix is present
-        return proteinSequence.substring(position, position + suffix.length()).equals(suffix);
+            int numInvalidResidues = 0;
 
-    }
+            for( int i = 0; i < proteinSequence.length(); i++ ) {
 
-    private static boolean hasRequiredPrefixes( String proteinSequence, ProteaseCutSite cutSite, int position ) {
+                double residueMass = _RESIDUE_MASSES.getResidueMass( proteinSequence.charAt( i ) );
 
-        if (cutSite.getRequiredNTermSequences() != null) {
+                if( Double.isNaN( residueMass ) ) {
 
-            for (String prefix : cutSite.getRequiredNTermSequences()) {
+                    // only track invalid residues for proteins that have them
+                    if( cumulativeInvalidResidues == null ) {
+                        cumulativeInvalidResidues = new int[ proteinSequence.length() + 1 ];
+                    }
 
-                if( proteinHasPrefixAtPosition( proteinSequence, position, prefix ) ) {
-                    return true;
+                    residueMass = 0.0;
+                    numInvalidResidues++;
                 }
-            }
-
-        } else {
-
-            // there are no required prefixes, so it has the required prefixes
-            return true;
-        }
-
-        // if here, no required prefixes were found
-        return false;
-    }
-
-    private static boolean hasProhibitedPrefixes( String proteinSequence, ProteaseCutSite cutSite, int position ) {
 
-        if( cutSite.getProhibitedNTermSequences() != null ) {
+                cumulativeMasses[ i + 1 ] = cumulativeMasses[ i ] + residueMass;
 
-            for (String prefix : cutSite.getProhibitedNTermSequences()) {
-
-                if( proteinHasPrefixAtPosition( proteinSequence, position, prefix ) ) {
-                    return true;
+                if( cumulativeInvalidResidues != null ) {
+                    cumulativeInvalidResidues[ i + 1 ] = numInvalidResidues;
                 }
             }
         }
 
-        // if here, then no prohibited prefixes were found
-        return false;
-    }
+        /**
+         * Whether the protein contains a residue that is not a valid amino acid
+         */
+        boolean hasInvalidResidues() {
+            return cumulativeInvalidResidues != null;
+        }
 
-    private static boolean hasRequiredSuffixes( String proteinSequence, ProteaseCutSite cutSite, int position ) {
+        /**
+         * Whether the peptide from startPosition to endPosition (inclusive, starting at 1) contains a residue that
+         * is not a valid amino acid
+         */
+        boolean containsInvalidResidue( int startPosition, int endPosition ) {
+            return cumulativeInvalidResidues != null && cumulativeInvalidResidues[ endPosition ] != cumulativeInvalidResidues[ startPosition - 1 ];
+        }
 
-        if (cutSite.getRequiredCTermSequences() != null) {
+        /**
+         * The monoisotopic mass of the peptide from startPosition to endPosition (inclusive, starting at 1)
+         */
+        double getPeptideMass( int startPosition, int endPosition ) {
 
-            for (String prefix : cutSite.getRequiredCTermSequences()) {
+            if( containsInvalidResidue( startPosition, endPosition ) ) {
 
-                if( proteinHasSuffixAtPosition( proteinSequence, position, prefix ) ) {
-                    return true;
-                }
+                // report the first bad residue the same way the mass calculator does
+                _RESIDUE_MASSES.getMassOfResidues( proteinSequence, startPosition - 1, endPosition );
             }
 
-        } else {
-
-            // there are no required suffixes, so it has the required suffixes
-            return true;
+            return cumulativeMasses[ endPosition ] - cumulativeMasses[ startPosition - 1 ] + _RESIDUE_MASSES.getWaterMass();
         }
 
-        // if here, no required suffixes were found
-        return false;
+        private final CharSequence proteinSequence;
+        private final double[] cumulativeMasses;
+        private int[] cumulativeInvalidResidues;
     }
 
-    private static boolean hasProhibitedSuffixes( String proteinSequence, ProteaseCutSite cutSite, int position ) {
-
-        if( cutSite.getProhibitedCTermSequences() != null ) {
-
-            for (String prefix : cutSite.getProhibitedCTermSequences()) {
-
-                if( proteinHasSuffixAtPosition( proteinSequence, position, prefix ) ) {
-                    return true;
-                }
-            }
-        }
+    private static final ResidueMassTable _RESIDUE_MASSES = ResidueMassTable.getInstance( MassUtils.MassType.MONOISOTOPIC );
 
-        // if here, then no prohibited prefixes were found
-        return false;
-    }
 
     /**
      * Used for building tests.
@@ -0,0 +1,153 @@
+package org.yeastrc.proteomics.digestion;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of protein positions (starting at 1), held as a sorted int array rather than as boxed
+ * Integers. Membership tests and finding the first position in a range are O(log n), and the memory used
+ * depends only on the number of positions, not on how large they are.
+ *
+ * Can be passed anywhere DigestionUtils takes excluded sites or required positions. Other collections
+ * passed there are converted to one of these once per protein.
+ */
+public class ProteinPositionSet extends AbstractSet<Integer> {
+
+    /**
+     * Get a set of the given protein positions
+     *
+     * @param positions The positions, starting at 1. May be in any order and contain duplicates.
+     * @return
+     * @throws IllegalArgumentException If a position is less than 1
+     */
+    public static ProteinPositionSet of( int... positions ) {
+
+        int[] sortedPositions = positions.clone();
+        Arrays.sort( sortedPositions );
+
+        return new ProteinPositionSet( sortedPositions );
+    }
+
+    /**
+     * Get a set of the given protein positions. If positions is already a ProteinPositionSet it is returned.
+     *
+     * @param positions The positions, starting at 1
+     * @return
+     * @throws IllegalArgumentException If a position is less than 1
+     */
+    public static ProteinPositionSet of( Collection<Integer> positions ) {
+
+        if( positions instanceof ProteinPositionSet ) {
+            return (ProteinPositionSet)positions;
+        }
+
+        int[] sortedPositions = new int[ positions.size() ];
+        int i = 0;
+
+        for( int position : positions ) {
+            sortedPositions[ i++ ] = position;
+        }
+
+        Arrays.sort( sortedPositions );
+
+        return new ProteinPositionSet( sortedPositions );
+    }
+
+    private ProteinPositionSet( int[] sortedPositions ) {
+
+        if( sortedPositions.length > 0 && sortedPositions[ 0 ] < 1 ) {
+            throw new IllegalArgumentException( "Protein positions start at 1, got: " + sortedPositions[ 0 ] );
+        }
+
+        // remove duplicates
+        int numPositions = 0;
+        for( int i = 0; i < sortedPositions.length; i++ ) {
+            if( i == 0 || sortedPositions[ i ] != sortedPositions[ i - 1 ] ) {
+                sortedPositions[ numPositions++ ] = sortedPositions[ i ];
+            }
+        }
+
+        this.sortedPositions = Arrays.copyOf( sortedPositions, numPositions );
+    }
+
+    /**
+     * Whether the given position is in this set
+     *
+     * @param position
+     * @return
+     */
+    public boolean contains( int position ) {
+        return Arrays.binarySearch( sortedPositions, position ) >= 0;
+    }
+
+    /**
+     * Get the smallest position in this set that is >= the given position
+     *
+     * @param position
+     * @return The position, or Integer.MAX_VALUE if there is none
+     */
+    public int getNextPosition( int position ) {
+
+        int index = Arrays.binarySearch( sortedPositions, position );
+
+        if( index < 0 ) {
+            index = -index - 1;
+        }
+
+        return index < sortedPositions.length ? sortedPositions[ index ] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Whether any position from startPosition to endPosition (inclusive) is in this set
+     *
+     * @param startPosition
+     * @param endPosition
+     * @return
+     */
+    public boolean containsAnyBetween( int startPosition, int endPosition ) {
+        return getNextPosition( startPosition ) <= endPosition;
+    }
+
+    @Override
+    public boolean contains( Object o ) {
+        return o instanceof Integer && contains( ( (Integer)o ).intValue() );
+    }
+
+    @Override
+    public int size() {
+        return sortedPositions.length;
+    }
+
+    /**
+     * Iterate over the positions in ascending order
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+
+        return new Iterator<Integer>() {
+
+            @Override
+            public boolean hasNext() {
+                return index < sortedPositions.length;
+            }
+
+            @Override
+            public Integer next() {
+
+                if( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+
+                return sortedPositions[ index++ ];
+            }
+
+            private int index = 0;
+        };
+    }
+
+    private final int[] sortedPositions;
+
+}
@@ -0,0 +1,349 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.yeastrc.proteomics.digestion.protease.CompiledProtease;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+import org.yeastrc.proteomics.fasta.FASTAEntry;
+import org.yeastrc.proteomics.fasta.FASTAReader;
+import org.yeastrc.proteomics.fasta.MappedFASTAFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Digests every protein in a proteome (e.g. a FASTA file) using a pool of threads. Proteins
+ * are read in batches, each batch is digested on the pool, and the digestion products are passed
+ * to the consumer on the calling thread in the same order as the proteins in the input. The order
+ * of the digestion products for a protein is that of
+ * {@link DigestionUtils#digestProteinSequence(CharSequence, IProtease, DigestionParameters, java.util.Collection, java.util.Collection, DigestionProductConsumer)},
+ * so the output is identical regardless of the number of threads used.
+ *
+ * Only a bounded number of batches are held in memory at any time, reading of the input waits
+ * for the consumer to catch up.
+ */
+public class ProteomeDigester {
+
+    /**
+     * Get a digester that runs on a new pool with the given number of threads. The pool is
+     * shut down at the end of each digestion.
+     *
+     * @param protease The protease doing the digesting
+     * @param parameters The filter parameters to determining whether or not to include a digestion product
+     * @param numThreads The number of threads to digest with
+     * @return
+     */
+    public static ProteomeDigester getInstance( IProtease protease, DigestionParameters parameters, int numThreads ) {
+
+        if( numThreads < 1 ) {
+            throw new IllegalArgumentException( "numThreads must be > 0" );
+        }
+
+        return new ProteomeDigester( protease, parameters, null, numThreads );
+    }
+
+    /**
+     * Get a digester that runs on the supplied pool. The pool is not shut down by the digester.
+     *
+     * @param protease The protease doing the digesting
+     * @param parameters The filter parameters to determining whether or not to include a digestion product
+     * @param pool The pool to digest on
+     * @return
+     */
+    public static ProteomeDigester getInstance( IProtease protease, DigestionParameters parameters, ForkJoinPool pool ) {
+        return new ProteomeDigester( protease, parameters, pool, pool.getParallelism() );
+    }
+
+    private ProteomeDigester( IProtease protease, DigestionParameters parameters, ForkJoinPool pool, int numThreads ) {
+        this.protease = CompiledProtease.getInstance( protease );
+        this.parameters = parameters;
+        this.pool = pool;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Digest every protein in the given FASTA file.
+     *
+     * @param fastaFile The FASTA file
+     * @param consumer Receives the digestion products, on the calling thread, in the order of the proteins in the file
+     * @return Counts and timing for the digestion
+     * @throws IOException If there is a problem reading the FASTA file
+     */
+    public ProteomeDigestionStatistics digestFASTAFile( File fastaFile, ProteomeDigestionConsumer consumer ) throws IOException {
+
+        try( FASTAReader reader = FASTAReader.getInstance( fastaFile ) ) {
+            return digestFASTA( reader, consumer );
+        }
+    }
+
+    /**
+     * Digest every protein read by the given FASTA reader. The reader is not closed.
+     *
+     * If reading fails part way through, no more digestion products are passed to the consumer,
+     * the batches still being digested are cancelled and the exception is thrown.
+     *
+     * @param reader The FASTA reader
+     * @param consumer Receives the digestion products, on the calling thread, in the order of the proteins read
+     * @return Counts and timing for the digestion
+     * @throws IOException If there is a problem reading the FASTA file
+     */
+    public ProteomeDigestionStatistics digestFASTA( FASTAReader reader, ProteomeDigestionConsumer consumer ) throws IOException {
+
+        FASTAEntryIterator proteins = new FASTAEntryIterator( reader );
+
+        try {
+            return digestProteins( proteins, consumer );
+        } catch( UncheckedIOException e ) {
+
+            if( proteins.exception != null && e.getCause() == proteins.exception ) {
+                throw proteins.exception;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Digest every protein in the given memory mapped FASTA file. Sequences are read directly from
+     * the mapped file.
+     *
+     * @param fastaFile The mapped FASTA file
+     * @param consumer Receives the digestion products, on the calling thread, in the order of the proteins in the file
+     * @return Counts and timing for the digestion
+     */
+    public ProteomeDigestionStatistics digestFASTA( MappedFASTAFile fastaFile, ProteomeDigestionConsumer consumer ) {
+        return digestProteins( fastaFile.iterator(), consumer );
+    }
+
+    /**
+     * Digest every protein returned by the given iterator. If the iterator throws, no more digestion
+     * products are passed to the consumer, the batches still being digested are cancelled and the
+     * exception is thrown.
+     *
+     * @param proteins The proteins to digest
+     * @param consumer Receives the digestion products, on the calling thread, in the order of the proteins
+     * @return Counts and timing for the digestion
+     * @throws IllegalStateException If there are more proteins than an int protein index can number
+     */
+    public ProteomeDigestionStatistics digestProteins( Iterator<FASTAEntry> proteins, ProteomeDigestionConsumer consumer ) {
+
+        long startTime = System.nanoTime();
+
+        ForkJoinPool digestionPool = this.pool != null ? this.pool : new ForkJoinPool( this.numThreads );
+
+        // batches that have been submitted but not yet passed to the consumer, in input order
+        ArrayDeque<ForkJoinTask<DigestedBatch>> pendingBatches = new ArrayDeque<>();
+        int maxPendingBatches = _PENDING_BATCHES_PER_THREAD * this.numThreads;
+
+        long numProteins = 0;
+        long numResidues = 0;
+        long numPeptides = 0;
+
+        try {
+
+            while( proteins.hasNext() ) {
+
+                List<FASTAEntry> batch = new ArrayList<>();
+                int batchResidues = 0;
+
+                while( proteins.hasNext() && batch.size() < _MAX_BATCH_PROTEINS && batchResidues < _MAX_BATCH_RESIDUES ) {
+
+                    FASTAEntry protein = proteins.next();
+
+                    batch.add( protein );
+                    batchResidues += protein.getSequence().length();
+                }
+
+                // the protein indexes passed to the consumer are ints
+                long lastProteinIndex = numProteins + batch.size() - 1;
+                if( lastProteinIndex > Integer.MAX_VALUE )
+                    throw new IllegalStateException( "The protein index would overflow int, at protein " + ( lastProteinIndex + 1 ) );
+
+                final int firstProteinIndex = (int)numProteins;
+
+                numProteins += batch.size();
+                numResidues += batchResidues;
+
+                pendingBatches.add( digestionPool.submit( () -> digestBatch( batch, firstProteinIndex ) ) );
+
+                // wait for the oldest batch to finish before reading any more
+                if( pendingBatches.size() >= maxPendingBatches ) {
+                    numPeptides += pendingBatches.poll().join().sendTo( consumer );
+                }
+            }
+
+            while( !pendingBatches.isEmpty() ) {
+                numPeptides += pendingBatches.poll().join().sendTo( consumer );
+            }
+
+        } finally {
+
+            for( ForkJoinTask<DigestedBatch> pendingBatch : pendingBatches ) {
+                pendingBatch.cancel( true );
+            }
+
+            if( this.pool == null ) {
+                digestionPool.shutdown();
+            }
+        }
+
+        return new ProteomeDigestionStatistics( numProteins, numResidues, numPeptides, System.nanoTime() - startTime );
+    }
+
+    private DigestedBatch digestBatch( List<FASTAEntry> proteins, int firstProteinIndex ) {
+
+        DigestedBatch digestedBatch = new DigestedBatch( proteins, firstProteinIndex );
+
+        for( int i = 0; i < proteins.size(); i++ ) {
+
+            DigestionUtils.digestProteinSequence( proteins.get( i ).getSequence(), this.protease, this.parameters, null, null, digestedBatch );
+            digestedBatch.endProtein( i );
+        }
+
+        return digestedBatch;
+    }
+
+
+    /**
+     * The digestion products of a batch of proteins, held in primitive arrays
+     */
+    private static final class DigestedBatch implements DigestionProductConsumer {
+
+        DigestedBatch( List<FASTAEntry> proteins, int firstProteinIndex ) {
+            this.proteins = proteins;
+            this.firstProteinIndex = firstProteinIndex;
+            this.proteinProductEnds = new int[ proteins.size() ];
+        }
+
+        @Override
+        public void accept( int proteinPosition, int peptideLength, int numMissedCleavages, boolean isNTerminal, boolean isCTerminal ) {
+
+            if( numProducts == proteinPositions.length ) {
+                int newLength = proteinPositions.length * 2;
+
+                proteinPositions = Arrays.copyOf( proteinPositions, newLength );
+                peptideLengths = Arrays.copyOf( peptideLengths, newLength );
+                missedCleavages = Arrays.copyOf( missedCleavages, newLength );
+                terminalFlags = Arrays.copyOf( terminalFlags, newLength );
+            }
+
+            proteinPositions[ numProducts ] = proteinPosition;
+            peptideLengths[ numProducts ] = peptideLength;
+            missedCleavages[ numProducts ] = numMissedCleavages;
+            terminalFlags[ numProducts ] = (byte)( ( isNTerminal ? _N_TERMINAL : 0 ) | ( isCTerminal ? _C_TERMINAL : 0 ) );
+
+            numProducts++;
+        }
+
+        void endProtein( int proteinIndexInBatch ) {
+            proteinProductEnds[ proteinIndexInBatch ] = numProducts;
+        }
+
+        /**
+         * Pass all digestion products in this batch to the consumer
+         *
+         * @return The number of digestion products passed to the consumer
+         */
+        int sendTo( ProteomeDigestionConsumer consumer ) {
+
+            int product = 0;
+
+            for( int i = 0; i < proteins.size(); i++ ) {
+
+                FASTAEntry protein = proteins.get( i );
+
+                for( ; product < proteinProductEnds[ i ]; product++ ) {
+
+                    consumer.accept( protein,
+                            firstProteinIndex + i,
+                            proteinPositions[ product ],
+                            peptideLengths[ product ],
+                            missedCleavages[ product ],
+                            ( terminalFlags[ product ] & _N_TERMINAL ) != 0,
+                            ( terminalFlags[ product ] & _C_TERMINAL ) != 0 );
+                }
+            }
+
+            return numProducts;
+        }
+
+        private final List<FASTAEntry> proteins;
+        private final int firstProteinIndex;
+        private final int[] proteinProductEnds;
+
+        private int numProducts;
+        private int[] proteinPositions = new int[ _INITIAL_BATCH_PRODUCTS ];
+        private int[] peptideLengths = new int[ _INITIAL_BATCH_PRODUCTS ];
+        private int[] missedCleavages = new int[ _INITIAL_BATCH_PRODUCTS ];
+        private byte[] terminalFlags = new byte[ _INITIAL_BATCH_PRODUCTS ];
+    }
+
+
+    /**
+     * Iterates over the entries of a FASTAReader. A read failure is thrown from hasNext() wrapped in
+     * an UncheckedIOException, and the original exception kept so that it can be rethrown by the caller.
+     */
+    private static final class FASTAEntryIterator implements Iterator<FASTAEntry> {
+
+        FASTAEntryIterator( FASTAReader reader ) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if( next == null && exception == null ) {
+                try {
+                    next = reader.readNext();
+                } catch( IOException e ) {
+                    exception = e;
+                }
+            }
+
+            if( exception != null ) {
+                throw new UncheckedIOException( exception );
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public FASTAEntry next() {
+
+            if( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+
+            FASTAEntry entry = next;
+            next = null;
+
+            return entry;
+        }
+
+        private final FASTAReader reader;
+        private FASTAEntry next;
+        private IOException exception;
+    }
+
+
+    private static final int _MAX_BATCH_PROTEINS = 512;
+    private static final int _MAX_BATCH_RESIDUES = 256 * 1024;
+    private static final int _PENDING_BATCHES_PER_THREAD = 4;
+    private static final int _INITIAL_BATCH_PRODUCTS = 1024;
+
+    private static final byte _N_TERMINAL = 1;
+    private static final byte _C_TERMINAL = 2;
+
+    private final CompiledProtease protease;
+    private final DigestionParameters parameters;
+    private final ForkJoinPool pool;
+    private final int numThreads;
+
+}
@@ -0,0 +1,30 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.yeastrc.proteomics.fasta.FASTAEntry;
+
+/**
+ * Receives the digestion products of every protein in a proteome. See {@link ProteomeDigester}.
+ */
+@FunctionalInterface
+public interface ProteomeDigestionConsumer {
+
+    /**
+     * Accept a single digestion product of a protein.
+     *
+     * @param protein The protein that was digested
+     * @param proteinIndex The index of the protein in the input, starting at 0
+     * @param proteinPosition Position (inclusive) in the protein that this peptide starts. First position is 1.
+     * @param peptideLength The length of the peptide
+     * @param missedCleavages The number of missed cleavages in the peptide
+     * @param isNTerminal Whether the peptide is at the n-terminus of the protein
+     * @param isCTerminal Whether the peptide is at the c-terminus of the protein
+     */
+    void accept( FASTAEntry protein,
+                 int proteinIndex,
+                 int proteinPosition,
+                 int peptideLength,
+                 int missedCleavages,
+                 boolean isNTerminal,
+                 boolean isCTerminal );
+
+}
@@ -0,0 +1,86 @@
+package org.yeastrc.proteomics.digestion;
+
+/**
+ * Counts and timing for a digestion of a proteome by a {@link ProteomeDigester}.
+ */
+public class ProteomeDigestionStatistics {
+
+    public ProteomeDigestionStatistics( long numProteins, long numResidues, long numPeptides, long elapsedNanos ) {
+        this.numProteins = numProteins;
+        this.numResidues = numResidues;
+        this.numPeptides = numPeptides;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * The number of proteins that were digested
+     *
+     * @return
+     */
+    public long getNumProteins() {
+        return numProteins;
+    }
+
+    /**
+     * The total number of residues in all proteins that were digested
+     *
+     * @return
+     */
+    public long getNumResidues() {
+        return numResidues;
+    }
+
+    /**
+     * The number of digestion products that were found
+     *
+     * @return
+     */
+    public long getNumPeptides() {
+        return numPeptides;
+    }
+
+    /**
+     * The wall clock time of the digestion, including reading the input and passing
+     * the digestion products to the consumer
+     *
+     * @return
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getProteinsPerSecond() {
+        return perSecond( numProteins );
+    }
+
+    public double getPeptidesPerSecond() {
+        return perSecond( numPeptides );
+    }
+
+    private double perSecond( long count ) {
+
+        if( elapsedNanos <= 0 ) {
+            return 0.0;
+        }
+
+        return count / ( elapsedNanos / 1E9 );
+    }
+
+    @Override
+    public String toString() {
+        return "ProteomeDigestionStatistics{" +
+                "numProteins=" + numProteins +
+                ", numResidues=" + numResidues +
+                ", numPeptides=" + numPeptides +
+                ", elapsedSeconds=" + ( elapsedNanos / 1E9 ) +
+                ", proteinsPerSecond=" + getProteinsPerSecond() +
+                ", peptidesPerSecond=" + getPeptidesPerSecond() +
+                '}';
+    }
+
+    private final long numProteins;
+    private final long numResidues;
+    private final long numPeptides;
+    private final long elapsedNanos;
+
+}
@@ -0,0 +1,131 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, for reporting percentiles. Latencies are counted in buckets
+ * that are about 3% wide, so recording is a single atomic increment and takes no locks. Percentiles are
+ * reported as the upper end of the bucket they fall in.
+ *
+ * May be recorded to from multiple threads.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Record one latency
+     *
+     * @param nanos
+     */
+    public void record( long nanos ) {
+        counts.incrementAndGet( getBucket( Math.max( 0, nanos ) ) );
+    }
+
+    /**
+     * The number of latencies recorded
+     *
+     * @return
+     */
+    public long getCount() {
+
+        long count = 0;
+        for( int i = 0; i < counts.length(); i++ ) {
+            count += counts.get( i );
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the latency that the given percentage of recorded latencies are at or below
+     *
+     * @param percentile From 0 to 100, e.g. 99.9
+     * @return The latency in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile( double percentile ) {
+
+        if( percentile < 0 || percentile > 100 ) {
+            throw new IllegalArgumentException( "percentile must be from 0 to 100, got: " + percentile );
+        }
+
+        long[] snapshot = new long[ counts.length() ];
+        long count = 0;
+
+        for( int i = 0; i < snapshot.length; i++ ) {
+            snapshot[ i ] = counts.get( i );
+            count += snapshot[ i ];
+        }
+
+        if( count == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long)Math.ceil( count * percentile / 100.0 ) );
+        long seen = 0;
+
+        for( int i = 0; i < snapshot.length; i++ ) {
+
+            seen += snapshot[ i ];
+
+            if( seen >= rank ) {
+                return getBucketMaximum( i );
+            }
+        }
+
+        return getBucketMaximum( snapshot.length - 1 );
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    public void reset() {
+        for( int i = 0; i < counts.length(); i++ ) {
+            counts.set( i, 0 );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", p50=" + getPercentile( 50 ) +
+                ", p90=" + getPercentile( 90 ) +
+                ", p99=" + getPercentile( 99 ) +
+                ", p99.9=" + getPercentile( 99.9 ) +
+                ", max=" + getPercentile( 100 ) +
+                '}';
+    }
+
+    /**
+     * Values under 32 get their own bucket, after that each power of 2 is split into 32 buckets
+     */
+    private static int getBucket( long nanos ) {
+
+        if( nanos < _SUB_BUCKETS ) {
+            return (int)nanos;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( nanos );
+        int subBucket = (int)( nanos >>> ( exponent - _SUB_BUCKET_BITS ) ) - _SUB_BUCKETS;
+
+        return _SUB_BUCKETS + ( exponent - _SUB_BUCKET_BITS ) * _SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketMaximum( int bucket ) {
+
+        if( bucket < _SUB_BUCKETS ) {
+            return bucket;
+        }
+
+        int shift = ( bucket - _SUB_BUCKETS ) / _SUB_BUCKETS;
+        int subBucket = ( bucket - _SUB_BUCKETS ) % _SUB_BUCKETS;
+
+        return ( ( (long)( _SUB_BUCKETS + subBucket + 1 ) ) << shift ) - 1;
+    }
+
+
+    private static final int _SUB_BUCKET_BITS = 5;
+    private static final int _SUB_BUCKETS = 1 << _SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( _SUB_BUCKETS + ( 63 - _SUB_BUCKET_BITS ) * _SUB_BUCKETS );
+
+}
@@ -0,0 +1,359 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import org.yeastrc.proteomics.digestion.ProteomeDigester;
+import org.yeastrc.proteomics.fasta.FASTAEntry;
+import org.yeastrc.proteomics.fasta.MappedFASTAFile;
+import org.yeastrc.proteomics.mass.MassTolerance;
+import org.yeastrc.proteomics.mass.MassUtils;
+import org.yeastrc.proteomics.peptide.peptide.ResidueMassTable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Finds the digested peptides with a neutral mass within a tolerance of a precursor mass. Every digestion
+ * product of a proteome is held in memory as a sorted double[] of monoisotopic masses, with parallel
+ * arrays of the protein, position and length of each peptide's sequence. Peptides are not deduplicated,
+ * each digestion product is a separate candidate.
+ *
+ * The candidates for a precursor are always a contiguous range of candidate indexes, which are passed to
+ * a {@link CandidateRangeConsumer}. Sorted lists of precursors can be queried in one merge sweep over the
+ * candidates. The latency of each precursor's query is recorded in a {@link LatencyHistogram}.
+ *
+ * Instances may be queried from multiple threads.
+ */
+public class PeptideCandidateSearcher {
+
+    /**
+     * Receives the candidates for a precursor
+     */
+    @FunctionalInterface
+    public interface CandidateRangeConsumer {
+
+        /**
+         * @param precursorIndex The index of the precursor in the query (always 0 for a single precursor)
+         * @param firstCandidateIndex The index of the first candidate within tolerance
+         * @param endCandidateIndex One past the index of the last candidate within tolerance, equal to
+         *                          firstCandidateIndex if there are none
+         */
+        void accept( int precursorIndex, int firstCandidateIndex, int endCandidateIndex );
+    }
+
+    /**
+     * Digest the given proteins and get a searcher for the resulting peptides. Peptides containing residues
+     * that are not valid amino acids have no mass and are left out.
+     *
+     * @param digester The digester to digest the proteins with
+     * @param proteins The proteins, numbered from 0 in the order they are returned
+     * @return
+     */
+    public static PeptideCandidateSearcher build( ProteomeDigester digester, Iterator<FASTAEntry> proteins ) {
+
+        CandidateArrays candidates = new CandidateArrays();
+
+        digester.digestProteins( proteins,
+                ( protein, proteinIndex, proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ->
+                        candidates.add( protein.getSequence(), proteinIndex, proteinPosition, peptideLength ) );
+
+        return new PeptideCandidateSearcher( candidates );
+    }
+
+    /**
+     * Digest the proteins in the given FASTA file and get a searcher for the resulting peptides.
+     *
+     * @param digester The digester to digest the proteins with
+     * @param fastaFile The proteins, numbered from 0 in the order they are in the file
+     * @return
+     */
+    public static PeptideCandidateSearcher build( ProteomeDigester digester, MappedFASTAFile fastaFile ) {
+        return build( digester, fastaFile.iterator() );
+    }
+
+    private PeptideCandidateSearcher( CandidateArrays candidates ) {
+
+        int n = candidates.numCandidates;
+
+        this.masses = Arrays.copyOf( candidates.masses, n );
+        this.proteinIndexes = Arrays.copyOf( candidates.proteinIndexes, n );
+        this.proteinPositions = Arrays.copyOf( candidates.proteinPositions, n );
+        this.peptideLengths = Arrays.copyOf( candidates.peptideLengths, n );
+
+        sortByMass( 0, n - 1 );
+    }
+
+    /**
+     * Pass the candidates within the given tolerance of the given precursor mass to the consumer.
+     *
+     * @param precursorMass The neutral mass of the precursor
+     * @param tolerance The tolerance, ppm tolerances are relative to the precursor mass
+     * @param consumer
+     */
+    public void query( double precursorMass, MassTolerance tolerance, CandidateRangeConsumer consumer ) {
+
+        long startTime = System.nanoTime();
+
+        int first = findFirstCandidate( tolerance.getMinMass( precursorMass ) );
+        int end = findEndCandidate( tolerance.getMaxMass( precursorMass ), first );
+
+        latencyHistogram.record( System.nanoTime() - startTime );
+
+        consumer.accept( 0, first, end );
+    }
+
+    /**
+     * Pass the candidates within the given tolerance of each of the given precursor masses to the consumer,
+     * in the order of the precursors. The precursors are answered in a single pass over the candidates.
+     *
+     * @param sortedPrecursorMasses The neutral masses of the precursors, in ascending order
+     * @param tolerance The tolerance, ppm tolerances are relative to each precursor mass
+     * @param consumer
+     * @throws IllegalArgumentException If the precursor masses are not sorted
+     */
+    public void queryBatch( double[] sortedPrecursorMasses, MassTolerance tolerance, CandidateRangeConsumer consumer ) {
+
+        for( int i = 1; i < sortedPrecursorMasses.length; i++ ) {
+            if( !( sortedPrecursorMasses[ i - 1 ] <= sortedPrecursorMasses[ i ] ) ) {
+                throw new IllegalArgumentException( "Precursor masses must be sorted in ascending order, they are not at index " + i );
+            }
+        }
+
+        // both ends of the window only move forward as the precursor mass increases
+        int first = 0;
+        int end = 0;
+
+        for( int i = 0; i < sortedPrecursorMasses.length; i++ ) {
+
+            long startTime = System.nanoTime();
+
+            first = gallopToMass( tolerance.getMinMass( sortedPrecursorMasses[ i ] ), first, false );
+            end = gallopToMass( tolerance.getMaxMass( sortedPrecursorMasses[ i ] ), Math.max( first, end ), true );
+
+            latencyHistogram.record( System.nanoTime() - startTime );
+
+            consumer.accept( i, first, end );
+        }
+    }
+
+    /**
+     * Get the index of the first candidate with a mass >= the given mass
+     *
+     * @param minMass
+     * @return The index, or getNumCandidates() if all candidates are lighter
+     */
+    public int findFirstCandidate( double minMass ) {
+        return searchMass( minMass, 0, masses.length, false );
+    }
+
+    /**
+     * The number of candidate peptides
+     *
+     * @return
+     */
+    public int getNumCandidates() {
+        return masses.length;
+    }
+
+    /**
+     * The monoisotopic neutral mass of the given candidate
+     *
+     * @param candidateIndex
+     * @return
+     */
+    public double getMass( int candidateIndex ) {
+        return masses[ candidateIndex ];
+    }
+
+    /**
+     * The index of the protein the given candidate was digested from, starting at 0
+     *
+     * @param candidateIndex
+     * @return
+     */
+    public int getProteinIndex( int candidateIndex ) {
+        return proteinIndexes[ candidateIndex ];
+    }
+
+    /**
+     * The position of the given candidate in its protein, starting at 1
+     *
+     * @param candidateIndex
+     * @return
+     */
+    public int getProteinPosition( int candidateIndex ) {
+        return proteinPositions[ candidateIndex ];
+    }
+
+    /**
+     * The length of the given candidate's sequence
+     *
+     * @param candidateIndex
+     * @return
+     */
+    public int getPeptideLength( int candidateIndex ) {
+        return peptideLengths[ candidateIndex ];
+    }
+
+    /**
+     * The latencies of all precursor queries made on this searcher
+     *
+     * @return
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    private int findEndCandidate( double maxMass, int from ) {
+        return searchMass( maxMass, from, masses.length, true );
+    }
+
+    /**
+     * Binary search [from, to) for the first candidate with a mass >= mass, or > mass if after is true
+     */
+    private int searchMass( double mass, int from, int to, boolean after ) {
+
+        int low = from;
+        int high = to;
+
+        while( low < high ) {
+
+            int mid = ( low + high ) >>> 1;
+
+            if( masses[ mid ] < mass || ( after && masses[ mid ] == mass ) ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Find the same position as searchMass( mass, from, length, after ), stepping forward from "from" in
+     * doubling steps first. This is a linear merge when precursors are dense relative to the candidates and
+     * a binary search when they are sparse.
+     */
+    private int gallopToMass( double mass, int from, boolean after ) {
+
+        int low = from;
+        int step = 1;
+
+        while( low + step < masses.length && ( masses[ low + step ] < mass || ( after && masses[ low + step ] == mass ) ) ) {
+            low += step;
+            step <<= 1;
+        }
+
+        return searchMass( mass, low, Math.min( low + step + 1, masses.length ), after );
+    }
+
+    /**
+     * Quicksort the candidates by mass, keeping the parallel arrays in step
+     */
+    private void sortByMass( int low, int high ) {
+
+        while( high - low > _INSERTION_SORT_SIZE ) {
+
+            double pivot = medianOfThree( masses[ low ], masses[ ( low + high ) >>> 1 ], masses[ high ] );
+
+            int i = low;
+            int j = high;
+
+            while( i <= j ) {
+
+                while( masses[ i ] < pivot ) i++;
+                while( masses[ j ] > pivot ) j--;
+
+                if( i <= j ) {
+                    swap( i++, j-- );
+                }
+            }
+
+            // recurse into the smaller side to bound the stack depth
+            if( j - low < high - i ) {
+                sortByMass( low, j );
+                low = i;
+            } else {
+                sortByMass( i, high );
+                high = j;
+            }
+        }
+
+        for( int i = low + 1; i <= high; i++ ) {
+            for( int j = i; j > low && masses[ j - 1 ] > masses[ j ]; j-- ) {
+                swap( j - 1, j );
+            }
+        }
+    }
+
+    private static double medianOfThree( double a, double b, double c ) {
+        return Math.max( Math.min( a, b ), Math.min( Math.max( a, b ), c ) );
+    }
+
+    private void swap( int i, int j ) {
+
+        double mass = masses[ i ]; masses[ i ] = masses[ j ]; masses[ j ] = mass;
+        int proteinIndex = proteinIndexes[ i ]; proteinIndexes[ i ] = proteinIndexes[ j ]; proteinIndexes[ j ] = proteinIndex;
+        int proteinPosition = proteinPositions[ i ]; proteinPositions[ i ] = proteinPositions[ j ]; proteinPositions[ j ] = proteinPosition;
+        int peptideLength = peptideLengths[ i ]; peptideLengths[ i ] = peptideLengths[ j ]; peptideLengths[ j ] = peptideLength;
+    }
+
+
+    /**
+     * Growable parallel arrays of candidates, in the order they were digested
+     */
+    private static final class CandidateArrays {
+
+        void add( CharSequence proteinSequence, int proteinIndex, int proteinPosition, int peptideLength ) {
+
+            // summed in the same order as PeptideMassCalculator, so the masses are identical
+            double mass = 0.0;
+
+            for( int i = proteinPosition - 1; i < proteinPosition - 1 + peptideLength; i++ ) {
+                mass += _RESIDUE_MASSES.getResidueMass( proteinSequence.charAt( i ) );
+            }
+
+            // a residue that is not a valid amino acid
+            if( Double.isNaN( mass ) ) {
+                return;
+            }
+
+            mass += _RESIDUE_MASSES.getWaterMass();
+
+            if( numCandidates == masses.length ) {
+                int newLength = masses.length * 2;
+
+                masses = Arrays.copyOf( masses, newLength );
+                proteinIndexes = Arrays.copyOf( proteinIndexes, newLength );
+                proteinPositions = Arrays.copyOf( proteinPositions, newLength );
+                peptideLengths = Arrays.copyOf( peptideLengths, newLength );
+            }
+
+            masses[ numCandidates ] = mass;
+            proteinIndexes[ numCandidates ] = proteinIndex;
+            proteinPositions[ numCandidates ] = proteinPosition;
+            peptideLengths[ numCandidates ] = peptideLength;
+
+            numCandidates++;
+        }
+
+        private int numCandidates;
+        private double[] masses = new double[ _INITIAL_CANDIDATES ];
+        private int[] proteinIndexes = new int[ _INITIAL_CANDIDATES ];
+        private int[] proteinPositions = new int[ _INITIAL_CANDIDATES ];
+        private int[] peptideLengths = new int[ _INITIAL_CANDIDATES ];
+    }
+
+
+    private static final ResidueMassTable _RESIDUE_MASSES = ResidueMassTable.getInstance( MassUtils.MassType.MONOISOTOPIC );
+
+    private static final int _INITIAL_CANDIDATES = 1024;
+    private static final int _INSERTION_SORT_SIZE = 16;
+
+    private final double[] masses;
+    private final int[] proteinIndexes;
+    private final int[] proteinPositions;
+    private final int[] peptideLengths;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+}
@@ -0,0 +1,345 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import org.yeastrc.proteomics.mass.MassUtils;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.peptide.ResidueMassTable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory mapped index of the distinct peptides in a proteome, as written by {@link PeptideIndexBuilder}.
+ * Peptides are numbered from 0 in order of monoisotopic mass, then sequence, so all the peptides in a mass
+ * window are a contiguous range found by binary search. Each peptide has a list of references to the proteins
+ * (numbered from 0 in the order they were digested) and positions (starting at 1) it is found at.
+ *
+ * Nothing is loaded onto the heap when the index is opened, only the values asked for are read from the
+ * mapped file. Instances may be read from multiple threads.
+ *
+ * File layout (big endian, each section 8 byte aligned):
+ * <pre>
+ * header      int magic, int version, int numProteins, int numPeptides,
+ *             long numReferences, long numSequenceBytes, long numProteinHeaderBytes
+ * double[numPeptides]      peptide masses
+ * long[numPeptides + 1]    offset of each peptide's sequence in the sequence bytes
+ * long[numPeptides + 1]    offset of each peptide's references in the references
+ * (int, int)[numReferences] protein index and protein position of each reference
+ * long[numProteins + 1]    offset of each protein's header in the protein header bytes
+ * byte[numSequenceBytes]   peptide sequences, padded to 8 bytes
+ * byte[numProteinHeaderBytes] protein headers, UTF-8
+ * </pre>
+ */
+public class PeptideIndex implements Closeable {
+
+    /**
+     * Memory map the given index file
+     *
+     * @param indexFile
+     * @return
+     * @throws IOException If the file can't be read or is not a peptide index
+     */
+    public static PeptideIndex open( File indexFile ) throws IOException {
+
+        FileChannel channel = FileChannel.open( indexFile.toPath(), StandardOpenOption.READ );
+
+        try {
+            return new PeptideIndex( channel );
+        } catch( IOException | RuntimeException e ) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private PeptideIndex( FileChannel channel ) throws IOException {
+
+        this.channel = channel;
+
+        long size = channel.size();
+
+        if( size < _HEADER_SIZE ) {
+            throw new IOException( "Not a peptide index, the file is too short." );
+        }
+
+        int numChunks = (int)( ( size + _CHUNK_SIZE - 1 ) >>> _CHUNK_BITS );
+        this.chunks = new MappedByteBuffer[ numChunks ];
+
+        for( int i = 0; i < numChunks; i++ ) {
+
+            long chunkStart = (long)i << _CHUNK_BITS;
+            long chunkSize = Math.min( _CHUNK_SIZE, size - chunkStart );
+
+            this.chunks[ i ] = channel.map( FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize );
+        }
+
+        if( getInt( 0 ) != _MAGIC ) {
+            throw new IOException( "Not a peptide index." );
+        }
+
+        if( getInt( 4 ) != _VERSION ) {
+            throw new IOException( "Unsupported peptide index version: " + getInt( 4 ) );
+        }
+
+        this.numProteins = getInt( 8 );
+        this.numPeptides = getInt( 12 );
+
+        long numReferences = getLong( 16 );
+        long numSequenceBytes = getLong( 24 );
+        long numProteinHeaderBytes = getLong( 32 );
+
+        this.massesStart = _HEADER_SIZE;
+        this.sequenceOffsetsStart = massesStart + 8L * numPeptides;
+        this.referenceOffsetsStart = sequenceOffsetsStart + 8L * ( numPeptides + 1 );
+        this.referencesStart = referenceOffsetsStart + 8L * ( numPeptides + 1 );
+        this.proteinHeaderOffsetsStart = referencesStart + 8L * numReferences;
+        this.sequencesStart = proteinHeaderOffsetsStart + 8L * ( numProteins + 1 );
+        this.proteinHeadersStart = sequencesStart + ( ( numSequenceBytes + 7 ) & ~7L );
+
+        if( proteinHeadersStart + numProteinHeaderBytes != size ) {
+            throw new IOException( "Peptide index is truncated or corrupt." );
+        }
+    }
+
+    /**
+     * The number of distinct peptides in this index
+     *
+     * @return
+     */
+    public int getNumPeptides() {
+        return numPeptides;
+    }
+
+    /**
+     * The number of proteins that were digested to build this index
+     *
+     * @return
+     */
+    public int getNumProteins() {
+        return numProteins;
+    }
+
+    /**
+     * Get the FASTA header of the given protein
+     *
+     * @param proteinIndex The index of the protein, starting at 0
+     * @return
+     */
+    public String getProteinHeader( int proteinIndex ) {
+
+        if( proteinIndex < 0 || proteinIndex >= numProteins ) {
+            throw new IndexOutOfBoundsException( "No protein at index " + proteinIndex + ", there are " + numProteins + " proteins." );
+        }
+
+        long start = getLong( proteinHeaderOffsetsStart + 8L * proteinIndex );
+        long end = getLong( proteinHeaderOffsetsStart + 8L * ( proteinIndex + 1 ) );
+
+        byte[] header = new byte[ (int)( end - start ) ];
+        for( int i = 0; i < header.length; i++ ) {
+            header[ i ] = getByte( proteinHeadersStart + start + i );
+        }
+
+        return new String( header, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Get the monoisotopic (neutral) mass of the given peptide
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @return
+     */
+    public double getPeptideMass( int peptideIndex ) {
+
+        checkPeptideIndex( peptideIndex );
+
+        return getDouble( massesStart + 8L * peptideIndex );
+    }
+
+    /**
+     * Get the length of the given peptide's sequence
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @return
+     */
+    public int getPeptideLength( int peptideIndex ) {
+
+        checkPeptideIndex( peptideIndex );
+
+        return (int)( getLong( sequenceOffsetsStart + 8L * ( peptideIndex + 1 ) ) - getLong( sequenceOffsetsStart + 8L * peptideIndex ) );
+    }
+
+    /**
+     * Get the sequence of the given peptide
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @return
+     */
+    public String getPeptideSequence( int peptideIndex ) {
+
+        int length = getPeptideLength( peptideIndex );
+        long start = sequencesStart + getLong( sequenceOffsetsStart + 8L * peptideIndex );
+
+        char[] sequence = new char[ length ];
+        for( int i = 0; i < length; i++ ) {
+            sequence[ i ] = (char)getByte( start + i );
+        }
+
+        return new String( sequence );
+    }
+
+    /**
+     * Get the number of protein positions the given peptide is found at
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @return
+     */
+    public int getNumProteinReferences( int peptideIndex ) {
+
+        checkPeptideIndex( peptideIndex );
+
+        return (int)( getLong( referenceOffsetsStart + 8L * ( peptideIndex + 1 ) ) - getLong( referenceOffsetsStart + 8L * peptideIndex ) );
+    }
+
+    /**
+     * Get the protein of one of the given peptide's protein references
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @param referenceIndex The index of the reference, from 0 to getNumProteinReferences( peptideIndex ) - 1
+     * @return The index of the protein, starting at 0
+     */
+    public int getReferenceProteinIndex( int peptideIndex, int referenceIndex ) {
+        return getInt( getReferenceOffset( peptideIndex, referenceIndex ) );
+    }
+
+    /**
+     * Get the position in the protein of one of the given peptide's protein references
+     *
+     * @param peptideIndex The index of the peptide, starting at 0
+     * @param referenceIndex The index of the reference, from 0 to getNumProteinReferences( peptideIndex ) - 1
+     * @return The position of the peptide in the protein, starting at 1
+     */
+    public int getReferenceProteinPosition( int peptideIndex, int referenceIndex ) {
+        return getInt( getReferenceOffset( peptideIndex, referenceIndex ) + 4 );
+    }
+
+    /**
+     * Get the index of the first peptide with a mass >= the given mass. The peptides in the mass window
+     * [minMass, maxMass] are those from findFirstPeptide( minMass ) up to (not including) the first with
+     * a mass > maxMass.
+     *
+     * @param minMass
+     * @return The index of the peptide, or getNumPeptides() if all peptides are lighter
+     */
+    public int findFirstPeptide( double minMass ) {
+
+        int low = 0;
+        int high = numPeptides;
+
+        while( low < high ) {
+
+            int mid = ( low + high ) >>> 1;
+
+            if( getDouble( massesStart + 8L * mid ) < minMass ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Find the given peptide sequence in this index
+     *
+     * @param sequence
+     * @return The index of the peptide, or -1 if it is not in the index
+     */
+    public int findPeptide( String sequence ) {
+
+        double mass;
+
+        try {
+            mass = ResidueMassTable.getInstance( MassUtils.MassType.MONOISOTOPIC ).getMass( sequence, 0, sequence.length() );
+        } catch( InvalidAminoAcidException e ) {
+            return -1;
+        }
+
+        // masses in the index were calculated the same way, so the peptide has exactly this mass
+        for( int i = findFirstPeptide( mass ); i < numPeptides && getDouble( massesStart + 8L * i ) == mass; i++ ) {
+
+            if( getPeptideSequence( i ).equals( sequence ) ) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long getReferenceOffset( int peptideIndex, int referenceIndex ) {
+
+        if( referenceIndex < 0 || referenceIndex >= getNumProteinReferences( peptideIndex ) ) {
+            throw new IndexOutOfBoundsException( "No reference at index " + referenceIndex + " for peptide " + peptideIndex );
+        }
+
+        return referencesStart + 8L * ( getLong( referenceOffsetsStart + 8L * peptideIndex ) + referenceIndex );
+    }
+
+    private void checkPeptideIndex( int peptideIndex ) {
+        if( peptideIndex < 0 || peptideIndex >= numPeptides ) {
+            throw new IndexOutOfBoundsException( "No peptide at index " + peptideIndex + ", there are " + numPeptides + " peptides." );
+        }
+    }
+
+    // sections are 8 byte aligned and chunks are a multiple of 8 bytes, so no value spans two chunks
+
+    private byte getByte( long offset ) {
+        return chunks[ (int)( offset >>> _CHUNK_BITS ) ].get( (int)( offset & _CHUNK_MASK ) );
+    }
+
+    private int getInt( long offset ) {
+        return chunks[ (int)( offset >>> _CHUNK_BITS ) ].getInt( (int)( offset & _CHUNK_MASK ) );
+    }
+
+    private long getLong( long offset ) {
+        return chunks[ (int)( offset >>> _CHUNK_BITS ) ].getLong( (int)( offset & _CHUNK_MASK ) );
+    }
+
+    private double getDouble( long offset ) {
+        return chunks[ (int)( offset >>> _CHUNK_BITS ) ].getDouble( (int)( offset & _CHUNK_MASK ) );
+    }
+
+
+    static final int _MAGIC = 0x50455049;  // "PEPI"
+    static final int _VERSION = 1;
+
+    private static final int _HEADER_SIZE = 40;
+
+    // files are mapped in 1GB chunks
+    private static final int _CHUNK_BITS = 30;
+    private static final long _CHUNK_SIZE = 1L << _CHUNK_BITS;
+    private static final long _CHUNK_MASK = _CHUNK_SIZE - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+
+    private final int numProteins;
+    private final int numPeptides;
+
+    private final long massesStart;
+    private final long sequenceOffsetsStart;
+    private final long referenceOffsetsStart;
+    private final long referencesStart;
+    private final long proteinHeaderOffsetsStart;
+    private final long sequencesStart;
+    private final long proteinHeadersStart;
+
+}
@@ -0,0 +1,274 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import org.yeastrc.proteomics.digestion.ProteomeDigester;
+import org.yeastrc.proteomics.fasta.FASTAEntry;
+import org.yeastrc.proteomics.fasta.MappedFASTAFile;
+import org.yeastrc.proteomics.mass.MassUtils;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.peptide.ResidueMassTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link PeptideIndex} file by digesting every protein in a proteome. Each distinct peptide
+ * sequence is stored once, with its monoisotopic mass and a reference to every protein and position it
+ * was found at. Peptides are sorted by mass, then sequence.
+ *
+ * Peptides containing residues that are not valid amino acids have no mass and are left out of the index.
+ * Note the digester will throw an InvalidAminoAcidException if its parameters have a min or max mass and
+ * such a peptide is considered.
+ *
+ * The distinct peptides are held on the heap while the index is built.
+ */
+public class PeptideIndexBuilder {
+
+    /**
+     * Get a builder that uses the given digester to digest the proteome
+     *
+     * @param digester
+     * @return
+     */
+    public static PeptideIndexBuilder getInstance( ProteomeDigester digester ) {
+        return new PeptideIndexBuilder( digester );
+    }
+
+    private PeptideIndexBuilder( ProteomeDigester digester ) {
+        this.digester = digester;
+    }
+
+    /**
+     * Build an index of the peptides in the given FASTA file
+     *
+     * @param fastaFile The FASTA file to digest
+     * @param indexFile The index file to write, replaced if it exists
+     * @return The number of distinct peptides in the index
+     * @throws IOException
+     */
+    public int build( File fastaFile, File indexFile ) throws IOException {
+
+        try( MappedFASTAFile mappedFile = MappedFASTAFile.open( fastaFile ) ) {
+            return build( mappedFile.iterator(), indexFile );
+        }
+    }
+
+    /**
+     * Build an index of the peptides in the given proteins
+     *
+     * @param proteins The proteins to digest
+     * @param indexFile The index file to write, replaced if it exists
+     * @return The number of distinct peptides in the index
+     * @throws IOException
+     */
+    public int build( Iterator<FASTAEntry> proteins, File indexFile ) throws IOException {
+
+        // record the headers as the proteins are read, so proteins without any peptides are included
+        List<String> proteinHeaders = new ArrayList<>();
+
+        Iterator<FASTAEntry> recordingProteins = new Iterator<FASTAEntry>() {
+
+            @Override
+            public boolean hasNext() {
+                return proteins.hasNext();
+            }
+
+            @Override
+            public FASTAEntry next() {
+                FASTAEntry protein = proteins.next();
+                proteinHeaders.add( protein.getHeader() );
+
+                return protein;
+            }
+        };
+
+        PeptideTable peptides = new PeptideTable();
+
+        digester.digestProteins( recordingProteins,
+                ( protein, proteinIndex, proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) -> {
+
+                    String sequence = protein.getSequence().subSequence( proteinPosition - 1, proteinPosition - 1 + peptideLength ).toString();
+                    peptides.addReference( sequence, proteinIndex, proteinPosition );
+                } );
+
+        return peptides.write( proteinHeaders, indexFile );
+    }
+
+
+    /**
+     * The distinct peptides found, each with a list of protein references held in primitive arrays
+     */
+    private static final class PeptideTable {
+
+        void addReference( String sequence, int proteinIndex, int proteinPosition ) {
+
+            Integer peptideId = peptideIds.get( sequence );
+
+            if( peptideId == null ) {
+
+                double mass;
+
+                try {
+                    mass = ResidueMassTable.getInstance( MassUtils.MassType.MONOISOTOPIC ).getMass( sequence, 0, sequence.length() );
+                } catch( InvalidAminoAcidException e ) {
+                    return;
+                }
+
+                peptideId = sequences.size();
+                peptideIds.put( sequence, peptideId );
+                sequences.add( sequence );
+
+                if( peptideId == masses.length ) {
+                    masses = Arrays.copyOf( masses, masses.length * 2 );
+                    firstReferences = Arrays.copyOf( firstReferences, firstReferences.length * 2 );
+                    lastReferences = Arrays.copyOf( lastReferences, lastReferences.length * 2 );
+                    referenceCounts = Arrays.copyOf( referenceCounts, referenceCounts.length * 2 );
+                }
+
+                masses[ peptideId ] = mass;
+                firstReferences[ peptideId ] = -1;
+            }
+
+            if( numReferences == referenceProteins.length ) {
+                referenceProteins = Arrays.copyOf( referenceProteins, referenceProteins.length * 2 );
+                referencePositions = Arrays.copyOf( referencePositions, referencePositions.length * 2 );
+                nextReferences = Arrays.copyOf( nextReferences, nextReferences.length * 2 );
+            }
+
+            int reference = numReferences++;
+
+            referenceProteins[ reference ] = proteinIndex;
+            referencePositions[ reference ] = proteinPosition;
+            nextReferences[ reference ] = -1;
+
+            // keep the references of each peptide in the order they were found
+            if( firstReferences[ peptideId ] == -1 ) {
+                firstReferences[ peptideId ] = reference;
+            } else {
+                nextReferences[ lastReferences[ peptideId ] ] = reference;
+            }
+
+            lastReferences[ peptideId ] = reference;
+            referenceCounts[ peptideId ]++;
+        }
+
+        /**
+         * Write the index file, with the peptides sorted by mass then sequence
+         *
+         * @return The number of peptides written
+         */
+        int write( List<String> proteinHeaders, File indexFile ) throws IOException {
+
+            int numPeptides = sequences.size();
+
+            Integer[] sortedIds = new Integer[ numPeptides ];
+            for( int i = 0; i < numPeptides; i++ ) {
+                sortedIds[ i ] = i;
+            }
+
+            Arrays.sort( sortedIds, ( a, b ) -> {
+                int c = Double.compare( masses[ a ], masses[ b ] );
+                return c != 0 ? c : sequences.get( a ).compareTo( sequences.get( b ) );
+            } );
+
+            byte[][] headerBytes = new byte[ proteinHeaders.size() ][];
+            long headerByteCount = 0;
+
+            for( int i = 0; i < headerBytes.length; i++ ) {
+                headerBytes[ i ] = proteinHeaders.get( i ).getBytes( StandardCharsets.UTF_8 );
+                headerByteCount += headerBytes[ i ].length;
+            }
+
+            long sequenceByteCount = 0;
+            for( String sequence : sequences ) {
+                sequenceByteCount += sequence.length();
+            }
+
+            try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( indexFile ), 1 << 16 ) ) ) {
+
+                out.writeInt( PeptideIndex._MAGIC );
+                out.writeInt( PeptideIndex._VERSION );
+                out.writeInt( headerBytes.length );
+                out.writeInt( numPeptides );
+                out.writeLong( numReferences );
+                out.writeLong( sequenceByteCount );
+                out.writeLong( headerByteCount );
+
+                for( int id : sortedIds ) {
+                    out.writeDouble( masses[ id ] );
+                }
+
+                long offset = 0;
+                for( int id : sortedIds ) {
+                    out.writeLong( offset );
+                    offset += sequences.get( id ).length();
+                }
+                out.writeLong( offset );
+
+                offset = 0;
+                for( int id : sortedIds ) {
+                    out.writeLong( offset );
+                    offset += referenceCounts[ id ];
+                }
+                out.writeLong( offset );
+
+                for( int id : sortedIds ) {
+                    for( int reference = firstReferences[ id ]; reference != -1; reference = nextReferences[ reference ] ) {
+                        out.writeInt( referenceProteins[ reference ] );
+                        out.writeInt( referencePositions[ reference ] );
+                    }
+                }
+
+                offset = 0;
+                for( byte[] header : headerBytes ) {
+                    out.writeLong( offset );
+                    offset += header.length;
+                }
+                out.writeLong( offset );
+
+                for( int id : sortedIds ) {
+                    out.writeBytes( sequences.get( id ) );
+                }
+
+                // keep the header bytes 8 byte aligned, as with every other section
+                for( long i = sequenceByteCount; i % 8 != 0; i++ ) {
+                    out.writeByte( 0 );
+                }
+
+                for( byte[] header : headerBytes ) {
+                    out.write( header );
+                }
+            }
+
+            return numPeptides;
+        }
+
+        private final Map<String, Integer> peptideIds = new HashMap<>();
+        private final List<String> sequences = new ArrayList<>();
+
+        private double[] masses = new double[ _INITIAL_PEPTIDES ];
+        private int[] firstReferences = new int[ _INITIAL_PEPTIDES ];
+        private int[] lastReferences = new int[ _INITIAL_PEPTIDES ];
+        private int[] referenceCounts = new int[ _INITIAL_PEPTIDES ];
+
+        private int numReferences;
+        private int[] referenceProteins = new int[ _INITIAL_PEPTIDES ];
+        private int[] referencePositions = new int[ _INITIAL_PEPTIDES ];
+        private int[] nextReferences = new int[ _INITIAL_PEPTIDES ];
+    }
+
+
+    private static final int _INITIAL_PEPTIDES = 1024;
+
+    private final ProteomeDigester digester;
+
+}
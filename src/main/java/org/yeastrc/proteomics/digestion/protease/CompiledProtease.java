@@ -0,0 +1,317 @@
+package org.yeastrc.proteomics.digestion.protease;
+
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A protease with its cut sites compiled into lookup tables, so that testing whether a
+ * position in a protein is cut does not need to interpret the String based definitions in
+ * {@link ProteaseCutSite}. Cut residues are held in a 128 entry bitmap and the required and
+ * prohibited N- and C-terminal sequences of each cut site are held in {@link FlankingSequences}
+ * tables.
+ *
+ * A CompiledProtease is itself an IProtease and may be used anywhere an IProtease is accepted.
+ * Instances are immutable and may be shared between threads.
+ */
+public class CompiledProtease implements IProtease {
+
+    private static final Map<IProtease, CompiledProtease> _COMPILED_PROTEASES = new ConcurrentHashMap<>();
+
+    /**
+     * Get the compiled form of the given protease. The protease is compiled the first time it
+     * is requested and the compiled form is reused after that.
+     *
+     * @param protease The protease
+     * @return The compiled protease
+     */
+    public static CompiledProtease getInstance( IProtease protease ) {
+
+        if( protease instanceof CompiledProtease ) {
+            return (CompiledProtease)protease;
+        }
+
+        return _COMPILED_PROTEASES.computeIfAbsent( protease, CompiledProtease::new );
+    }
+
+    private CompiledProtease( IProtease protease ) {
+
+        this.protease = protease;
+
+        List<ProteaseCutSite> orderedCutSites = new ArrayList<>( protease.getCutSites() );
+        List<List<Integer>> sitesForResidue = new ArrayList<>( TABLE_SIZE );
+
+        for( int i = 0; i < TABLE_SIZE; i++ ) {
+            sitesForResidue.add( null );
+        }
+
+        int numCutSites = orderedCutSites.size();
+
+        this.cutAfter = new boolean[ numCutSites ];
+        this.requiredNTermSequences = new FlankingSequences[ numCutSites ];
+        this.prohibitedNTermSequences = new FlankingSequences[ numCutSites ];
+        this.requiredCTermSequences = new FlankingSequences[ numCutSites ];
+        this.prohibitedCTermSequences = new FlankingSequences[ numCutSites ];
+
+        long[] residueBitmap = new long[ 2 ];
+
+        // preserve the iteration order of the protease's cut sites, the first cut site
+        // that matches a residue is the one that is used
+        for( int cutSiteIndex = 0; cutSiteIndex < numCutSites; cutSiteIndex++ ) {
+
+            ProteaseCutSite cutSite = orderedCutSites.get( cutSiteIndex );
+
+            this.cutAfter[ cutSiteIndex ] = cutSite.isCutAfter();
+            this.requiredNTermSequences[ cutSiteIndex ] = FlankingSequences.compile( cutSite.getRequiredNTermSequences() );
+            this.prohibitedNTermSequences[ cutSiteIndex ] = FlankingSequences.compile( cutSite.getProhibitedNTermSequences() );
+            this.requiredCTermSequences[ cutSiteIndex ] = FlankingSequences.compile( cutSite.getRequiredCTermSequences() );
+            this.prohibitedCTermSequences[ cutSiteIndex ] = FlankingSequences.compile( cutSite.getProhibitedCTermSequences() );
+
+            for( String residue : cutSite.getCutResidues() ) {
+
+                // only single residues can match a position in the protein
+                if( residue.length() != 1 ) {
+                    continue;
+                }
+
+                char c = residue.charAt( 0 );
+                if( c >= TABLE_SIZE ) {
+                    throw new IllegalArgumentException( "Unsupported cut residue: " + residue );
+                }
+
+                residueBitmap[ c >>> 6 ] |= 1L << c;
+
+                if( sitesForResidue.get( c ) == null ) {
+                    sitesForResidue.set( c, new ArrayList<>() );
+                }
+
+                if( !sitesForResidue.get( c ).contains( cutSiteIndex ) ) {
+                    sitesForResidue.get( c ).add( cutSiteIndex );
+                }
+            }
+        }
+
+        this.cutResidueBitmap = residueBitmap;
+        this.residueCutSites = new int[ TABLE_SIZE ][];
+
+        for( int i = 0; i < TABLE_SIZE; i++ ) {
+            if( sitesForResidue.get( i ) != null ) {
+                this.residueCutSites[ i ] = sitesForResidue.get( i ).stream().mapToInt( Integer::intValue ).toArray();
+            }
+        }
+    }
+
+    /**
+     * The cut sites of the protease this was compiled from.
+     */
+    @Override
+    public Collection<ProteaseCutSite> getCutSites() {
+        return this.protease.getCutSites();
+    }
+
+    /**
+     * Get the protease this was compiled from.
+     *
+     * @return
+     */
+    public IProtease getProtease() {
+        return protease;
+    }
+
+    /**
+     * Whether or not the given residue is a cut residue for any of the cut sites of this protease.
+     *
+     * @param residue
+     * @return
+     */
+    public boolean isCutResidue( char residue ) {
+        return residue < TABLE_SIZE && ( cutResidueBitmap[ residue >>> 6 ] & ( 1L << residue ) ) != 0;
+    }
+
+    /**
+     * Get the position of the cut made by this protease at the given position in the protein. The cut
+     * position is the position of the residue immediately preceding the cut (starting at 1), and may be 0
+     * or the length of the protein if the cut falls at either terminus.
+     *
+     * @param proteinSequence The protein sequence
+     * @param oneBasedPosition The position of the residue being tested, starting at 1
+     * @return The cut position, or -1 if the protease does not cut at this residue
+     */
+    public int getCutPosition( CharSequence proteinSequence, int oneBasedPosition ) {
+
+        char residue = proteinSequence.charAt( oneBasedPosition - 1 );
+
+        if( !isCutResidue( residue ) ) {
+            return -1;
+        }
+
+        for( int cutSiteIndex : this.residueCutSites[ residue ] ) {
+
+            if( passesFlankingTests( cutSiteIndex, proteinSequence, oneBasedPosition ) ) {
+                return this.cutAfter[ cutSiteIndex ] ? oneBasedPosition : oneBasedPosition - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean passesFlankingTests( int cutSiteIndex, CharSequence proteinSequence, int position ) {
+
+        // flanking sequences are not tested for the first and last residues
+        if( position == 1 || position == proteinSequence.length() ) {
+            return true;
+        }
+
+        FlankingSequences sequences = this.requiredNTermSequences[ cutSiteIndex ];
+        if( sequences != null && !sequences.precedes( proteinSequence, position ) ) {
+            return false;
+        }
+
+        sequences = this.prohibitedNTermSequences[ cutSiteIndex ];
+        if( sequences != null && sequences.precedes( proteinSequence, position ) ) {
+            return false;
+        }
+
+        sequences = this.requiredCTermSequences[ cutSiteIndex ];
+        if( sequences != null && !sequences.follows( proteinSequence, position ) ) {
+            return false;
+        }
+
+        sequences = this.prohibitedCTermSequences[ cutSiteIndex ];
+        if( sequences != null && sequences.follows( proteinSequence, position ) ) {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * A compiled list of required or prohibited flanking sequences for a cut site. Single residue
+     * sequences, by far the most common case, are held in a 128 entry bitmap so they can be tested
+     * with a single lookup. Longer sequences are held as char arrays.
+     */
+    static final class FlankingSequences {
+
+        static FlankingSequences compile( List<String> sequences ) {
+
+            if( sequences == null ) {
+                return null;
+            }
+
+            FlankingSequences compiled = new FlankingSequences();
+            List<char[]> longerSequences = new ArrayList<>();
+
+            for( String sequence : sequences ) {
+
+                if( sequence.length() == 0 ) {
+                    compiled.matchesEmpty = true;
+                } else if( sequence.length() == 1 && sequence.charAt( 0 ) < TABLE_SIZE ) {
+                    char c = sequence.charAt( 0 );
+                    compiled.singleResidueBitmap[ c >>> 6 ] |= 1L << c;
+                } else {
+                    longerSequences.add( sequence.toCharArray() );
+                }
+            }
+
+            compiled.longerSequences = longerSequences.toArray( new char[ 0 ][] );
+
+            return compiled;
+        }
+
+        /**
+         * Whether any of these sequences immediately precedes the residue at the given position
+         */
+        boolean precedes( CharSequence proteinSequence, int position ) {
+
+            if( matchesEmpty ) {
+                return true;
+            }
+
+            if( position > 1 && contains( proteinSequence.charAt( position - 2 ) ) ) {
+                return true;
+            }
+
+            for( char[] sequence : longerSequences ) {
+
+                // sequence is longer than the # of residues n-terminal of the position
+                if( sequence.length >= position ) {
+                    continue;
+                }
+
+                if( regionMatches( proteinSequence, position - 1 - sequence.length, sequence ) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Whether any of these sequences immediately follows the residue at the given position
+         */
+        boolean follows( CharSequence proteinSequence, int position ) {
+
+            if( matchesEmpty ) {
+                return true;
+            }
+
+            if( position < proteinSequence.length() && contains( proteinSequence.charAt( position ) ) ) {
+                return true;
+            }
+
+            for( char[] sequence : longerSequences ) {
+
+                // not enough residues at end of protein to contain this sequence
+                if( position + sequence.length > proteinSequence.length() ) {
+                    continue;
+                }
+
+                if( regionMatches( proteinSequence, position, sequence ) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean contains( char residue ) {
+            return residue < TABLE_SIZE && ( singleResidueBitmap[ residue >>> 6 ] & ( 1L << residue ) ) != 0;
+        }
+
+        private static boolean regionMatches( CharSequence proteinSequence, int start, char[] sequence ) {
+
+            for( int i = 0; i < sequence.length; i++ ) {
+                if( proteinSequence.charAt( start + i ) != sequence[ i ] ) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private boolean matchesEmpty;
+        private final long[] singleResidueBitmap = new long[ 2 ];
+        private char[][] longerSequences;
+    }
+
+
+    // residues are looked up by their char value, protein sequences are expected to be ASCII
+    static final int TABLE_SIZE = 128;
+
+    private final IProtease protease;
+
+    private final long[] cutResidueBitmap;
+    private final int[][] residueCutSites;
+
+    private final boolean[] cutAfter;
+    private final FlankingSequences[] requiredNTermSequences;
+    private final FlankingSequences[] prohibitedNTermSequences;
+    private final FlankingSequences[] requiredCTermSequences;
+    private final FlankingSequences[] prohibitedCTermSequences;
+
+}
@@ -1,4 +1,63 @@
 package org.yeastrc.proteomics.digestion.protease;
 
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.Arrays;
+
+/**
+ * Finds the cut sites for a protease in a protein sequence in a single pass over the
+ * sequence, using the lookup tables of a {@link CompiledProtease} so that scanning a
+ * protein does not create any objects per residue.
+ */
 public class ProteaseCutSiteFinder {
+
+    /**
+     * Find the cut sites in the protein sequence, ordered from smallest to largest. The cut position
+     * indicates the position in the protein of the residue immediately preceding the cut site
+     * (starting at 1). E.g. PE|PTIDE, the | would indicate a cut position of 2.
+     *
+     * @param protease The protease performing the digestion
+     * @param proteinSequence The protein sequence in the form of PEPTIDE, n->c terminus from left->right
+     * @param cutSites The array to write the cut sites into. Must be at least as long as the protein sequence.
+     * @return The number of cut sites written into cutSites
+     */
+    public static int findCutSites( CompiledProtease protease, CharSequence proteinSequence, int[] cutSites ) {
+
+        int length = proteinSequence.length();
+
+        if( cutSites.length < length ) {
+            throw new IllegalArgumentException( "cutSites must be at least as long as the protein sequence." );
+        }
+
+        int count = 0;
+
+        for( int oneBasedPosition = 1; oneBasedPosition <= length; oneBasedPosition++ ) {
+
+            // the position of the cut, which is the position of the residue the cut is AFTER
+            int cutPosition = protease.getCutPosition( proteinSequence, oneBasedPosition );
+
+            if( cutPosition > 0 && cutPosition < length ) {
+                cutSites[ count++ ] = cutPosition;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Find the cut sites in the protein sequence, ordered from smallest to largest. See
+     * {@link #findCutSites(CompiledProtease, CharSequence, int[])}.
+     *
+     * @param protease The protease performing the digestion
+     * @param proteinSequence The protein sequence in the form of PEPTIDE, n->c terminus from left->right
+     * @return The cut sites. An empty array if none are found.
+     */
+    public static int[] getSortedCutSites( IProtease protease, CharSequence proteinSequence ) {
+
+        int[] cutSites = new int[ proteinSequence.length() ];
+        int count = findCutSites( CompiledProtease.getInstance( protease ), proteinSequence, cutSites );
+
+        return Arrays.copyOf( cutSites, count );
+    }
+
 }
@@ -0,0 +1,42 @@
+package org.yeastrc.proteomics.fasta;
+
+/**
+ * A single entry (header and sequence) from a FASTA file.
+ */
+public class FASTAEntry {
+
+    public FASTAEntry( String header, CharSequence sequence ) {
+        this.header = header;
+        this.sequence = sequence;
+    }
+
+    /**
+     * The header line of this entry, without the leading >
+     *
+     * @return
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * The sequence of this entry, with all line breaks and whitespace removed
+     *
+     * @return
+     */
+    public CharSequence getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "FASTAEntry{" +
+                "header='" + header + '\'' +
+                ", sequenceLength=" + sequence.length() +
+                '}';
+    }
+
+    private final String header;
+    private final CharSequence sequence;
+
+}
@@ -0,0 +1,103 @@
+package org.yeastrc.proteomics.fasta;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the entries of a FASTA file one at a time. Any text before the first header
+ * line is ignored.
+ */
+public class FASTAReader implements Closeable {
+
+    /**
+     * Get a reader for the given FASTA file.
+     *
+     * @param fastaFile
+     * @return
+     * @throws IOException
+     */
+    public static FASTAReader getInstance( File fastaFile ) throws IOException {
+        return new FASTAReader( Files.newBufferedReader( fastaFile.toPath(), StandardCharsets.US_ASCII ) );
+    }
+
+    /**
+     * Get a FASTA reader that reads from the given reader.
+     *
+     * @param reader
+     * @return
+     */
+    public static FASTAReader getInstance( Reader reader ) {
+
+        if( reader instanceof BufferedReader ) {
+            return new FASTAReader( (BufferedReader)reader );
+        }
+
+        return new FASTAReader( new BufferedReader( reader ) );
+    }
+
+    private FASTAReader( BufferedReader reader ) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next entry in the FASTA file.
+     *
+     * @return The next entry, or null if there are no more entries
+     * @throws IOException
+     */
+    public FASTAEntry readNext() throws IOException {
+
+        // find the next header line
+        while( nextHeader == null ) {
+
+            String line = reader.readLine();
+
+            if( line == null ) {
+                return null;
+            }
+
+            if( line.startsWith( ">" ) ) {
+                nextHeader = line.substring( 1 ).trim();
+            }
+        }
+
+        String header = nextHeader;
+        nextHeader = null;
+
+        StringBuilder sequence = new StringBuilder();
+
+        String line;
+        while( ( line = reader.readLine() ) != null ) {
+
+            if( line.startsWith( ">" ) ) {
+                nextHeader = line.substring( 1 ).trim();
+                break;
+            }
+
+            for( int i = 0; i < line.length(); i++ ) {
+
+                char c = line.charAt( i );
+
+                if( !Character.isWhitespace( c ) ) {
+                    sequence.append( c );
+                }
+            }
+        }
+
+        return new FASTAEntry( header, sequence.toString() );
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private final BufferedReader reader;
+    private String nextHeader;
+
+}
@@ -0,0 +1,368 @@
+package org.yeastrc.proteomics.fasta;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A FASTA file that is memory mapped rather than read onto the heap. Opening the file makes a single
+ * pass over it to index where each entry's header and sequence are. Sequences are then available as
+ * {@link MappedProteinSequence} views that read residues straight from the mapped file, skipping line
+ * breaks, so they can be passed to the digestion and mass code without building a String for every
+ * protein. Files larger than 2GB are mapped in chunks.
+ *
+ * The index is held in primitive arrays (about 21 bytes per entry). Entries whose sequence lines are not
+ * all the same width, or that contain whitespace or blank lines inside the sequence, are copied onto the
+ * heap when their sequence is requested.
+ *
+ * Instances may be read from multiple threads once opened. Note that Java does not unmap the file until
+ * the mapped buffers are garbage collected, even after {@link #close()}.
+ */
+public class MappedFASTAFile implements Iterable<FASTAEntry>, Closeable {
+
+    /**
+     * Memory map and index the given FASTA file.
+     *
+     * @param fastaFile
+     * @return
+     * @throws IOException
+     */
+    public static MappedFASTAFile open( File fastaFile ) throws IOException {
+
+        FileChannel channel = FileChannel.open( fastaFile.toPath(), StandardOpenOption.READ );
+
+        try {
+            MappedFASTAFile mappedFile = new MappedFASTAFile( channel );
+            mappedFile.buildIndex();
+
+            return mappedFile;
+
+        } catch( IOException | RuntimeException e ) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedFASTAFile( FileChannel channel ) throws IOException {
+
+        this.channel = channel;
+        this.size = channel.size();
+
+        int numChunks = (int)( ( size + _CHUNK_SIZE - 1 ) >>> _CHUNK_BITS );
+        this.chunks = new MappedByteBuffer[ numChunks ];
+
+        for( int i = 0; i < numChunks; i++ ) {
+
+            long chunkStart = (long)i << _CHUNK_BITS;
+            long chunkSize = Math.min( _CHUNK_SIZE, size - chunkStart );
+
+            this.chunks[ i ] = channel.map( FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize );
+        }
+    }
+
+    /**
+     * The number of entries in this FASTA file
+     *
+     * @return
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * Get the header line of the given entry, without the leading >
+     *
+     * @param entryIndex The index of the entry, starting at 0
+     * @return
+     */
+    public String getHeader( int entryIndex ) {
+
+        checkEntryIndex( entryIndex );
+
+        long start = headerStarts[ entryIndex ];
+        byte[] header = new byte[ headerLengths[ entryIndex ] ];
+
+        for( int i = 0; i < header.length; i++ ) {
+            header[ i ] = byteAt( start + i );
+        }
+
+        return new String( header, StandardCharsets.ISO_8859_1 ).trim();
+    }
+
+    /**
+     * The number of residues in the sequence of the given entry
+     *
+     * @param entryIndex The index of the entry, starting at 0
+     * @return
+     */
+    public int getSequenceLength( int entryIndex ) {
+
+        checkEntryIndex( entryIndex );
+
+        return residueCounts[ entryIndex ];
+    }
+
+    /**
+     * Get a view of the sequence of the given entry. For entries with regular line widths the view
+     * reads directly from the mapped file.
+     *
+     * @param entryIndex The index of the entry, starting at 0
+     * @return
+     */
+    public MappedProteinSequence getSequence( int entryIndex ) {
+
+        checkEntryIndex( entryIndex );
+
+        int residueCount = residueCounts[ entryIndex ];
+        byte flags = entryFlags[ entryIndex ];
+
+        if( ( flags & _FLAG_IRREGULAR ) != 0 ) {
+            return new MappedProteinSequence( copyIrregularSequence( entryIndex ), 0, residueCount );
+        }
+
+        long sequenceStart = headerStarts[ entryIndex ] + headerLengths[ entryIndex ] + ( flags & _MASK_HEADER_EOL );
+        int lineWidth = lineWidths[ entryIndex ];
+        int lineStride = lineWidth + ( ( flags & _MASK_SEQUENCE_EOL ) >>> 2 );
+
+        return new MappedProteinSequence( this, sequenceStart, lineWidth, lineStride, 0, residueCount );
+    }
+
+    /**
+     * Get the given entry, with its sequence as a view on the mapped file
+     *
+     * @param entryIndex The index of the entry, starting at 0
+     * @return
+     */
+    public FASTAEntry getEntry( int entryIndex ) {
+        return new FASTAEntry( getHeader( entryIndex ), getSequence( entryIndex ) );
+    }
+
+    /**
+     * Iterate over the entries of this file in order
+     */
+    @Override
+    public Iterator<FASTAEntry> iterator() {
+
+        return new Iterator<FASTAEntry>() {
+
+            @Override
+            public boolean hasNext() {
+                return nextEntry < numEntries;
+            }
+
+            @Override
+            public FASTAEntry next() {
+
+                if( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+
+                return getEntry( nextEntry++ );
+            }
+
+            private int nextEntry = 0;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Get the byte at the given offset in the file
+     */
+    byte byteAt( long offset ) {
+        return chunks[ (int)( offset >>> _CHUNK_BITS ) ].get( (int)( offset & _CHUNK_MASK ) );
+    }
+
+    private void checkEntryIndex( int entryIndex ) {
+        if( entryIndex < 0 || entryIndex >= numEntries ) {
+            throw new IndexOutOfBoundsException( "No entry at index " + entryIndex + ", there are " + numEntries + " entries." );
+        }
+    }
+
+    /**
+     * Copy the residues of an entry whose lines can't be addressed arithmetically
+     */
+    private byte[] copyIrregularSequence( int entryIndex ) {
+
+        long start = headerStarts[ entryIndex ] + headerLengths[ entryIndex ] + ( entryFlags[ entryIndex ] & _MASK_HEADER_EOL );
+        long end = entryIndex + 1 < numEntries ? headerStarts[ entryIndex + 1 ] - 1 : size;
+
+        byte[] residues = new byte[ residueCounts[ entryIndex ] ];
+        int count = 0;
+
+        for( long offset = start; offset < end; offset++ ) {
+
+            byte b = byteAt( offset );
+
+            if( b > ' ' ) {
+                residues[ count++ ] = b;
+            }
+        }
+
+        return residues;
+    }
+
+    /**
+     * Make a single pass over the file finding the header and sequence of each entry
+     */
+    private void buildIndex() {
+
+        long offset = 0;
+
+        boolean inEntry = false;
+
+        // state for the sequence of the entry being read
+        int residueCount = 0;
+        int lineWidth = 0;
+        int sequenceEol = 0;
+        int previousLineLength = 0;
+        int previousLineEol = 0;
+        boolean sawBlankLine = false;
+        boolean irregular = false;
+
+        while( offset < size ) {
+
+            // find the end of this line, counting whitespace
+            long lineStart = offset;
+            int whitespace = 0;
+
+            byte b = 0;
+            while( offset < size && ( b = byteAt( offset ) ) != '\n' ) {
+
+                if( b <= ' ' ) {
+                    whitespace++;
+                }
+
+                offset++;
+            }
+
+            long lineEnd = offset;
+            int eol = 0;
+
+            if( offset < size ) {
+                eol = 1;
+                offset++;
+            }
+
+            // treat a \r before the \n as part of the line ending
+            if( lineEnd > lineStart && byteAt( lineEnd - 1 ) == '\r' ) {
+                lineEnd--;
+                eol++;
+                whitespace--;
+            }
+
+            int lineLength = (int)( lineEnd - lineStart );
+
+            if( lineLength > 0 && byteAt( lineStart ) == '>' ) {
+
+                if( inEntry ) {
+                    endEntry( residueCount, lineWidth, sequenceEol, irregular );
+                }
+
+                startEntry( lineStart + 1, lineLength - 1, eol );
+
+                inEntry = true;
+                residueCount = 0;
+                lineWidth = 0;
+                sequenceEol = 0;
+                previousLineLength = 0;
+                previousLineEol = 0;
+                sawBlankLine = false;
+                irregular = false;
+
+                continue;
+            }
+
+            // anything before the first header is ignored
+            if( !inEntry ) {
+                continue;
+            }
+
+            if( lineLength == whitespace ) {
+                sawBlankLine = true;
+                continue;
+            }
+
+            if( sawBlankLine || whitespace > 0 ) {
+                irregular = true;
+            }
+
+            if( residueCount == 0 ) {
+                lineWidth = lineLength;
+                sequenceEol = eol;
+            } else if( previousLineLength != lineWidth || previousLineEol != sequenceEol || lineLength > lineWidth ) {
+                irregular = true;
+            }
+
+            residueCount += lineLength - whitespace;
+            previousLineLength = lineLength;
+            previousLineEol = eol;
+        }
+
+        if( inEntry ) {
+            endEntry( residueCount, lineWidth, sequenceEol, irregular );
+        }
+    }
+
+    private void startEntry( long headerStart, int headerLength, int headerEol ) {
+
+        if( numEntries == headerStarts.length ) {
+
+            int newLength = headerStarts.length * 2;
+
+            headerStarts = Arrays.copyOf( headerStarts, newLength );
+            headerLengths = Arrays.copyOf( headerLengths, newLength );
+            residueCounts = Arrays.copyOf( residueCounts, newLength );
+            lineWidths = Arrays.copyOf( lineWidths, newLength );
+            entryFlags = Arrays.copyOf( entryFlags, newLength );
+        }
+
+        headerStarts[ numEntries ] = headerStart;
+        headerLengths[ numEntries ] = headerLength;
+        entryFlags[ numEntries ] = (byte)headerEol;
+    }
+
+    private void endEntry( int residueCount, int lineWidth, int sequenceEol, boolean irregular ) {
+
+        residueCounts[ numEntries ] = residueCount;
+        lineWidths[ numEntries ] = lineWidth;
+        entryFlags[ numEntries ] |= (byte)( ( sequenceEol << 2 ) | ( irregular ? _FLAG_IRREGULAR : 0 ) );
+
+        numEntries++;
+    }
+
+
+    // files are mapped in 1GB chunks
+    private static final int _CHUNK_BITS = 30;
+    private static final long _CHUNK_SIZE = 1L << _CHUNK_BITS;
+    private static final long _CHUNK_MASK = _CHUNK_SIZE - 1;
+
+    private static final int _INITIAL_ENTRIES = 1024;
+
+    // entry flags: bits 0-1 are the header line ending length, bits 2-3 the sequence line ending length
+    private static final int _MASK_HEADER_EOL = 0x3;
+    private static final int _MASK_SEQUENCE_EOL = 0xC;
+    private static final int _FLAG_IRREGULAR = 0x10;
+
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] chunks;
+
+    private int numEntries;
+    private long[] headerStarts = new long[ _INITIAL_ENTRIES ];
+    private int[] headerLengths = new int[ _INITIAL_ENTRIES ];
+    private int[] residueCounts = new int[ _INITIAL_ENTRIES ];
+    private int[] lineWidths = new int[ _INITIAL_ENTRIES ];
+    private byte[] entryFlags = new byte[ _INITIAL_ENTRIES ];
+
+}
@@ -0,0 +1,107 @@
+package org.yeastrc.proteomics.fasta;
+
+/**
+ * A protein sequence from a {@link MappedFASTAFile}. Residues are read directly from the mapped
+ * file, with line breaks skipped, so no copy of the sequence is made. Sub sequences are views on
+ * the same bytes.
+ */
+public class MappedProteinSequence implements CharSequence {
+
+    /**
+     * A view on a sequence in a mapped file, laid out in lines of lineWidth residues that start
+     * every lineStride bytes
+     */
+    MappedProteinSequence( MappedFASTAFile file, long sequenceStart, int lineWidth, int lineStride, int offset, int length ) {
+        this.file = file;
+        this.sequenceStart = sequenceStart;
+        this.lineWidth = lineWidth;
+        this.lineStride = lineStride;
+        this.residues = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * A view on residues that have been copied onto the heap
+     */
+    MappedProteinSequence( byte[] residues, int offset, int length ) {
+        this.file = null;
+        this.sequenceStart = 0;
+        this.lineWidth = 0;
+        this.lineStride = 0;
+        this.residues = residues;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Get the residue at the given index as a byte
+     *
+     * @param index The index of the residue, starting at 0
+     * @return
+     */
+    public byte byteAt( int index ) {
+
+        if( index < 0 || index >= length ) {
+            throw new IndexOutOfBoundsException( "index: " + index + ", length: " + length );
+        }
+
+        int residueIndex = offset + index;
+
+        if( residues != null ) {
+            return residues[ residueIndex ];
+        }
+
+        int line = residueIndex / lineWidth;
+        int column = residueIndex - ( line * lineWidth );
+
+        return file.byteAt( sequenceStart + ( (long)line * lineStride ) + column );
+    }
+
+    @Override
+    public char charAt( int index ) {
+        return (char)( byteAt( index ) & 0xFF );
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public MappedProteinSequence subSequence( int start, int end ) {
+
+        if( start < 0 || end > length || start > end ) {
+            throw new IndexOutOfBoundsException( "start: " + start + ", end: " + end + ", length: " + length );
+        }
+
+        if( residues != null ) {
+            return new MappedProteinSequence( residues, offset + start, end - start );
+        }
+
+        return new MappedProteinSequence( file, sequenceStart, lineWidth, lineStride, offset + start, end - start );
+    }
+
+    @Override
+    public String toString() {
+
+        char[] sequence = new char[ length ];
+
+        for( int i = 0; i < length; i++ ) {
+            sequence[ i ] = charAt( i );
+        }
+
+        return new String( sequence );
+    }
+
+    private final MappedFASTAFile file;
+    private final long sequenceStart;
+    private final int lineWidth;
+    private final int lineStride;
+
+    private final byte[] residues;
+
+    private final int offset;
+    private final int length;
+
+}
@@ -1,7 +1,12 @@
 package org.yeastrc.proteomics.ion.object;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.yeastrc.proteomics.ion.utils.IonUtils;
+import org.yeastrc.proteomics.mass.MassTolerance;
 import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
 import org.yeastrc.proteomics.spectrum.object.Peak;
 import org.yeastrc.proteomics.spectrum.object.Spectrum;
 
@@ -15,58 +20,331 @@ public class FragmentIonSearcher {
 	 * @throws Exception
 	 */
 	public Peak findPeak( Spectrum spectrum, FragmentIon calculatedIon ) throws Exception {
-		Peak match = null;
-		double limit = this.massTolerance / 2;
-		double calculatedIonMZ = calculatedIon.getMassToCharge( massType );
+		return findPeak( spectrum, calculatedIon.getMassToCharge( massType ) );
+	}
+	
+	/**
+	 * Find the matching peak corresponding to the supplied calculated m/z in the given spectrum. The whole peak
+	 * list is scanned, as it is when this is called. To search the same peaks for many m/z values, use
+	 * matchPeaks(), or search a ColumnarSpectrum made once from the spectrum with findPeakIndex().
+	 * @param spectrum The spectrum to search.
+	 * @param calculatedIonMZ The calculated m/z of the fragment ion.
+	 * @return The matching peak, null if no peak was found within the m/z tolerance
+	 */
+	public Peak findPeak( Spectrum spectrum, double calculatedIonMZ ) {
+		PeakScratch scratch = _PEAK_SCRATCH.get();
+		int numPeaks = scratch.load( spectrum.getPeaks() );
 		
-		for( Peak peak : spectrum.getPeaks() ) {
-			if( Math.abs( calculatedIonMZ - peak.getMassToCharge() ) <= limit ) {
-				
-				// this peak is within our m/z tolerance window
-				if( match == null ) {
-					match = peak;
-				} else {
-					
-					if( matchType == IonUtils.MATCH_TYPE_INTENSITY ) {
-						if( peak.getIntensity() > match.getIntensity() ) {
-								match = peak;
-						} else if( peak.getIntensity() == match.getIntensity() ) {
-						
-							// in the event that we're choosing by intensity, but two peaks in this range
-							// have the same intensity, pick the closest one.
-							if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) < 0 )
-								match = peak;
-						}
-						
-					} else if( matchType == IonUtils.MATCH_TYPE_PROXIMITY ) {
-						
-						if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) < 0 ) {
-							match = peak;
-						} else if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) == 0 ) {
-							
-							// in the even that we're choosing by proximity, but different peaks are the same distance
-							// from the calculated m/z, choose the most intense one of these
-							if( peak.getIntensity() > match.getIntensity() )
-								match = peak;
-						}
-						
-					}
-					
-				}
-				
+		// in list order, so the first of peaks of equal standing is chosen
+		int match = findMatch( calculatedIonMZ, tolerance.getDaltons( calculatedIonMZ ), scratch.massToCharges, scratch.intensities, null, null, 0, numPeaks );
+		
+		return match == -1 ? null : spectrum.getPeaks().get( match );
+	}
+	
+	/**
+	 * Find the index of the peak matching the supplied calculated fragment ion in the given columnar spectrum.
+	 * @param spectrum The spectrum to search.
+	 * @param calculatedIon The calculated fragment ion.
+	 * @return The index of the matching peak, -1 if no peak was found within the m/z tolerance
+	 * @throws Exception
+	 */
+	public int findPeakIndex( ColumnarSpectrum spectrum, FragmentIon calculatedIon ) throws Exception {
+		return findPeakIndex( spectrum, calculatedIon.getMassToCharge( massType ) );
+	}
+	
+	/**
+	 * Find the index of the peak matching the supplied calculated m/z in the given columnar spectrum. The same
+	 * peak is chosen as by findPeak() for the spectrum's toSpectrum().
+	 * @param spectrum The spectrum to search.
+	 * @param calculatedIonMZ The calculated m/z of the fragment ion.
+	 * @return The index of the matching peak, -1 if no peak was found within the m/z tolerance
+	 */
+	public int findPeakIndex( ColumnarSpectrum spectrum, double calculatedIonMZ ) {
+		return findPeakIndex( calculatedIonMZ, spectrum.getMassToCharges(), null, spectrum.getIntensities(), null );
+	}
+	
+	private int findPeakIndex( double calculatedIonMZ, double[] massToCharges, double[] intensities, float[] floatIntensities, int[] listIndexes ) {
+		double limit = tolerance.getDaltons( calculatedIonMZ );
+		
+		// the peaks within the tolerance are contiguous in m/z order. find the first with a binary search, then
+		// step back over any that rounding of calculatedIonMZ - limit left out
+		int first = findFirstPeak( massToCharges, calculatedIonMZ - limit );
+		while( first > 0 && Math.abs( calculatedIonMZ - massToCharges[ first - 1 ] ) <= limit )
+			first--;
+		
+		int end = findEndPeak( massToCharges, calculatedIonMZ, limit, first );
+		
+		return findMatch( calculatedIonMZ, limit, massToCharges, intensities, floatIntensities, listIndexes, first, end );
+	}
+	
+	/**
+	 * Find the matching peak for each of the given calculated m/z values in the given spectrum, in one pass over
+	 * the peaks. The same peaks are chosen as by findPeak(). The peak list is read as it is when this is called,
+	 * and sorted by m/z in scratch arrays of the calling thread if it isn't already.
+	 * @param sortedIonMZs The calculated m/z values, in ascending order (e.g. sorted fragment ion ladders)
+	 * @param numIons The number of m/z values in sortedIonMZs to match
+	 * @param spectrum The spectrum to search.
+	 * @param matchedPeakIndexes Receives the index in spectrum.getPeaks() of the peak matching each ion, or -1 if no peak is within the m/z tolerance
+	 * @param massErrors Receives the observed minus calculated m/z of each match, or NaN if there is none. May be null.
+	 * @return The number of ions matched
+	 * @throws IllegalArgumentException If the m/z values are not sorted
+	 */
+	public int matchPeaks( double[] sortedIonMZs, int numIons, Spectrum spectrum, int[] matchedPeakIndexes, double[] massErrors ) {
+		PeakScratch scratch = _PEAK_SCRATCH.get();
+		int numPeaks = scratch.load( spectrum.getPeaks() );
+		
+		if( scratch.isSorted( numPeaks ) )
+			return matchPeaks( sortedIonMZs, numIons, scratch.massToCharges, scratch.intensities, null, null, numPeaks, matchedPeakIndexes, massErrors );
+		
+		scratch.sortByMassToCharge( numPeaks );
+		
+		int numMatched = matchPeaks( sortedIonMZs, numIons, scratch.sortedMassToCharges, scratch.sortedIntensities, null, scratch.listIndexes, numPeaks,
+				matchedPeakIndexes, massErrors );
+		
+		// from indexes in the sorted arrays to indexes in the peak list
+		for( int i = 0; i < numIons; i++ ) {
+			if( matchedPeakIndexes[ i ] != -1 )
+				matchedPeakIndexes[ i ] = scratch.listIndexes[ matchedPeakIndexes[ i ] ];
+		}
+		
+		return numMatched;
+	}
+	
+	/**
+	 * Find the matching peak for each of the given calculated m/z values in the given columnar spectrum, in one
+	 * pass over the peaks. The same peaks are chosen as by findPeakIndex().
+	 * @param sortedIonMZs The calculated m/z values, in ascending order (e.g. sorted fragment ion ladders)
+	 * @param numIons The number of m/z values in sortedIonMZs to match
+	 * @param spectrum The spectrum to search.
+	 * @param matchedPeakIndexes Receives the index of the peak matching each ion, or -1 if no peak is within the m/z tolerance
+	 * @param massErrors Receives the observed minus calculated m/z of each match, or NaN if there is none. May be null.
+	 * @return The number of ions matched
+	 * @throws IllegalArgumentException If the m/z values are not sorted
+	 */
+	public int matchPeaks( double[] sortedIonMZs, int numIons, ColumnarSpectrum spectrum, int[] matchedPeakIndexes, double[] massErrors ) {
+		return matchPeaks( sortedIonMZs, numIons, spectrum.getMassToCharges(), null, spectrum.getIntensities(), null,
+				spectrum.getNumPeaks(), matchedPeakIndexes, massErrors );
+	}
+	
+	/**
+	 * Find the matching peak for each of the given calculated m/z values in the given peaks, in one pass over
+	 * the peaks. The same rules are used to choose between peaks as in findPeak(), peaks of equal standing are
+	 * chosen by their order in the arrays.
+	 * @param sortedIonMZs The calculated m/z values, in ascending order (e.g. sorted fragment ion ladders)
+	 * @param numIons The number of m/z values in sortedIonMZs to match
+	 * @param sortedPeakMZs The m/z of each peak, in ascending order
+	 * @param peakIntensities The intensity of each peak
+	 * @param numPeaks The number of peaks
+	 * @param matchedPeakIndexes Receives the index of the peak matching each ion, or -1 if no peak is within the m/z tolerance
+	 * @param massErrors Receives the observed minus calculated m/z of each match, or NaN if there is none. May be null.
+	 * @return The number of ions matched
+	 * @throws IllegalArgumentException If the m/z values are not sorted
+	 */
+	public int matchPeaks( double[] sortedIonMZs, int numIons, double[] sortedPeakMZs, double[] peakIntensities, int numPeaks, int[] matchedPeakIndexes, double[] massErrors ) {
+		
+		for( int i = 1; i < numPeaks; i++ ) {
+			if( !( sortedPeakMZs[ i - 1 ] <= sortedPeakMZs[ i ] ) )
+				throw new IllegalArgumentException( "Peak m/z values must be sorted in ascending order, they are not at index " + i );
+		}
+		
+		return matchPeaks( sortedIonMZs, numIons, sortedPeakMZs, peakIntensities, null, null, numPeaks, matchedPeakIndexes, massErrors );
+	}
+	
+	private int matchPeaks( double[] sortedIonMZs, int numIons, double[] massToCharges, double[] intensities, float[] floatIntensities, int[] listIndexes, int numPeaks,
+			int[] matchedPeakIndexes, double[] massErrors ) {
+		
+		for( int i = 1; i < numIons; i++ ) {
+			if( !( sortedIonMZs[ i - 1 ] <= sortedIonMZs[ i ] ) )
+				throw new IllegalArgumentException( "Ion m/z values must be sorted in ascending order, they are not at index " + i );
+		}
+		
+		int numMatched = 0;
+		
+		// both ends of the tolerance window only move forward as the ion m/z increases, for ppm tolerances too
+		int first = 0;
+		int end = 0;
+		
+		for( int i = 0; i < numIons; i++ ) {
+			
+			double calculatedIonMZ = sortedIonMZs[ i ];
+			double limit = tolerance.getDaltons( calculatedIonMZ );
+			
+			while( first < numPeaks && massToCharges[ first ] < calculatedIonMZ && Math.abs( calculatedIonMZ - massToCharges[ first ] ) > limit )
+				first++;
+			
+			end = findEndPeak( massToCharges, calculatedIonMZ, limit, Math.max( first, end ), numPeaks );
+			
+			int match = findMatch( calculatedIonMZ, limit, massToCharges, intensities, floatIntensities, listIndexes, first, end );
+			
+			matchedPeakIndexes[ i ] = match;
+			
+			if( massErrors != null )
+				massErrors[ i ] = match == -1 ? Double.NaN : massToCharges[ match ] - calculatedIonMZ;
+			
+			if( match != -1 )
+				numMatched++;
+		}
+		
+		return numMatched;
+	}
+	
+	/**
+	 * Choose the best match among the peaks from first to end (exclusive) within the m/z tolerance. The peaks
+	 * are compared in the order of their list indexes, or in array order if there are none.
+	 * @return The index of the matching peak, or -1 if none is within the m/z tolerance
+	 */
+	private int findMatch( double calculatedIonMZ, double limit, double[] massToCharges, double[] intensities, float[] floatIntensities, int[] listIndexes, int first, int end ) {
+		
+		int match = -1;
+		
+		if( listIndexes == null ) {
+			
+			for( int i = first; i < end; i++ ) {
+				if( Math.abs( calculatedIonMZ - massToCharges[ i ] ) <= limit )
+					match = getBetterMatch( match, i, calculatedIonMZ, massToCharges, intensities, floatIntensities );
+			}
+			
+		} else {
+			
+			// compare the peaks in the order they are in the peak list: sort the peaks in the window by their
+			// list index, each packed with its index in the arrays
+			long[] order = getOrderScratch( end - first );
+			int numPeaks = 0;
+			
+			for( int i = first; i < end; i++ ) {
+				if( Math.abs( calculatedIonMZ - massToCharges[ i ] ) <= limit )
+					order[ numPeaks++ ] = ( (long)listIndexes[ i ] << 32 ) | i;
 			}
+			
+			Arrays.sort( order, 0, numPeaks );
+			
+			for( int k = 0; k < numPeaks; k++ )
+				match = getBetterMatch( match, (int)order[ k ], calculatedIonMZ, massToCharges, intensities, floatIntensities );
 		}
 		
+		return match;
+	}
+	
+	/**
+	 * A scratch array for the thread, of at least the given length
+	 */
+	private static long[] getOrderScratch( int length ) {
+		
+		long[] order = _ORDER_SCRATCH.get();
+		
+		if( order.length < length ) {
+			order = new long[ Math.max( length, order.length * 2 ) ];
+			_ORDER_SCRATCH.set( order );
+		}
+		
+		return order;
+	}
+	
+	/**
+	 * Choose between the current match and a peak that is also within the m/z tolerance
+	 * @param match The index of the current match, or -1 if there is none yet
+	 * @param peak The index of the peak
+	 * @return The index of the match, the peak if it is a better match
+	 */
+	private int getBetterMatch( int match, int peak, double calculatedIonMZ, double[] massToCharges, double[] intensities, float[] floatIntensities ) {
+		
+		// this peak is within our m/z tolerance window
+		if( match == -1 ) {
+			return peak;
+		}
+		
+		if( matchType == IonUtils.MATCH_TYPE_INTENSITY ) {
+			if( getIntensity( peak, intensities, floatIntensities ) > getIntensity( match, intensities, floatIntensities ) ) {
+					return peak;
+			} else if( getIntensity( peak, intensities, floatIntensities ) == getIntensity( match, intensities, floatIntensities ) ) {
+			
+				// in the event that we're choosing by intensity, but two peaks in this range
+				// have the same intensity, pick the closest one.
+				if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - massToCharges[ peak ] ), Math.abs( calculatedIonMZ - massToCharges[ match ] ) ) < 0 )
+					return peak;
+			}
+			
+		} else if( matchType == IonUtils.MATCH_TYPE_PROXIMITY ) {
+			
+			if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - massToCharges[ peak ] ), Math.abs( calculatedIonMZ - massToCharges[ match ] ) ) < 0 ) {
+				return peak;
+			} else if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - massToCharges[ peak ] ), Math.abs( calculatedIonMZ - massToCharges[ match ] ) ) == 0 ) {
+				
+				// in the even that we're choosing by proximity, but different peaks are the same distance
+				// from the calculated m/z, choose the most intense one of these
+				if( getIntensity( peak, intensities, floatIntensities ) > getIntensity( match, intensities, floatIntensities ) )
+					return peak;
+			}
+			
+		}
 		
 		return match;
 	}
 	
+	/**
+	 * The intensity of a peak, from whichever of the intensity arrays is not null
+	 */
+	private static double getIntensity( int peak, double[] intensities, float[] floatIntensities ) {
+		return intensities != null ? intensities[ peak ] : floatIntensities[ peak ];
+	}
+	
+	private static int findEndPeak( double[] massToCharges, double calculatedIonMZ, double limit, int from ) {
+		return findEndPeak( massToCharges, calculatedIonMZ, limit, from, massToCharges.length );
+	}
+	
+	/**
+	 * Step forward from "from" to one past the last peak that is not above the m/z tolerance window
+	 */
+	private static int findEndPeak( double[] massToCharges, double calculatedIonMZ, double limit, int from, int numPeaks ) {
+		
+		int end = from;
+		while( end < numPeaks && ( massToCharges[ end ] <= calculatedIonMZ || Math.abs( calculatedIonMZ - massToCharges[ end ] ) <= limit ) )
+			end++;
+		
+		return end;
+	}
+	
+	/**
+	 * Binary search for the first of the sorted m/z values that is >= the given m/z
+	 * @param massToCharges
+	 * @param minMassToCharge
+	 * @return The index, or massToCharges.length if all are lower
+	 */
+	private static int findFirstPeak( double[] massToCharges, double minMassToCharge ) {
+		
+		int low = 0;
+		int high = massToCharges.length;
+		
+		while( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			
+			if( massToCharges[ mid ] < minMassToCharge )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * The full width of the m/z tolerance window, or NaN if the tolerance is in ppm
+	 * @return
+	 */
 	public double getMassTolerance() {
-		return massTolerance;
+		return tolerance.getUnit() == MassTolerance.Unit.DALTON ? tolerance.getValue() * 2 : Double.NaN;
 	}
 
-	private void setMassTolerance(double massTolerance) {
-		this.massTolerance = massTolerance;
+	/**
+	 * The m/z tolerance either side of the calculated m/z of an ion
+	 * @return
+	 */
+	public MassTolerance getTolerance() {
+		return tolerance;
+	}
+
+	private void setTolerance(MassTolerance tolerance) {
+		this.tolerance = tolerance;
 	}
 
 	public int getMatchType() {
@@ -81,6 +359,10 @@ public class FragmentIonSearcher {
 		return massType;
 	}
 
+	private void setMassType(MassType massType) {
+		this.massType = massType;
+	}
+
 	/**
 	 * Get a new fragment ion searcher with the specified search parameters.
 	 * @param massTolerance Any matched peak will be within +/- massTolerance/2 m/z (inclusive) of the calculated ion for the peptide
@@ -90,17 +372,132 @@ public class FragmentIonSearcher {
 	 * @return The searcher
 	 */
 	public static FragmentIonSearcher getInstance( double massTolerance, int matchType, MassType massType ) {
+		return getInstance( MassTolerance.daltons( massTolerance / 2 ), matchType, massType );
+	}
+	
+	/**
+	 * Get a new fragment ion searcher with the specified search parameters.
+	 * @param tolerance Any matched peak will be within this tolerance (inclusive) of the calculated m/z of the ion. A
+	 *                  ppm tolerance is relative to the calculated m/z, and its m/z window is calculated once per ion.
+	 * @param matchType Either IonUtils.MATCH_TYPE_PROXIMITY or IonUtils.MATCH_TYPE_INTENSITY for closest peak or
+	 *                  most intense peak within the mass tolerance window.
+	 * @param massType Either MassUtils.MASS_TYPE_MONOISOTOPIC or MassUtils.MASS_TYPE_AVERAGE
+	 * @return The searcher
+	 */
+	public static FragmentIonSearcher getInstance( MassTolerance tolerance, int matchType, MassType massType ) {
+		
+		if( tolerance == null )
+			throw new IllegalArgumentException( "tolerance cannot be null" );
+		
 		FragmentIonSearcher fis = new FragmentIonSearcher();
 		
-		fis.setMassTolerance( massTolerance);
+		fis.setTolerance( tolerance );
 		fis.setMatchType( matchType );
+		fis.setMassType( massType );
 		
 		return fis;
 	}
 	
 	private FragmentIonSearcher() { }
 	
-	private double massTolerance;
+	/**
+	 * The peaks of a Spectrum, copied into primitive arrays for a search. Reused by the thread for each search.
+	 */
+	private static final class PeakScratch {
+		
+		/**
+		 * Copy the m/z and intensity of the given peaks into massToCharges and intensities, in list order
+		 * @return The number of peaks
+		 */
+		int load( List<Peak> peaks ) {
+			
+			int numPeaks = peaks.size();
+			
+			if( this.massToCharges.length < numPeaks ) {
+				int length = Math.max( numPeaks, this.massToCharges.length * 2 );
+				
+				this.massToCharges = new double[ length ];
+				this.intensities = new double[ length ];
+				this.sortedMassToCharges = new double[ length ];
+				this.sortedIntensities = new double[ length ];
+				this.listIndexes = new int[ length ];
+				this.orderScratch = new int[ length ];
+			}
+			
+			int i = 0;
+			for( Peak peak : peaks ) {
+				this.massToCharges[ i ] = peak.getMassToCharge();
+				this.intensities[ i ] = peak.getIntensity();
+				i++;
+			}
+			
+			return i;
+		}
+		
+		boolean isSorted( int numPeaks ) {
+			
+			for( int i = 1; i < numPeaks; i++ ) {
+				if( Double.compare( this.massToCharges[ i - 1 ], this.massToCharges[ i ] ) > 0 )
+					return false;
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Sort the loaded peaks by m/z into sortedMassToCharges and sortedIntensities, with the index in the
+		 * peak list of each in listIndexes. Peaks with the same m/z stay in list order.
+		 */
+		void sortByMassToCharge( int numPeaks ) {
+			
+			int[] source = this.listIndexes;
+			int[] target = this.orderScratch;
+			
+			for( int i = 0; i < numPeaks; i++ )
+				source[ i ] = i;
+			
+			// a bottom up merge sort, which is stable
+			for( int width = 1; width < numPeaks; width *= 2 ) {
+				for( int low = 0; low < numPeaks; low += 2 * width ) {
+					int middle = Math.min( low + width, numPeaks );
+					int high = Math.min( low + 2 * width, numPeaks );
+					
+					int a = low;
+					int b = middle;
+					for( int k = low; k < high; k++ ) {
+						if( a < middle && ( b >= high || this.massToCharges[ source[ a ] ] <= this.massToCharges[ source[ b ] ] ) )
+							target[ k ] = source[ a++ ];
+						else
+							target[ k ] = source[ b++ ];
+					}
+				}
+				
+				int[] swap = source;
+				source = target;
+				target = swap;
+			}
+			
+			if( source != this.listIndexes )
+				System.arraycopy( source, 0, this.listIndexes, 0, numPeaks );
+			
+			for( int i = 0; i < numPeaks; i++ ) {
+				this.sortedMassToCharges[ i ] = this.massToCharges[ this.listIndexes[ i ] ];
+				this.sortedIntensities[ i ] = this.intensities[ this.listIndexes[ i ] ];
+			}
+		}
+		
+		private double[] massToCharges = new double[ 0 ];
+		private double[] intensities = new double[ 0 ];
+		private double[] sortedMassToCharges = new double[ 0 ];
+		private double[] sortedIntensities = new double[ 0 ];
+		private int[] listIndexes = new int[ 0 ];
+		private int[] orderScratch = new int[ 0 ];
+	}
+	
+	private static final ThreadLocal<long[]> _ORDER_SCRATCH = ThreadLocal.withInitial( () -> new long[ 64 ] );
+	private static final ThreadLocal<PeakScratch> _PEAK_SCRATCH = ThreadLocal.withInitial( PeakScratch::new );
+	
+	private MassTolerance tolerance;
 	private int matchType;
 	private MassType massType;
 }
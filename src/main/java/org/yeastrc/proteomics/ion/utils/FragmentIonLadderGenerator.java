@@ -0,0 +1,191 @@
+package org.yeastrc.proteomics.ion.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.ResidueMassTable;
+import org.yeastrc.proteomics.spectrum.ionmass.IonMassConstants;
+
+/**
+ * Calculates whole ladders of fragment ion m/z values for a peptide, without creating a FragmentIon (and
+ * sub-Peptide) per ion. The cumulative residue masses of the peptide are summed once, and each ion's mass is
+ * a difference of two of them, so a ladder takes O(n) time for a peptide of n residues.
+ *
+ * The ladder of an ion type has the ions with index 1 to n - 1, i.e. the fragments with 1 to n - 1 residues,
+ * in that order. N-terminal ions (a, b, c) include the N-terminal modification and C-terminal ions (x, y, z, z-dot)
+ * the C-terminal modification. Masses are calculated as in IonUtils.calculateMass().
+ *
+ * Safe to use from multiple threads.
+ */
+public class FragmentIonLadderGenerator {
+
+	/**
+	 * Get the ladder generator for the given mass type
+	 *
+	 * @param massType
+	 * @return
+	 */
+	public static FragmentIonLadderGenerator getInstance( MassType massType ) {
+
+		if( massType == null )
+			throw new IllegalArgumentException( "massType cannot be null" );
+
+		return _INSTANCES[ massType.ordinal() ];
+	}
+
+	private FragmentIonLadderGenerator( MassType massType ) {
+
+		this.massType = massType;
+
+		double carbon = AtomUtils.ATOM_CARBON.getMass( massType );
+		double hydrogen = AtomUtils.ATOM_HYDROGEN.getMass( massType );
+		double nitrogen = AtomUtils.ATOM_NITROGEN.getMass( massType );
+		double oxygen = AtomUtils.ATOM_OXYGEN.getMass( massType );
+
+		// the mass added to the residues of each ion type, as in IonUtils.calculateMass()
+		this.ionTypeOffsets = new double[ _NUM_ION_TYPES ];
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_A ] = -( carbon + oxygen );
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_B ] = 0.0;
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_C ] = nitrogen + ( 3 * hydrogen );
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_X ] = carbon + ( 2 * oxygen );
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_Y ] = oxygen + ( 2 * hydrogen );
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_Z ] = oxygen - nitrogen - hydrogen;
+		this.ionTypeOffsets[ IonUtils.ION_TYPE_Z_DOT ] = oxygen - nitrogen;
+	}
+
+	/**
+	 * Get the m/z of the ions with index 1 to n - 1 of the given type and charge for the given peptide
+	 *
+	 * @param peptide
+	 * @param ionType e.g. IonUtils.ION_TYPE_B
+	 * @param charge
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public double[] getLadder( Peptide peptide, int ionType, int charge ) throws InvalidAminoAcidException {
+
+		double[] massToCharges = new double[ Math.max( peptide.getSequence().length() - 1, 0 ) ];
+		getLadders( peptide, new int[] { ionType }, new int[] { charge }, massToCharges );
+
+		return massToCharges;
+	}
+
+	/**
+	 * Calculate the m/z of the ions of each of the given types and charges for the given peptide into the given
+	 * array. The ladder of the first ion type at the first charge comes first, then the first ion type at the
+	 * second charge, and so on, each with n - 1 ions in order of index. The cumulative residue masses are
+	 * summed once for all the ladders. Nothing is allocated.
+	 *
+	 * @param peptide
+	 * @param ionTypes e.g. IonUtils.ION_TYPE_B
+	 * @param charges Each must be >= 1
+	 * @param massToCharges Receives the m/z values, must have room for ionTypes.length * charges.length * ( n - 1 )
+	 * @return The number of m/z values calculated
+	 * @throws InvalidAminoAcidException
+	 */
+	public int getLadders( Peptide peptide, int[] ionTypes, int[] charges, double[] massToCharges ) throws InvalidAminoAcidException {
+
+		for( int ionType : ionTypes ) {
+			if( ionType < 0 || ionType >= _NUM_ION_TYPES )
+				throw new IllegalArgumentException( "Ion type is not supported: " + ionType );
+		}
+
+		for( int charge : charges ) {
+			if( charge < 1 )
+				throw new IllegalArgumentException( "Charge can not be less than 1." );
+		}
+
+		int length = peptide.getSequence().length();
+		int ladderLength = Math.max( length - 1, 0 );
+		int total = ionTypes.length * charges.length * ladderLength;
+
+		if( massToCharges.length < total )
+			throw new IllegalArgumentException( "Need room for " + total + " m/z values, the array has " + massToCharges.length );
+
+		double[] prefixMasses = getPrefixMasses( peptide, length );
+		double peptideResidueMass = prefixMasses[ length + 1 ];
+
+		int offset = 0;
+
+		for( int ionType : ionTypes ) {
+
+			boolean isNTerminal = ionType == IonUtils.ION_TYPE_A || ionType == IonUtils.ION_TYPE_B || ionType == IonUtils.ION_TYPE_C;
+
+			for( int charge : charges ) {
+
+				double addedMass = ionTypeOffsets[ ionType ] + charge * IonMassConstants.PROTON;
+
+				for( int index = 1; index <= ladderLength; index++ ) {
+
+					// the N-terminal fragment has the first index residues, the C-terminal fragment the last index residues
+					double residueMass = isNTerminal ? prefixMasses[ index ] : peptideResidueMass - prefixMasses[ length - index ];
+
+					massToCharges[ offset++ ] = ( residueMass + addedMass ) / charge;
+				}
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Sum the residue and modification masses of the peptide into a reused array. Element i is the mass of the
+	 * first i residues and the N-terminal modification, element n + 1 the mass of all residues and modifications.
+	 */
+	private double[] getPrefixMasses( Peptide peptide, int length ) {
+
+		double[] prefixMasses = _PREFIX_MASSES.get();
+
+		if( prefixMasses.length < length + 2 ) {
+			prefixMasses = new double[ Math.max( length + 2, prefixMasses.length * 2 ) ];
+			_PREFIX_MASSES.set( prefixMasses );
+		}
+
+		String sequence = peptide.getSequence();
+		ResidueMassTable residueMasses = ResidueMassTable.getInstance( massType, peptide.getLabel() );
+
+		// throws the usual exception if there is an invalid residue
+		residueMasses.getMassOfResidues( sequence, 0, length );
+
+		Arrays.fill( prefixMasses, 0, length + 2, 0.0 );
+
+		Map<Integer, Double> modificationMasses = peptide.getModificationMasses();
+		if( modificationMasses != null ) {
+			for( Map.Entry<Integer, Double> modification : modificationMasses.entrySet() ) {
+				// stored at the position's own element for now, the C-terminus at n + 1
+				int position = Math.min( Math.max( modification.getKey(), 0 ), length + 1 );
+				prefixMasses[ position ] += modification.getValue();
+			}
+		}
+
+		for( int i = 1; i <= length; i++ )
+			prefixMasses[ i ] += prefixMasses[ i - 1 ] + residueMasses.getResidueMass( sequence.charAt( i - 1 ) );
+
+		prefixMasses[ length + 1 ] += prefixMasses[ length ];
+
+		return prefixMasses;
+	}
+
+
+	private static final int _NUM_ION_TYPES = 7;
+
+	private static final FragmentIonLadderGenerator[] _INSTANCES;
+
+	static {
+		MassType[] massTypes = MassType.values();
+		_INSTANCES = new FragmentIonLadderGenerator[ massTypes.length ];
+
+		for( MassType massType : massTypes )
+			_INSTANCES[ massType.ordinal() ] = new FragmentIonLadderGenerator( massType );
+	}
+
+	private static final ThreadLocal<double[]> _PREFIX_MASSES = ThreadLocal.withInitial( () -> new double[ 64 ] );
+
+	private final MassType massType;
+	private final double[] ionTypeOffsets;
+
+}
@@ -3,6 +3,8 @@ package org.yeastrc.proteomics.ion.utils;
 import org.yeastrc.proteomics.ion.object.FragmentIon;
 import org.yeastrc.proteomics.mass.MassUtils.MassType;
 import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.peptide.PeptideCompositionCalculator;
 import org.yeastrc.proteomics.peptide.peptide.PeptideMassCalculator;
 import org.yeastrc.proteomics.spectrum.ionmass.IonMassConstants;
 
@@ -103,6 +105,43 @@ public class IonUtils {
 	}
 	
 	
+	/**
+	 * Get the elemental composition of the neutral fragment ion, i.e. not including the protons that give it its
+	 * charge. The same ion type adjustments are made as in calculateMass().
+	 * 
+	 * @param ion
+	 * @return
+	 * @throws Exception
+	 */
+	public static Composition getComposition( FragmentIon ion ) throws Exception {
+		
+		// composition of underlying residues
+		String s = ion.getPeptide().getSequence();
+		Composition composition = PeptideCompositionCalculator.getInstance().getCompositionOfResidues( s, 0, s.length(), ion.getPeptide().getLabel() );
+		
+		switch( ion.getIonType() ) {
+			case IonUtils.ION_TYPE_B : return composition;
+			case IonUtils.ION_TYPE_Y : return composition.add( _ION_TYPE_Y_OFFSET );
+			case IonUtils.ION_TYPE_A : return composition.add( _ION_TYPE_A_OFFSET );
+			case IonUtils.ION_TYPE_C : return composition.add( _ION_TYPE_C_OFFSET );
+			case IonUtils.ION_TYPE_X : return composition.add( _ION_TYPE_X_OFFSET );
+			case IonUtils.ION_TYPE_Z : return composition.add( _ION_TYPE_Z_OFFSET );
+			case IonUtils.ION_TYPE_Z_DOT : return composition.add( _ION_TYPE_Z_DOT_OFFSET );
+		}
+		
+		// if we got here, this ion type was not supported
+		throw new Exception( "Ion type is not supported." );
+	}
+	
+	// the atoms added to the residues for each ion type, see calculateMass()
+	private static final Composition _ION_TYPE_Y_OFFSET = Composition.parse( "H2O" );
+	private static final Composition _ION_TYPE_A_OFFSET = Composition.parse( "C-1O-1" );
+	private static final Composition _ION_TYPE_C_OFFSET = Composition.parse( "H3N" );
+	private static final Composition _ION_TYPE_X_OFFSET = Composition.parse( "CO2" );
+	private static final Composition _ION_TYPE_Z_OFFSET = Composition.parse( "H-1N-1O" );
+	private static final Composition _ION_TYPE_Z_DOT_OFFSET = Composition.parse( "N-1O" );
+	
+	
 	/**
 	 * Compares two mass to charge ratios (m/z). A difference less than 0.000001 is assumed to be equal.
 	 * Returns -1 if a < b, 0 if a == b, and 1 if a > b
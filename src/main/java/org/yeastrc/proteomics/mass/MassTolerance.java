@@ -0,0 +1,116 @@
+package org.yeastrc.proteomics.mass;
+
+/**
+ * A mass tolerance, either an absolute number of daltons or a number of parts per million
+ * of the mass it is applied to.
+ */
+public class MassTolerance {
+
+    public static enum Unit { DALTON, PPM }
+
+    /**
+     * Get a tolerance of the given number of daltons either side of a mass
+     *
+     * @param daltons
+     * @return
+     */
+    public static MassTolerance daltons( double daltons ) {
+        return new MassTolerance( daltons, Unit.DALTON );
+    }
+
+    /**
+     * Get a tolerance of the given number of parts per million of a mass either side of that mass
+     *
+     * @param ppm
+     * @return
+     */
+    public static MassTolerance ppm( double ppm ) {
+        return new MassTolerance( ppm, Unit.PPM );
+    }
+
+    private MassTolerance( double value, Unit unit ) {
+
+        if( !( value >= 0 ) ) {
+            throw new IllegalArgumentException( "Mass tolerance must be >= 0, got: " + value );
+        }
+
+        if( unit == Unit.PPM && value >= 1E6 ) {
+            throw new IllegalArgumentException( "PPM tolerance must be < 1E6, got: " + value );
+        }
+
+        this.value = value;
+        this.unit = unit;
+    }
+
+    /**
+     * Get the tolerance either side of the given mass, in daltons
+     *
+     * @param mass
+     * @return
+     */
+    public double getDaltons( double mass ) {
+        return unit == Unit.DALTON ? value : mass * value / 1E6;
+    }
+
+    /**
+     * The lowest mass within this tolerance of the given mass
+     *
+     * @param mass
+     * @return
+     */
+    public double getMinMass( double mass ) {
+        return mass - getDaltons( mass );
+    }
+
+    /**
+     * The highest mass within this tolerance of the given mass
+     *
+     * @param mass
+     * @return
+     */
+    public double getMaxMass( double mass ) {
+        return mass + getDaltons( mass );
+    }
+
+    /**
+     * Whether the observed mass is within this tolerance of the expected mass. PPM tolerances are
+     * relative to the expected mass.
+     *
+     * @param observedMass
+     * @param expectedMass
+     * @return
+     */
+    public boolean isWithinTolerance( double observedMass, double expectedMass ) {
+        return Math.abs( observedMass - expectedMass ) <= getDaltons( expectedMass );
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public Unit getUnit() {
+        return unit;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if( this == o ) return true;
+        if( o == null || getClass() != o.getClass() ) return false;
+        MassTolerance that = (MassTolerance) o;
+        return Double.compare( that.value, value ) == 0 && unit == that.unit;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode( value ) + unit.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value + ( unit == Unit.PPM ? " ppm" : " Da" );
+    }
+
+    private final double value;
+    private final Unit unit;
+
+}
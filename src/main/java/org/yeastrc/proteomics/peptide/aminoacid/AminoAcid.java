@@ -4,6 +4,7 @@ import java.util.Map;
 
 import org.yeastrc.proteomics.mass.MassUtils.MassType;
 import org.yeastrc.proteomics.peptide.atom.Atom;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
 
 public interface AminoAcid {
 
@@ -48,4 +49,14 @@ public interface AminoAcid {
 	 */
 	public Map<Atom, Integer> getParsedAtomCount();
 	
+	/**
+	 * Get the count of each atom in this amino acid as an array indexed by AtomUtils.ATOM_INDEX_CARBON,
+	 * AtomUtils.ATOM_INDEX_HYDROGEN etc. (C, H, N, O, S, Se). The returned array is shared and must not be modified.
+	 * 
+	 * @return
+	 */
+	public default int[] getAtomCounts() {
+		return AtomUtils.getAtomCounts( getParsedAtomCount() );
+	}
+	
 }
@@ -46,6 +46,18 @@ public class Asparagine implements AminoAcid {
 	
 	@Override
 	public Map<Atom, Integer> getParsedAtomCount() {
+		return _ATOM_COUNT;
+	}
+
+	@Override
+	public int[] getAtomCounts() {
+		return _ATOM_COUNTS;
+	}
+
+	private static final Map<Atom, Integer> _ATOM_COUNT;
+	private static final int[] _ATOM_COUNTS;
+
+	static {
 		
 		Map<Atom,Integer> atomCount = new HashMap<>();
 		
@@ -54,7 +66,8 @@ public class Asparagine implements AminoAcid {
 		atomCount.put( AtomUtils.ATOM_NITROGEN, 2 );
 		atomCount.put( AtomUtils.ATOM_OXYGEN, 2 );
 		
-		return Collections.unmodifiableMap( atomCount );
+		_ATOM_COUNT = Collections.unmodifiableMap( atomCount );
+		_ATOM_COUNTS = AtomUtils.getAtomCounts( _ATOM_COUNT );
 	}
 	
 }
\ No newline at end of file
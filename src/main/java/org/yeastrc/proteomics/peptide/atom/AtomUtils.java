@@ -1,5 +1,7 @@
 package org.yeastrc.proteomics.peptide.atom;
 
+import java.util.Map;
+
 public class AtomUtils {
 
 	public static final Atom ATOM_CARBON = new Carbon();
@@ -11,6 +13,73 @@ public class AtomUtils {
 	public static final Atom ATOM_PROTON = new Proton();
 	public static final Atom ATOM_NEUTRON = new Neutron();
 	
+	/*
+	 * The index of each element in an array of atom counts, e.g. from AminoAcid.getAtomCounts()
+	 */
+	public static final int ATOM_INDEX_CARBON = 0;
+	public static final int ATOM_INDEX_HYDROGEN = 1;
+	public static final int ATOM_INDEX_NITROGEN = 2;
+	public static final int ATOM_INDEX_OXYGEN = 3;
+	public static final int ATOM_INDEX_SULFUR = 4;
+	public static final int ATOM_INDEX_SELENIUM = 5;
+	
+	/**
+	 * The number of elements in an array of atom counts
+	 */
+	public static final int NUM_ATOM_INDEXES = 6;
+	
+	private static final Atom[] _INDEXED_ATOMS = { ATOM_CARBON, ATOM_HYDROGEN, ATOM_NITROGEN, ATOM_OXYGEN, ATOM_SULFUR, ATOM_SELENIUM };
+	
+	/**
+	 * Get the index of the given atom in an array of atom counts
+	 * 
+	 * @param atom
+	 * @return The index, or -1 if the atom is not counted in atom count arrays (e.g. a proton)
+	 */
+	public static int getAtomIndex( Atom atom ) {
+		
+		for( int i = 0; i < _INDEXED_ATOMS.length; i++ ) {
+			if( _INDEXED_ATOMS[ i ].equals( atom ) )
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Get the atom at the given index in an array of atom counts
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public static Atom getIndexedAtom( int index ) {
+		return _INDEXED_ATOMS[ index ];
+	}
+	
+	/**
+	 * Convert a map of atom counts to an array of atom counts, indexed by ATOM_INDEX_CARBON etc.
+	 * 
+	 * @param atomCount
+	 * @return
+	 * @throws IllegalArgumentException If the map contains an atom that is not counted in atom count arrays
+	 */
+	public static int[] getAtomCounts( Map<Atom, Integer> atomCount ) {
+		
+		int[] atomCounts = new int[ NUM_ATOM_INDEXES ];
+		
+		for( Map.Entry<Atom, Integer> entry : atomCount.entrySet() ) {
+			
+			int index = getAtomIndex( entry.getKey() );
+			
+			if( index == -1 )
+				throw new IllegalArgumentException( "Atom can not be counted in an atom count array: " + entry.getKey().getSymbol() );
+			
+			atomCounts[ index ] += entry.getValue();
+		}
+		
+		return atomCounts;
+	}
+	
 	/**
 	 * Get the atom corresponding to the supplied symbol
 	 * @param symbol
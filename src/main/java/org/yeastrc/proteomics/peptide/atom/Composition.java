@@ -0,0 +1,376 @@
+package org.yeastrc.proteomics.peptide.atom;
+
+import java.util.Arrays;
+
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.LabelFactory;
+
+/**
+ * An immutable elemental composition: a count of each of C, H, N, O, S and Se (indexed as in AtomUtils), and
+ * how many of those atoms are the heavy isotope used by the stable isotope label for that element (13C, 2H, 15N
+ * or 18O). Counts may be negative, e.g. for a modification that removes atoms.
+ *
+ * Formulas are written in Hill order with each labeled isotope after its element, e.g. C6H12[15N]2O for a 15N
+ * labeled lysine residue, and H-1N-1O for deamidation.
+ */
+public class Composition {
+
+	public static final Composition EMPTY = new Composition( new int[ AtomUtils.NUM_ATOM_INDEXES ], null );
+	public static final Composition WATER = of( 0, 2, 0, 1, 0, 0 );
+
+	/**
+	 * Get the composition with the given count of each element
+	 *
+	 * @return
+	 */
+	public static Composition of( int carbon, int hydrogen, int nitrogen, int oxygen, int sulfur, int selenium ) {
+		return new Composition( new int[] { carbon, hydrogen, nitrogen, oxygen, sulfur, selenium }, null );
+	}
+
+	/**
+	 * Get the composition with the given atom counts
+	 *
+	 * @param atomCounts The count of each element, indexed by AtomUtils.ATOM_INDEX_CARBON etc. Not modified.
+	 * @return
+	 */
+	public static Composition of( int[] atomCounts ) {
+
+		if( atomCounts.length != AtomUtils.NUM_ATOM_INDEXES )
+			throw new IllegalArgumentException( "Expected " + AtomUtils.NUM_ATOM_INDEXES + " atom counts, got " + atomCounts.length );
+
+		return new Composition( atomCounts.clone(), null );
+	}
+
+	private Composition( int[] atomCounts, int[] labeledAtomCounts ) {
+
+		this.atomCounts = atomCounts;
+
+		// only keep labeled counts for compositions that have some
+		boolean isLabeled = false;
+		if( labeledAtomCounts != null ) {
+			for( int count : labeledAtomCounts ) {
+				if( count != 0 )
+					isLabeled = true;
+			}
+		}
+
+		this.labeledAtomCounts = isLabeled ? labeledAtomCounts : null;
+	}
+
+	/**
+	 * Parse a formula such as C6H12N2O, C6H12[15N]2O or H-1N-1O. Whitespace is ignored.
+	 *
+	 * @param formula
+	 * @return
+	 * @throws IllegalArgumentException If the formula can't be parsed
+	 */
+	public static Composition parse( String formula ) {
+
+		int[] atomCounts = new int[ AtomUtils.NUM_ATOM_INDEXES ];
+		int[] labeledAtomCounts = new int[ AtomUtils.NUM_ATOM_INDEXES ];
+
+		String s = formula.replaceAll( "\\s", "" );
+		int i = 0;
+
+		while( i < s.length() ) {
+
+			int atom;
+			boolean isLabeled = false;
+
+			if( s.charAt( i ) == '[' ) {
+
+				int close = s.indexOf( ']', i );
+				if( close == -1 )
+					throw new IllegalArgumentException( "Unclosed [ in formula: " + formula );
+
+				atom = getLabeledAtomIndex( s.substring( i + 1, close ) );
+				if( atom == -1 )
+					throw new IllegalArgumentException( "Unsupported isotope " + s.substring( i, close + 1 ) + " in formula: " + formula );
+
+				isLabeled = true;
+				i = close + 1;
+
+			} else {
+
+				int end = i + 1;
+				if( end < s.length() && Character.isLowerCase( s.charAt( end ) ) )
+					end++;
+
+				atom = getAtomIndex( s.substring( i, end ) );
+				if( atom == -1 )
+					throw new IllegalArgumentException( "Unsupported element " + s.substring( i, end ) + " in formula: " + formula );
+
+				i = end;
+			}
+
+			// optional signed count, 1 if missing
+			int start = i;
+			if( i < s.length() && s.charAt( i ) == '-' )
+				i++;
+			while( i < s.length() && Character.isDigit( s.charAt( i ) ) )
+				i++;
+
+			int count;
+			if( i == start ) {
+				count = 1;
+			} else {
+				try {
+					count = Integer.parseInt( s.substring( start, i ) );
+				} catch( NumberFormatException e ) {
+					throw new IllegalArgumentException( "Invalid count " + s.substring( start, i ) + " in formula: " + formula );
+				}
+			}
+
+			atomCounts[ atom ] += count;
+			if( isLabeled )
+				labeledAtomCounts[ atom ] += count;
+		}
+
+		return new Composition( atomCounts, labeledAtomCounts );
+	}
+
+	/**
+	 * The count of the given element, including any labeled atoms of it
+	 *
+	 * @param atomIndex e.g. AtomUtils.ATOM_INDEX_CARBON
+	 * @return
+	 */
+	public int getCount( int atomIndex ) {
+		return atomCounts[ atomIndex ];
+	}
+
+	/**
+	 * The count of the given element, including any labeled atoms of it
+	 *
+	 * @param atom
+	 * @return
+	 * @throws IllegalArgumentException If the atom is not one that is counted
+	 */
+	public int getCount( Atom atom ) {
+		return atomCounts[ getCheckedAtomIndex( atom ) ];
+	}
+
+	/**
+	 * The count of the given element that are the heavy isotope used by its stable isotope label
+	 *
+	 * @param atomIndex e.g. AtomUtils.ATOM_INDEX_NITROGEN
+	 * @return
+	 */
+	public int getLabeledCount( int atomIndex ) {
+		return labeledAtomCounts == null ? 0 : labeledAtomCounts[ atomIndex ];
+	}
+
+	/**
+	 * The count of the given element that are not labeled, and so have natural isotope abundances
+	 *
+	 * @param atomIndex
+	 * @return
+	 */
+	public int getUnlabeledCount( int atomIndex ) {
+		return atomCounts[ atomIndex ] - getLabeledCount( atomIndex );
+	}
+
+	/**
+	 * Whether any atoms in this composition are labeled
+	 *
+	 * @return
+	 */
+	public boolean isLabeled() {
+		return labeledAtomCounts != null;
+	}
+
+	/**
+	 * Get a copy of the count of each element, indexed by AtomUtils.ATOM_INDEX_CARBON etc.
+	 *
+	 * @return
+	 */
+	public int[] getAtomCounts() {
+		return atomCounts.clone();
+	}
+
+	public Composition add( Composition other ) {
+		return combine( other, 1 );
+	}
+
+	public Composition subtract( Composition other ) {
+		return combine( other, -1 );
+	}
+
+	/**
+	 * Get this composition with every count multiplied by the given factor
+	 *
+	 * @param factor
+	 * @return
+	 */
+	public Composition multiply( int factor ) {
+
+		int[] newAtomCounts = new int[ AtomUtils.NUM_ATOM_INDEXES ];
+		int[] newLabeledAtomCounts = labeledAtomCounts == null ? null : new int[ AtomUtils.NUM_ATOM_INDEXES ];
+
+		for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+			newAtomCounts[ i ] = atomCounts[ i ] * factor;
+
+			if( newLabeledAtomCounts != null )
+				newLabeledAtomCounts[ i ] = labeledAtomCounts[ i ] * factor;
+		}
+
+		return new Composition( newAtomCounts, newLabeledAtomCounts );
+	}
+
+	/**
+	 * Get the same composition with every atom of the labeled element being the label's heavy isotope
+	 *
+	 * @param label
+	 * @return
+	 */
+	public Composition withLabel( IsotopeLabel label ) {
+
+		int atom = getCheckedAtomIndex( label.getLabeledAtom() );
+
+		int[] newLabeledAtomCounts = labeledAtomCounts == null ? new int[ AtomUtils.NUM_ATOM_INDEXES ] : labeledAtomCounts.clone();
+		newLabeledAtomCounts[ atom ] = atomCounts[ atom ];
+
+		return new Composition( atomCounts, newLabeledAtomCounts );
+	}
+
+	/**
+	 * Get the mass of this composition, including the mass change of any labeled atoms
+	 *
+	 * @param massType
+	 * @return
+	 */
+	public double getMass( MassType massType ) {
+
+		double mass = 0.0;
+
+		for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+
+			if( atomCounts[ i ] != 0 )
+				mass += atomCounts[ i ] * AtomUtils.getIndexedAtom( i ).getMass( massType );
+
+			if( labeledAtomCounts != null && labeledAtomCounts[ i ] != 0 )
+				mass += labeledAtomCounts[ i ] * _LABELS[ i ].getMassChange( massType );
+		}
+
+		return mass;
+	}
+
+	/**
+	 * Get the formula of this composition in Hill order (C, H, then the others alphabetically)
+	 *
+	 * @return
+	 */
+	public String getFormula() {
+
+		StringBuilder formula = new StringBuilder();
+
+		for( int atom : _HILL_ORDER ) {
+
+			appendFormulaCount( formula, AtomUtils.getIndexedAtom( atom ).getSymbol(), getUnlabeledCount( atom ) );
+
+			if( getLabeledCount( atom ) != 0 )
+				appendFormulaCount( formula, "[" + _LABELS[ atom ].getName() + "]", getLabeledCount( atom ) );
+		}
+
+		return formula.toString();
+	}
+
+	private static void appendFormulaCount( StringBuilder formula, String symbol, int count ) {
+
+		if( count == 0 )
+			return;
+
+		formula.append( symbol );
+
+		if( count != 1 )
+			formula.append( count );
+	}
+
+	private Composition combine( Composition other, int sign ) {
+
+		int[] newAtomCounts = new int[ AtomUtils.NUM_ATOM_INDEXES ];
+		int[] newLabeledAtomCounts = labeledAtomCounts == null && other.labeledAtomCounts == null ? null : new int[ AtomUtils.NUM_ATOM_INDEXES ];
+
+		for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+			newAtomCounts[ i ] = atomCounts[ i ] + sign * other.atomCounts[ i ];
+
+			if( newLabeledAtomCounts != null )
+				newLabeledAtomCounts[ i ] = getLabeledCount( i ) + sign * other.getLabeledCount( i );
+		}
+
+		return new Composition( newAtomCounts, newLabeledAtomCounts );
+	}
+
+	private static int getCheckedAtomIndex( Atom atom ) {
+
+		int index = AtomUtils.getAtomIndex( atom );
+
+		if( index == -1 )
+			throw new IllegalArgumentException( "Atom is not counted in compositions: " + atom.getSymbol() );
+
+		return index;
+	}
+
+	private static int getAtomIndex( String symbol ) {
+
+		for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+			if( AtomUtils.getIndexedAtom( i ).getSymbol().equals( symbol ) )
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static int getLabeledAtomIndex( String isotope ) {
+
+		for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+			if( _LABELS[ i ] != null && _LABELS[ i ].getName().equals( isotope ) )
+				return i;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public boolean equals( Object o ) {
+		if( this == o ) return true;
+		if( o == null || getClass() != o.getClass() ) return false;
+		Composition that = (Composition) o;
+		return Arrays.equals( atomCounts, that.atomCounts ) && Arrays.equals( labeledAtomCounts, that.labeledAtomCounts );
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode( atomCounts ) + Arrays.hashCode( labeledAtomCounts );
+	}
+
+	@Override
+	public String toString() {
+		return getFormula();
+	}
+
+
+	// the stable isotope label for each element, where there is one
+	private static final IsotopeLabel[] _LABELS = new IsotopeLabel[ AtomUtils.NUM_ATOM_INDEXES ];
+
+	static {
+		_LABELS[ AtomUtils.ATOM_INDEX_CARBON ] = LabelFactory.getInstance().getLabel( "13C" );
+		_LABELS[ AtomUtils.ATOM_INDEX_HYDROGEN ] = LabelFactory.getInstance().getLabel( "2H" );
+		_LABELS[ AtomUtils.ATOM_INDEX_NITROGEN ] = LabelFactory.getInstance().getLabel( "15N" );
+		_LABELS[ AtomUtils.ATOM_INDEX_OXYGEN ] = LabelFactory.getInstance().getLabel( "18O" );
+	}
+
+	private static final int[] _HILL_ORDER = {
+			AtomUtils.ATOM_INDEX_CARBON,
+			AtomUtils.ATOM_INDEX_HYDROGEN,
+			AtomUtils.ATOM_INDEX_NITROGEN,
+			AtomUtils.ATOM_INDEX_OXYGEN,
+			AtomUtils.ATOM_INDEX_SULFUR,
+			AtomUtils.ATOM_INDEX_SELENIUM
+	};
+
+	private final int[] atomCounts;
+	private final int[] labeledAtomCounts;
+
+}
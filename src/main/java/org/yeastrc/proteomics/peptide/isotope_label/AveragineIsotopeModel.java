@@ -0,0 +1,205 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+
+/**
+ * Theoretical isotope envelopes for peptides of any mass, using the averagine model (Senko et al. 1995),
+ * i.e. a peptide of mass M is assumed to be M / 111.0543 averagine residues of C4.9384 H7.7583 N1.3577
+ * O1.4773 S0.0417, with hydrogens making up any mass lost by rounding to whole atoms.
+ *
+ * Envelopes are calculated with IsotopeDistributionCalculator at evenly spaced masses from 0 up to a
+ * maximum mass when the model is created. The envelope for other masses is linearly interpolated between
+ * the two nearest grid masses, into caller supplied arrays, so nothing is allocated per lookup. Models are
+ * read only after they are created and may be shared between threads.
+ */
+public class AveragineIsotopeModel {
+
+	/**
+	 * The grid spacing of the default model, in Da
+	 */
+	public static final double DEFAULT_GRID_SPACING = 25.0;
+
+	/**
+	 * The maximum mass of the default model, in Da
+	 */
+	public static final double DEFAULT_MAX_MASS = 10000.0;
+
+	/**
+	 * The number of peaks in each envelope of the default model
+	 */
+	public static final int DEFAULT_NUM_PEAKS = 16;
+
+	/**
+	 * Get the shared default model, created the first time it is used
+	 *
+	 * @return
+	 */
+	public static AveragineIsotopeModel getInstance() {
+		return DefaultModelHolder._INSTANCE;
+	}
+
+	/**
+	 * Create a model with the given grid. The model should be kept and shared, as every envelope on the
+	 * grid is calculated here.
+	 *
+	 * @param gridSpacing The mass difference between grid points, in Da
+	 * @param maxMass The largest mass that may be looked up
+	 * @param numPeaks The number of peaks in each envelope, at most IsotopeDistributionCalculator.MAX_PEAKS
+	 * @return
+	 */
+	public static AveragineIsotopeModel getInstance( double gridSpacing, double maxMass, int numPeaks ) {
+
+		if( !( gridSpacing > 0.0 ) )
+			throw new IllegalArgumentException( "Grid spacing must be > 0, got " + gridSpacing );
+
+		if( !( maxMass >= 0.0 ) )
+			throw new IllegalArgumentException( "Max mass must be >= 0, got " + maxMass );
+
+		if( numPeaks < 1 || numPeaks > IsotopeDistributionCalculator.MAX_PEAKS )
+			throw new IllegalArgumentException( "Number of peaks must be from 1 to " + IsotopeDistributionCalculator.MAX_PEAKS + ", got " + numPeaks );
+
+		return new AveragineIsotopeModel( gridSpacing, maxMass, numPeaks );
+	}
+
+	private AveragineIsotopeModel( double gridSpacing, double maxMass, int numPeaks ) {
+
+		this.gridSpacing = gridSpacing;
+		this.maxMass = maxMass;
+		this.numPeaks = numPeaks;
+
+		// one extra grid point so maxMass is always between two of them
+		int numGridPoints = (int)Math.ceil( maxMass / gridSpacing ) + 2;
+
+		this.probabilities = new double[ numGridPoints * numPeaks ];
+		this.massShifts = new double[ numGridPoints * numPeaks ];
+
+		double[] gridProbabilities = new double[ numPeaks ];
+		double[] gridMassShifts = new double[ numPeaks ];
+
+		for( int i = 0; i < numGridPoints; i++ ) {
+
+			int n = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( getAveragineComposition( i * gridSpacing ), 0, numPeaks, 0.0,
+					gridMassShifts, gridProbabilities );
+
+			// peaks that underflowed to nothing are left at 0, with a nominal mass shift
+			for( int peak = 0; peak < numPeaks; peak++ ) {
+				probabilities[ i * numPeaks + peak ] = peak < n ? gridProbabilities[ peak ] : 0.0;
+				massShifts[ i * numPeaks + peak ] = peak < n ? gridMassShifts[ peak ] : peak * _AVERAGINE_PEAK_SPACING;
+			}
+		}
+	}
+
+	/**
+	 * Get the averagine composition for the given mass. Each element count is rounded to the nearest atom,
+	 * then hydrogens make up the rest of the mass, as in Senko et al.
+	 *
+	 * @param mass The monoisotopic neutral mass
+	 * @return
+	 */
+	public static Composition getAveragineComposition( double mass ) {
+
+		double residues = mass / _AVERAGINE_MONOISOTOPIC_MASS;
+
+		Composition heavyAtoms = Composition.of(
+				(int)Math.round( residues * _AVERAGINE_CARBON ),
+				0,
+				(int)Math.round( residues * _AVERAGINE_NITROGEN ),
+				(int)Math.round( residues * _AVERAGINE_OXYGEN ),
+				(int)Math.round( residues * _AVERAGINE_SULFUR ),
+				0 );
+
+		double hydrogenMass = AtomUtils.ATOM_HYDROGEN.getMass( MassType.MONOISOTOPIC );
+		int hydrogens = (int)Math.round( ( mass - heavyAtoms.getMass( MassType.MONOISOTOPIC ) ) / hydrogenMass );
+
+		return heavyAtoms.add( Composition.of( 0, Math.max( hydrogens, 0 ), 0, 0, 0, 0 ) );
+	}
+
+	/**
+	 * Get the isotope envelope of a peptide with the given mass into the given arrays, interpolated between the
+	 * envelopes at the nearest grid masses. Nothing is allocated.
+	 *
+	 * @param mass The monoisotopic neutral mass, from 0 to getMaxMass()
+	 * @param probabilities Receives the probability of each peak, must have room for getNumPeaks()
+	 * @param massShifts Receives the neutral mass shift of each peak versus the monoisotopic mass, must have room
+	 *                   for getNumPeaks(). May be null if not needed.
+	 * @return The number of peaks, getNumPeaks()
+	 */
+	public int getEnvelope( double mass, double[] probabilities, double[] massShifts ) {
+
+		if( !( mass >= 0.0 && mass <= maxMass ) )
+			throw new IllegalArgumentException( "Mass must be from 0 to " + maxMass + ", got " + mass );
+
+		double position = mass / gridSpacing;
+		int low = (int)position;
+		double fraction = position - low;
+
+		int lowOffset = low * numPeaks;
+		int highOffset = lowOffset + numPeaks;
+
+		for( int peak = 0; peak < numPeaks; peak++ ) {
+
+			double lowProbability = this.probabilities[ lowOffset + peak ];
+			probabilities[ peak ] = lowProbability + fraction * ( this.probabilities[ highOffset + peak ] - lowProbability );
+
+			if( massShifts != null ) {
+				double lowMassShift = this.massShifts[ lowOffset + peak ];
+				massShifts[ peak ] = lowMassShift + fraction * ( this.massShifts[ highOffset + peak ] - lowMassShift );
+			}
+		}
+
+		return numPeaks;
+	}
+
+	/**
+	 * The number of peaks in each envelope
+	 *
+	 * @return
+	 */
+	public int getNumPeaks() {
+		return numPeaks;
+	}
+
+	/**
+	 * The mass difference between the masses envelopes are calculated for
+	 *
+	 * @return
+	 */
+	public double getGridSpacing() {
+		return gridSpacing;
+	}
+
+	/**
+	 * The largest mass that may be looked up
+	 *
+	 * @return
+	 */
+	public double getMaxMass() {
+		return maxMass;
+	}
+
+
+	private static final class DefaultModelHolder {
+		private static final AveragineIsotopeModel _INSTANCE = new AveragineIsotopeModel( DEFAULT_GRID_SPACING, DEFAULT_MAX_MASS, DEFAULT_NUM_PEAKS );
+	}
+
+	// the averagine residue, from Senko et al., J Am Soc Mass Spectrom 1995
+	private static final double _AVERAGINE_MONOISOTOPIC_MASS = 111.0543052;
+	private static final double _AVERAGINE_CARBON = 4.9384;
+	private static final double _AVERAGINE_NITROGEN = 1.3577;
+	private static final double _AVERAGINE_OXYGEN = 1.4773;
+	private static final double _AVERAGINE_SULFUR = 0.0417;
+
+	// the approximate spacing of isotope peaks of an averagine peptide
+	private static final double _AVERAGINE_PEAK_SPACING = 1.00235;
+
+	private final double gridSpacing;
+	private final double maxMass;
+	private final int numPeaks;
+
+	// envelope i is at mass i * gridSpacing, stored from index i * numPeaks
+	private final double[] probabilities;
+	private final double[] massShifts;
+
+}
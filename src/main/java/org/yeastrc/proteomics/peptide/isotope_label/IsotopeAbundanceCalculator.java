@@ -10,11 +10,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
-import org.yeastrc.proteomics.peptide.aminoacid.AminoAcid;
-import org.yeastrc.proteomics.peptide.aminoacid.AminoAcidUtils;
 import org.yeastrc.proteomics.peptide.atom.Atom;
 import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
 import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.PeptideCompositionCalculator;
 import org.apache.commons.math3.util.ArithmeticUtils;
 
 /**
@@ -22,6 +22,9 @@ import org.apache.commons.math3.util.ArithmeticUtils;
  * be written using recursion instead of a chain of calls to separate methods for each
  * element... But writing it this way seemed less error prone.
  * 
+ * Every combination of isotopes is enumerated, which is slow for large peptides. Use
+ * IsotopeDistributionCalculator to get the isotope peaks, with combinations aggregated by nominal mass.
+ * 
  * @author mriffle
  *
  */
@@ -116,6 +119,29 @@ public class IsotopeAbundanceCalculator {
 	 */
 	public Map<BigDecimal, Double> getIsotopMassShiftProbabilities( Collection< Peptide > peptides, Integer charge, Double probabilityCutoff ) throws Exception {
 		
+		// get the composition of the entire ion
+		Composition composition = Composition.EMPTY;
+		
+		for( Peptide peptide : peptides )
+			composition = composition.add( PeptideCompositionCalculator.getInstance().getCompositionForPeptide( peptide ) );
+		
+		return getIsotopMassShiftProbabilities( composition, charge, probabilityCutoff );
+	}
+	
+	/**
+	 * Get a list of neutral charge (not divided by charge) isotopic mass shifts (and associated probabilities) for an ion with the given
+	 * composition, which are mass differences compared to its monoisotopic mass. No isotopics are considered for labeled atoms in the
+	 * composition.
+	 * 
+	 * @param composition The composition of the ion, e.g. from PeptideCompositionCalculator
+	 * @param charge The charge of the ion (so that we may add the appropriate number of extra Hydrogens into the calculation) Note
+	 * 				 that the returned values are NOT divided by this value.
+	 * @param probabilityCutoff The proability, below which, isotopes will not be considered. The higher this value, the faster this runs.
+	 * @return
+	 * @throws Exception
+	 */
+	public Map<BigDecimal, Double> getIsotopMassShiftProbabilities( Composition composition, Integer charge, Double probabilityCutoff ) throws Exception {
+		
 		if( charge != null && charge < 0 ) {
 			throw new Exception( "Charge must be >= 0." );
 		}
@@ -125,15 +151,14 @@ public class IsotopeAbundanceCalculator {
 				
 		Map<BigDecimal, Double> massShiftProbabilities = new HashMap<>();
 		
-		// get the count for each atom for the entire peptide
-		Map< Atom, Integer > atomCount = getAtomCountForPeptides( peptides );
+		// do not count atoms of labeled elements as these cannot be mass shifted
+		Map< Atom, Integer > atomCount = new HashMap<>();
+		
+		for( int atom = 0; atom < AtomUtils.NUM_ATOM_INDEXES; atom++ )
+			atomCount.put( AtomUtils.getIndexedAtom( atom ), composition.getUnlabeledCount( atom ) );
 
-		if( charge != null ) {
-			if( !atomCount.containsKey( AtomUtils.ATOM_HYDROGEN ) )
-				atomCount.put( AtomUtils.ATOM_HYDROGEN, 0 );
-			
+		if( charge != null )
 			atomCount.put( AtomUtils.ATOM_HYDROGEN, atomCount.get( AtomUtils.ATOM_HYDROGEN ) + charge );
-		}
 		
 		// start with carbon
 		processCarbon( atomCount, massShiftProbabilities, probabilityCutoff );		
@@ -373,48 +398,6 @@ public class IsotopeAbundanceCalculator {
 	
 	
 	
-	/**
-	 * Get a map of the counts for each distinct atom in the supplied peptide
-	 * 
-	 * @param peptide
-	 * @return
-	 */
-	private Map< Atom, Integer > getAtomCountForPeptides( Collection<Peptide> peptides ) throws Exception {
-		
-		Map< Atom, Integer > atomCountMap = new HashMap<>();
-		
-		for( Peptide peptide : peptides ) {
-			String s = peptide.getSequence();
-			
-			for (int i = 0; i < s.length(); i++){
-				
-				AminoAcid residue = AminoAcidUtils.getAminoAcidBySymbol( s.charAt(i) );
-				Map<Atom, Integer> residueAtomCount = residue.getParsedAtomCount();
-				
-				for( Atom atom : residueAtomCount.keySet() ) {
-					
-					// do not add atoms for labeled elements as these cannot be mass shifted
-					if( peptide.getLabel() != null )
-						if( peptide.getLabel().getLabeledAtom().equals( atom ) )
-							continue;
-					
-					if( !atomCountMap.containsKey( atom ) )
-						atomCountMap.put( atom, 0 );
-					
-					atomCountMap.put( atom, atomCountMap.get( atom ) + residueAtomCount.get( atom ) );
-					
-				}
-			}
-	
-			// add H and OH onto atom counts N and C terms
-			atomCountMap.put( AtomUtils.ATOM_OXYGEN, atomCountMap.get( AtomUtils.ATOM_OXYGEN ) + 1 );
-			atomCountMap.put( AtomUtils.ATOM_HYDROGEN, atomCountMap.get( AtomUtils.ATOM_HYDROGEN ) + 2 );
-		}
-
-		
-		return atomCountMap;
-	}
-	
 	/**
 	 * For comparison purposes, standardize how we get big decimals
 	 * 
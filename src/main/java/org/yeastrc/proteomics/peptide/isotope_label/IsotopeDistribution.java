@@ -0,0 +1,114 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import java.util.Arrays;
+
+/**
+ * The first isotope peaks of an ion, as calculated by IsotopeDistributionCalculator. Peak i is the
+ * aggregate of all isotope combinations with i extra neutrons (nominally), with its probability and its
+ * probability weighted mean mass shift versus the monoisotopic mass. Mass shifts are neutral, i.e. not
+ * divided by the charge.
+ */
+public class IsotopeDistribution {
+
+	IsotopeDistribution( double[] massShifts, double[] probabilities ) {
+		this.massShifts = massShifts;
+		this.probabilities = probabilities;
+	}
+
+	/**
+	 * The number of peaks in this distribution
+	 *
+	 * @return
+	 */
+	public int getNumPeaks() {
+		return probabilities.length;
+	}
+
+	/**
+	 * The mass shift of the given peak versus the monoisotopic mass, 0 for peak 0
+	 *
+	 * @param peak
+	 * @return
+	 */
+	public double getMassShift( int peak ) {
+		return massShifts[ peak ];
+	}
+
+	/**
+	 * The probability of observing the given peak
+	 *
+	 * @param peak
+	 * @return
+	 */
+	public double getProbability( int peak ) {
+		return probabilities[ peak ];
+	}
+
+	/**
+	 * The index of the peak with the highest probability
+	 *
+	 * @return
+	 */
+	public int getMostAbundantPeak() {
+
+		int mostAbundant = 0;
+
+		for( int i = 1; i < probabilities.length; i++ ) {
+			if( probabilities[ i ] > probabilities[ mostAbundant ] )
+				mostAbundant = i;
+		}
+
+		return mostAbundant;
+	}
+
+	/**
+	 * Get a copy of the mass shifts of the peaks
+	 *
+	 * @return
+	 */
+	public double[] getMassShifts() {
+		return massShifts.clone();
+	}
+
+	/**
+	 * Get a copy of the probabilities of the peaks
+	 *
+	 * @return
+	 */
+	public double[] getProbabilities() {
+		return probabilities.clone();
+	}
+
+	@Override
+	public boolean equals( Object o ) {
+		if( this == o ) return true;
+		if( o == null || getClass() != o.getClass() ) return false;
+		IsotopeDistribution that = (IsotopeDistribution) o;
+		return Arrays.equals( massShifts, that.massShifts ) && Arrays.equals( probabilities, that.probabilities );
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode( massShifts ) + Arrays.hashCode( probabilities );
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder( "IsotopeDistribution[" );
+
+		for( int i = 0; i < probabilities.length; i++ ) {
+			if( i > 0 )
+				sb.append( ", " );
+
+			sb.append( String.format( "+%.6f: %.6g", massShifts[ i ], probabilities[ i ] ) );
+		}
+
+		return sb.append( "]" ).toString();
+	}
+
+
+	final double[] massShifts;
+	final double[] probabilities;
+
+}
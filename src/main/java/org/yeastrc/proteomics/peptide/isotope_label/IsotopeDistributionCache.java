@@ -0,0 +1,263 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.PeptideCompositionCalculator;
+
+/**
+ * A bounded cache of isotope distributions from IsotopeDistributionCalculator, keyed by elemental composition
+ * (which includes any labeled atoms) and number of peaks. Different peptides with the same composition share
+ * an entry.
+ *
+ * Only the neutral distribution is cached, with no probability cutoff applied. The charge's extra hydrogens
+ * are convolved in and the cutoff applied on each lookup, so every charge state and cutoff shares one entry.
+ *
+ * The least recently used entries are evicted when the cache is full. Entries are split between a number of
+ * independently locked segments, each with its own share of the size limit, so the cache may be used from
+ * many threads at once.
+ */
+public class IsotopeDistributionCache {
+
+	/**
+	 * Get a new cache that holds at most the given number of distributions
+	 *
+	 * @param maxEntries
+	 * @return
+	 */
+	public static IsotopeDistributionCache getInstance( int maxEntries ) {
+
+		if( maxEntries < 1 )
+			throw new IllegalArgumentException( "Max entries must be >= 1, got " + maxEntries );
+
+		return new IsotopeDistributionCache( maxEntries );
+	}
+
+	private IsotopeDistributionCache( int maxEntries ) {
+
+		this.maxEntries = maxEntries;
+
+		// small caches have fewer segments, so a few entries that land in the same segment don't evict each other
+		int numSegments = Math.max( 1, Math.min( _MAX_SEGMENTS, maxEntries / _MIN_SEGMENT_ENTRIES ) );
+		this.segments = new Segment[ numSegments ];
+
+		for( int i = 0; i < numSegments; i++ ) {
+			// spread any remainder over the first segments
+			int segmentEntries = maxEntries / numSegments + ( i < maxEntries % numSegments ? 1 : 0 );
+			this.segments[ i ] = new Segment( segmentEntries );
+		}
+	}
+
+	/**
+	 * Get the first isotope peaks of an ion made of the given peptides (e.g. a pair of cross-linked peptides),
+	 * with the default probability cutoff
+	 *
+	 * @param peptides
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most IsotopeDistributionCalculator.MAX_PEAKS
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public IsotopeDistribution getIsotopeDistribution( Collection<Peptide> peptides, int charge, int numPeaks ) throws InvalidAminoAcidException {
+
+		Composition composition = Composition.EMPTY;
+
+		for( Peptide peptide : peptides )
+			composition = composition.add( PeptideCompositionCalculator.getInstance().getCompositionForPeptide( peptide ) );
+
+		return getIsotopeDistribution( composition, charge, numPeaks, IsotopeDistributionCalculator.DEFAULT_PROBABILITY_CUTOFF );
+	}
+
+	/**
+	 * Get the first isotope peaks of an ion with the given composition
+	 *
+	 * @param composition
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most IsotopeDistributionCalculator.MAX_PEAKS
+	 * @param probabilityCutoff Trailing peaks with a probability below this are dropped
+	 * @return
+	 */
+	public IsotopeDistribution getIsotopeDistribution( Composition composition, int charge, int numPeaks, double probabilityCutoff ) {
+
+		double[] massShifts = new double[ numPeaks ];
+		double[] probabilities = new double[ numPeaks ];
+
+		int n = getIsotopeDistribution( composition, charge, numPeaks, probabilityCutoff, massShifts, probabilities );
+
+		return new IsotopeDistribution( Arrays.copyOf( massShifts, n ), Arrays.copyOf( probabilities, n ) );
+	}
+
+	/**
+	 * Get the first isotope peaks of an ion with the given composition into the given arrays. Only the cache key
+	 * is allocated if the distribution is in the cache.
+	 *
+	 * @param composition
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most IsotopeDistributionCalculator.MAX_PEAKS
+	 * @param probabilityCutoff Trailing peaks with a probability below this are dropped
+	 * @param massShifts Receives the mass shift of each peak, must have room for numPeaks
+	 * @param probabilities Receives the probability of each peak, must have room for numPeaks
+	 * @return The number of peaks calculated
+	 */
+	public int getIsotopeDistribution( Composition composition, int charge, int numPeaks, double probabilityCutoff, double[] massShifts, double[] probabilities ) {
+
+		if( charge < 0 )
+			throw new IllegalArgumentException( "Charge must be >= 0." );
+
+		IsotopeDistribution neutral = getNeutralDistribution( composition, numPeaks );
+
+		return IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( neutral.probabilities, neutral.massShifts, neutral.probabilities.length,
+				Composition.EMPTY, charge, numPeaks, probabilityCutoff, massShifts, probabilities );
+	}
+
+	/**
+	 * The number of lookups that were answered from the cache
+	 *
+	 * @return
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of lookups that had to calculate the distribution
+	 *
+	 * @return
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of distributions in the cache
+	 *
+	 * @return
+	 */
+	public int getSize() {
+
+		int size = 0;
+
+		for( Segment segment : segments ) {
+			synchronized( segment ) {
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * The most distributions the cache holds
+	 *
+	 * @return
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Remove every distribution from the cache. The hit and miss counts are not reset.
+	 */
+	public void clear() {
+		for( Segment segment : segments ) {
+			synchronized( segment ) {
+				segment.clear();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IsotopeDistributionCache[size=" + getSize() + ", maxEntries=" + maxEntries + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+	}
+
+	private IsotopeDistribution getNeutralDistribution( Composition composition, int numPeaks ) {
+
+		Key key = new Key( composition, numPeaks );
+		Segment segment = segments[ ( key.hashCode() & 0x7FFFFFFF ) % segments.length ];
+
+		IsotopeDistribution distribution;
+
+		synchronized( segment ) {
+			distribution = segment.get( key );
+		}
+
+		if( distribution != null ) {
+			hitCount.incrementAndGet();
+			return distribution;
+		}
+
+		missCount.incrementAndGet();
+
+		// calculated without holding the lock, another thread may calculate the same distribution at the same time
+		distribution = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( composition, 0, numPeaks, 0.0 );
+
+		synchronized( segment ) {
+			segment.put( key, distribution );
+		}
+
+		return distribution;
+	}
+
+
+	private static final class Key {
+
+		Key( Composition composition, int numPeaks ) {
+			this.composition = composition;
+			this.numPeaks = numPeaks;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if( this == o ) return true;
+			if( !( o instanceof Key ) ) return false;
+			Key that = (Key) o;
+			return numPeaks == that.numPeaks && composition.equals( that.composition );
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * composition.hashCode() + numPeaks;
+		}
+
+		private final Composition composition;
+		private final int numPeaks;
+	}
+
+	/**
+	 * An access ordered map that removes its least recently used entry when it is over its size limit
+	 */
+	private static final class Segment extends LinkedHashMap<Key, IsotopeDistribution> {
+
+		Segment( int maxEntries ) {
+			super( 16, 0.75f, true );
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<Key, IsotopeDistribution> eldest ) {
+			return size() > maxEntries;
+		}
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+	}
+
+
+	private static final int _MAX_SEGMENTS = 16;
+	private static final int _MIN_SEGMENT_ENTRIES = 64;
+
+	private final int maxEntries;
+	private final Segment[] segments;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+}
@@ -0,0 +1,301 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.PeptideCompositionCalculator;
+
+/**
+ * Calculates the first isotope peaks of an ion from its elemental composition. Rather than enumerating
+ * every combination of isotopes as IsotopeAbundanceCalculator does, the isotope combinations with the same
+ * nominal mass shift are aggregated into one peak, and the distribution of each element is convolved into
+ * the result, truncated to the requested number of peaks.
+ *
+ * The distributions of each element for 1, 2, 4, 8... atoms are precomputed, so the distribution for n atoms
+ * of an element is a product of at most log2(n) precomputed distributions. Each peak's mass shift is the
+ * probability weighted mean of the combinations in it, which is carried through each convolution.
+ *
+ * The same natural isotope abundances are used as in IsotopeAbundanceCalculator. Selenium is treated as
+ * monoisotopic, and no isotopics are considered for labeled atoms.
+ *
+ * Safe to use from multiple threads.
+ */
+public class IsotopeDistributionCalculator {
+
+	private IsotopeDistributionCalculator() { }
+	private static final IsotopeDistributionCalculator _INSTANCE = new IsotopeDistributionCalculator();
+	public static IsotopeDistributionCalculator getInstance() { return _INSTANCE; }
+
+	/**
+	 * The most isotope peaks that may be calculated
+	 */
+	public static final int MAX_PEAKS = 32;
+
+	/**
+	 * The default probability, below which trailing isotope peaks are dropped
+	 */
+	public static final double DEFAULT_PROBABILITY_CUTOFF = 1E-5;
+
+	/**
+	 * Get the first isotope peaks of the given peptide
+	 *
+	 * @param peptide
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most MAX_PEAKS
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public IsotopeDistribution getIsotopeDistribution( Peptide peptide, int charge, int numPeaks ) throws InvalidAminoAcidException {
+		return getIsotopeDistribution( Collections.singleton( peptide ), charge, numPeaks );
+	}
+
+	/**
+	 * Get the first isotope peaks of an ion made of the given peptides (e.g. a pair of cross-linked peptides)
+	 *
+	 * @param peptides
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most MAX_PEAKS
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public IsotopeDistribution getIsotopeDistribution( Collection<Peptide> peptides, int charge, int numPeaks ) throws InvalidAminoAcidException {
+
+		Composition composition = Composition.EMPTY;
+
+		for( Peptide peptide : peptides )
+			composition = composition.add( PeptideCompositionCalculator.getInstance().getCompositionForPeptide( peptide ) );
+
+		return getIsotopeDistribution( composition, charge, numPeaks, DEFAULT_PROBABILITY_CUTOFF );
+	}
+
+	/**
+	 * Get the first isotope peaks of an ion with the given composition
+	 *
+	 * @param composition
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most MAX_PEAKS
+	 * @param probabilityCutoff Trailing peaks with a probability below this are dropped
+	 * @return
+	 */
+	public IsotopeDistribution getIsotopeDistribution( Composition composition, int charge, int numPeaks, double probabilityCutoff ) {
+
+		double[] massShifts = new double[ numPeaks ];
+		double[] probabilities = new double[ numPeaks ];
+
+		int n = getIsotopeDistribution( composition, charge, numPeaks, probabilityCutoff, massShifts, probabilities );
+
+		return new IsotopeDistribution( Arrays.copyOf( massShifts, n ), Arrays.copyOf( probabilities, n ) );
+	}
+
+	/**
+	 * Calculate the first isotope peaks of an ion with the given composition into the given arrays. Nothing is
+	 * allocated.
+	 *
+	 * @param composition
+	 * @param charge The charge of the ion, i.e. the number of extra hydrogens to include
+	 * @param numPeaks The number of peaks to calculate, at most MAX_PEAKS
+	 * @param probabilityCutoff Trailing peaks with a probability below this are dropped
+	 * @param massShifts Receives the mass shift of each peak, must have room for numPeaks
+	 * @param probabilities Receives the probability of each peak, must have room for numPeaks
+	 * @return The number of peaks calculated
+	 */
+	public int getIsotopeDistribution( Composition composition, int charge, int numPeaks, double probabilityCutoff, double[] massShifts, double[] probabilities ) {
+
+		if( charge < 0 )
+			throw new IllegalArgumentException( "Charge must be >= 0." );
+
+		return getIsotopeDistribution( _MONOISOTOPIC_PROBABILITIES, _MONOISOTOPIC_MASS_SHIFTS, 1, composition, charge, numPeaks, probabilityCutoff, massShifts, probabilities );
+	}
+
+	/**
+	 * Calculate the isotope peaks of an ion made of the given composition and extra hydrogens, plus something with
+	 * an already calculated isotope distribution, into the given arrays. Nothing is allocated.
+	 *
+	 * @param startProbabilities The probabilities of the already calculated distribution
+	 * @param startMassShifts The mass shifts of the already calculated distribution
+	 * @param startLength The number of peaks in the already calculated distribution
+	 * @param composition
+	 * @param hydrogens The number of extra hydrogens, e.g. the charge
+	 * @param numPeaks The number of peaks to calculate, at most MAX_PEAKS
+	 * @param probabilityCutoff Trailing peaks with a probability below this are dropped
+	 * @param massShifts Receives the mass shift of each peak, must have room for numPeaks
+	 * @param probabilities Receives the probability of each peak, must have room for numPeaks
+	 * @return The number of peaks calculated
+	 */
+	int getIsotopeDistribution( double[] startProbabilities, double[] startMassShifts, int startLength, Composition composition, int hydrogens,
+			int numPeaks, double probabilityCutoff, double[] massShifts, double[] probabilities ) {
+
+		if( numPeaks < 1 || numPeaks > MAX_PEAKS )
+			throw new IllegalArgumentException( "Number of peaks must be from 1 to " + MAX_PEAKS + ", got " + numPeaks );
+
+		Scratch scratch = _SCRATCH.get();
+
+		double[] p = scratch.probabilities;
+		double[] m = scratch.massMoments;
+		double[] nextP = scratch.nextProbabilities;
+		double[] nextM = scratch.nextMassMoments;
+
+		int length = Math.min( startLength, numPeaks );
+
+		for( int i = 0; i < length; i++ ) {
+			p[ i ] = startProbabilities[ i ];
+			m[ i ] = startProbabilities[ i ] * startMassShifts[ i ];
+		}
+
+		for( int atom = 0; atom < AtomUtils.NUM_ATOM_INDEXES; atom++ ) {
+
+			if( _POWER_PROBABILITIES[ atom ] == null )
+				continue;
+
+			int count = composition.getUnlabeledCount( atom );
+
+			if( atom == AtomUtils.ATOM_INDEX_HYDROGEN )
+				count += hydrogens;
+
+			if( count < 0 )
+				throw new IllegalArgumentException( "Composition has a negative count of " + AtomUtils.getIndexedAtom( atom ).getSymbol() + ": " + composition );
+
+			// multiply in the precomputed distribution for each set bit of the count
+			for( int power = 0; count != 0; power++, count >>>= 1 ) {
+
+				if( ( count & 1 ) == 0 )
+					continue;
+
+				length = convolve( p, m, length,
+						_POWER_PROBABILITIES[ atom ][ power ], _POWER_MASS_MOMENTS[ atom ][ power ], _POWER_PROBABILITIES[ atom ][ power ].length,
+						nextP, nextM, numPeaks );
+
+				double[] swap = p; p = nextP; nextP = swap;
+				swap = m; m = nextM; nextM = swap;
+			}
+		}
+
+		// drop trailing peaks below the cutoff
+		while( length > 0 && !( p[ length - 1 ] >= probabilityCutoff ) )
+			length--;
+
+		for( int i = 0; i < length; i++ ) {
+			probabilities[ i ] = p[ i ];
+			massShifts[ i ] = p[ i ] > 0.0 ? m[ i ] / p[ i ] : i * _CARBON_13_MASS_SHIFT;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Convolve distribution a with distribution b into out, truncated to maxLength peaks. Each distribution is a
+	 * probability per peak and a mass moment (probability * mean mass shift) per peak.
+	 *
+	 * @return The length of the result
+	 */
+	static int convolve( double[] aP, double[] aM, int aLength, double[] bP, double[] bM, int bLength, double[] outP, double[] outM, int maxLength ) {
+
+		int length = Math.min( aLength + bLength - 1, maxLength );
+
+		for( int k = 0; k < length; k++ ) {
+
+			double p = 0.0;
+			double m = 0.0;
+
+			for( int i = Math.max( 0, k - bLength + 1 ), last = Math.min( k, aLength - 1 ); i <= last; i++ ) {
+				int j = k - i;
+
+				p += aP[ i ] * bP[ j ];
+				m += aM[ i ] * bP[ j ] + aP[ i ] * bM[ j ];
+			}
+
+			outP[ k ] = p;
+			outM[ k ] = m;
+		}
+
+		// prune peaks that have underflowed to nothing
+		while( length > 1 && outP[ length - 1 ] == 0.0 )
+			length--;
+
+		return length;
+	}
+
+
+	private static final class Scratch {
+		private final double[] probabilities = new double[ MAX_PEAKS ];
+		private final double[] massMoments = new double[ MAX_PEAKS ];
+		private final double[] nextProbabilities = new double[ MAX_PEAKS ];
+		private final double[] nextMassMoments = new double[ MAX_PEAKS ];
+	}
+
+	private static final ThreadLocal<Scratch> _SCRATCH = ThreadLocal.withInitial( Scratch::new );
+
+	// the distribution of nothing
+	private static final double[] _MONOISOTOPIC_PROBABILITIES = { 1.0 };
+	private static final double[] _MONOISOTOPIC_MASS_SHIFTS = { 0.0 };
+
+	// from https://chemistry.sciences.ncsu.edu/msf/pdf/IsotopicMass_NaturalAbundance.pdf, as in IsotopeAbundanceCalculator
+	private static final double _CARBON_13_MASS_SHIFT = 1.003355;
+
+	// number of precomputed powers of two, enough for any int count
+	private static final int _NUM_POWERS = 31;
+
+	// the distribution of 2^power atoms of each element, null for elements with no isotopics
+	private static final double[][][] _POWER_PROBABILITIES = new double[ AtomUtils.NUM_ATOM_INDEXES ][][];
+	private static final double[][][] _POWER_MASS_MOMENTS = new double[ AtomUtils.NUM_ATOM_INDEXES ][][];
+
+	static {
+
+		/* 13C */
+		addElement( AtomUtils.ATOM_INDEX_CARBON, new double[] { 0.0, _CARBON_13_MASS_SHIFT }, new double[] { 0.0, 0.0107 } );
+
+		/* 2H */
+		addElement( AtomUtils.ATOM_INDEX_HYDROGEN, new double[] { 0.0, 1.006277 }, new double[] { 0.0, 0.000115 } );
+
+		/* 15N */
+		addElement( AtomUtils.ATOM_INDEX_NITROGEN, new double[] { 0.0, 0.997035 }, new double[] { 0.0, 0.00368 } );
+
+		/* 17O, 18O */
+		addElement( AtomUtils.ATOM_INDEX_OXYGEN, new double[] { 0.0, 1.004217, 2.004245 }, new double[] { 0.0, 0.00038, 0.00205 } );
+
+		/* 33S, 34S, 36S */
+		addElement( AtomUtils.ATOM_INDEX_SULFUR, new double[] { 0.0, 0.999387, 1.995796, 0.0, 3.99501 }, new double[] { 0.0, 0.0076, 0.0429, 0.0, 0.0002 } );
+	}
+
+	/**
+	 * Precompute the distributions of 1, 2, 4... atoms of the given element
+	 *
+	 * @param atom
+	 * @param massShifts The mass shift of each isotope, indexed by its nominal mass shift
+	 * @param probabilities The abundance of each isotope other than the monoisotopic one, indexed by its nominal mass shift
+	 */
+	private static void addElement( int atom, double[] massShifts, double[] probabilities ) {
+
+		double[] p = probabilities.clone();
+		double[] m = new double[ p.length ];
+
+		double monoisotopicProbability = 1.0;
+		for( int i = 1; i < p.length; i++ ) {
+			monoisotopicProbability -= p[ i ];
+			m[ i ] = p[ i ] * massShifts[ i ];
+		}
+		p[ 0 ] = monoisotopicProbability;
+
+		_POWER_PROBABILITIES[ atom ] = new double[ _NUM_POWERS ][];
+		_POWER_MASS_MOMENTS[ atom ] = new double[ _NUM_POWERS ][];
+
+		for( int power = 0; power < _NUM_POWERS; power++ ) {
+
+			_POWER_PROBABILITIES[ atom ][ power ] = p;
+			_POWER_MASS_MOMENTS[ atom ][ power ] = m;
+
+			double[] nextP = new double[ MAX_PEAKS ];
+			double[] nextM = new double[ MAX_PEAKS ];
+			int length = convolve( p, m, p.length, p, m, p.length, nextP, nextM, MAX_PEAKS );
+
+			p = Arrays.copyOf( nextP, length );
+			m = Arrays.copyOf( nextM, length );
+		}
+	}
+
+}
@@ -2,7 +2,7 @@ package org.yeastrc.proteomics.peptide.isotope_label;
 
 import org.yeastrc.proteomics.mass.MassUtils.MassType;
 import org.yeastrc.proteomics.peptide.aminoacid.AminoAcid;
-import org.yeastrc.proteomics.peptide.atom.Atom;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
 
 public class IsotopeMassCalculator {
 
@@ -22,11 +22,11 @@ public class IsotopeMassCalculator {
 		
 		double mass = 0.0;
 		
-		Atom labeledAtom = label.getLabeledAtom();
-		Integer atomCount = aminoAcid.getParsedAtomCount().get( labeledAtom );	// the number of labeled atoms
+		int atomIndex = AtomUtils.getAtomIndex( label.getLabeledAtom() );
+		int atomCount = atomIndex == -1 ? 0 : aminoAcid.getAtomCounts()[ atomIndex ];	// the number of labeled atoms
 		
 		// residue does not contained the labeled atom? weird.
-		if( atomCount == null || atomCount == 0 )
+		if( atomCount == 0 )
 			return 0.0;
 
 		
@@ -0,0 +1,125 @@
+package org.yeastrc.proteomics.peptide.peptide;
+
+import java.util.Map;
+
+import org.yeastrc.proteomics.peptide.aminoacid.AminoAcidUtils;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+
+/**
+ * Calculates the elemental composition of peptides. The atom counts of the residues are summed in a
+ * single pass over the sequence, using a table of residue atom counts indexed by residue symbol.
+ *
+ * A stable isotope label applies to the atoms of the residues only, not to the atoms of the termini or
+ * of any modifications, in the same way as PeptideMassCalculator.
+ */
+public class PeptideCompositionCalculator {
+
+	private PeptideCompositionCalculator() { }
+	private static final PeptideCompositionCalculator _INSTANCE = new PeptideCompositionCalculator();
+	public static PeptideCompositionCalculator getInstance() { return _INSTANCE; }
+
+	/**
+	 * Get the composition of the supplied peptide, i.e. its residues plus H2O, with its isotope label.
+	 * A Peptide's modifications are masses with no composition, so they are not included. Use
+	 * getCompositionForPeptide( peptide, modificationCompositions ) to include modifications.
+	 *
+	 * @param peptide
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public Composition getCompositionForPeptide( Peptide peptide ) throws InvalidAminoAcidException {
+		return getCompositionForPeptide( peptide.getSequence(), null, peptide.getLabel() );
+	}
+
+	/**
+	 * Get the composition of the supplied peptide with the given modifications, i.e. its residues plus H2O,
+	 * with its isotope label, plus the modifications. The peptide's own modification masses are not used.
+	 *
+	 * @param peptide
+	 * @param modificationCompositions The composition of the modification at each position, using the
+	 *                                 same positions as Peptide.getModificationMasses(). May be null.
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public Composition getCompositionForPeptide( Peptide peptide, Map<Integer, Composition> modificationCompositions ) throws InvalidAminoAcidException {
+		return getCompositionForPeptide( peptide.getSequence(), modificationCompositions, peptide.getLabel() );
+	}
+
+	/**
+	 * Get the composition of the peptide with the given sequence, i.e. its residues plus H2O, with the
+	 * given label and modifications
+	 *
+	 * @param sequence
+	 * @param modificationCompositions The composition of the modification at each position, 0 is the N
+	 *                                 terminus, sequence.length + 1 is the C terminus. May be null.
+	 * @param label The isotope label on every residue, or null for no label
+	 * @return
+	 * @throws InvalidAminoAcidException
+	 */
+	public Composition getCompositionForPeptide( CharSequence sequence, Map<Integer, Composition> modificationCompositions, IsotopeLabel label ) throws InvalidAminoAcidException {
+
+		Composition composition = getCompositionOfResidues( sequence, 0, sequence.length(), label ).add( Composition.WATER );
+
+		if( modificationCompositions != null ) {
+			for( Composition modificationComposition : modificationCompositions.values() )
+				composition = composition.add( modificationComposition );
+		}
+
+		return composition;
+	}
+
+	/**
+	 * Get the summed composition of the residues from start (inclusive) to end (exclusive) in the given sequence
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @param label The isotope label on every residue, or null for no label
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public Composition getCompositionOfResidues( CharSequence sequence, int start, int end, IsotopeLabel label ) throws InvalidAminoAcidException {
+
+		int[] atomCounts = new int[ AtomUtils.NUM_ATOM_INDEXES ];
+
+		for( int i = start; i < end; i++ ) {
+
+			char residue = sequence.charAt( i );
+			int[] residueAtomCounts = residue < _TABLE_SIZE ? _RESIDUE_ATOM_COUNTS[ residue ] : null;
+
+			// throws the usual exception for the invalid residue
+			if( residueAtomCounts == null )
+				AminoAcidUtils.getAminoAcidBySymbol( residue );
+
+			for( int atom = 0; atom < AtomUtils.NUM_ATOM_INDEXES; atom++ )
+				atomCounts[ atom ] += residueAtomCounts[ atom ];
+		}
+
+		Composition composition = Composition.of( atomCounts );
+
+		if( label != null )
+			composition = composition.withLabel( label );
+
+		return composition;
+	}
+
+
+	private static final int _TABLE_SIZE = 128;
+
+	// the atom counts of each amino acid, indexed by residue symbol, null for invalid residues
+	private static final int[][] _RESIDUE_ATOM_COUNTS = new int[ _TABLE_SIZE ][];
+
+	static {
+		for( char residue = 0; residue < _TABLE_SIZE; residue++ ) {
+			try {
+				_RESIDUE_ATOM_COUNTS[ residue ] = AminoAcidUtils.getAminoAcidBySymbol( residue ).getAtomCounts();
+			} catch( InvalidAminoAcidException e ) {
+				// not an amino acid
+			}
+		}
+	}
+
+}
@@ -1,11 +1,7 @@
 package org.yeastrc.proteomics.peptide.peptide;
 
 import org.yeastrc.proteomics.mass.MassUtils.MassType;
-import org.yeastrc.proteomics.peptide.aminoacid.AminoAcid;
-import org.yeastrc.proteomics.peptide.aminoacid.AminoAcidUtils;
 import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
-import org.yeastrc.proteomics.peptide.atom.AtomUtils;
-import org.yeastrc.proteomics.peptide.isotope_label.IsotopeMassCalculator;
 
 public class PeptideMassCalculator {
 
@@ -26,8 +22,7 @@ public class PeptideMassCalculator {
 		double mass = getMassOfResiduesForPeptide( peptide, massType );
 		
 		// add mass of H2O
-		mass += AtomUtils.ATOM_OXYGEN.getMass( massType );
-		mass += 2 * AtomUtils.ATOM_HYDROGEN.getMass( massType );
+		mass += ResidueMassTable.getInstance( massType ).getWaterMass();
 		
 		return mass;
 		
@@ -45,19 +40,10 @@ public class PeptideMassCalculator {
 	 */
 	public double getMassOfResiduesForPeptide( Peptide peptide, MassType massType ) throws InvalidAminoAcidException {
 		
-		double mass = 0.0;
 		String s = peptide.getSequence();
-		
-		for (int i = 0; i < s.length(); i++){
-			
-			AminoAcid aminoAcid = AminoAcidUtils.getAminoAcidBySymbol( s.charAt(i) );
-			
-		    mass += aminoAcid.getMass( massType );
-		    
-		    // adjust mass for label if it is present
-		    if( peptide.getLabel() != null )
-		    	mass += IsotopeMassCalculator.getInstance().getMassShiftOnAminoAcidWithLabel( aminoAcid, peptide.getLabel(), massType );
-		}
+
+		// residue masses, adjusted for the label if it is present
+		double mass = ResidueMassTable.getInstance( massType, peptide.getLabel() ).getMassOfResidues( s, 0, s.length() );
 		
 		// add the mass of any modifications to this mass
 		if( peptide.getModificationMasses() != null ) {
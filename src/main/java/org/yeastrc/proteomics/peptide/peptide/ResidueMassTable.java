@@ -0,0 +1,224 @@
+package org.yeastrc.proteomics.peptide.peptide;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.aminoacid.AminoAcid;
+import org.yeastrc.proteomics.peptide.aminoacid.AminoAcidUtils;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeMassCalculator;
+
+/**
+ * The mass of every residue for one mass type and isotope label, precomputed into a table indexed by
+ * residue symbol. Peptide masses can be calculated straight from a CharSequence, char[] or byte[] range
+ * of a larger sequence without creating a Peptide or any other object.
+ *
+ * Tables are created once per mass type and label and are safe to use from multiple threads.
+ */
+public class ResidueMassTable {
+
+	/**
+	 * Get the table of unlabeled residue masses for the given mass type
+	 *
+	 * @param massType
+	 * @return
+	 */
+	public static ResidueMassTable getInstance( MassType massType ) {
+		return getInstance( massType, null );
+	}
+
+	/**
+	 * Get the table of residue masses for the given mass type and isotope label
+	 *
+	 * @param massType
+	 * @param label The isotope label on every residue, or null for no label
+	 * @return
+	 */
+	public static ResidueMassTable getInstance( MassType massType, IsotopeLabel label ) {
+
+		if( massType == null )
+			throw new IllegalArgumentException( "massType cannot be null" );
+
+		String key = massType.name() + ( label == null ? "" : ":" + label.getName() );
+
+		return _TABLES.computeIfAbsent( key, k -> new ResidueMassTable( massType, label ) );
+	}
+
+	private ResidueMassTable( MassType massType, IsotopeLabel label ) {
+
+		this.residueMasses = new double[ _TABLE_SIZE ];
+		Arrays.fill( this.residueMasses, Double.NaN );
+
+		for( char residue = 0; residue < _TABLE_SIZE; residue++ ) {
+
+			AminoAcid aminoAcid;
+
+			try {
+				aminoAcid = AminoAcidUtils.getAminoAcidBySymbol( residue );
+			} catch( InvalidAminoAcidException e ) {
+				continue;
+			}
+
+			double mass = aminoAcid.getMass( massType );
+
+			if( label != null )
+				mass += IsotopeMassCalculator.getInstance().getMassShiftOnAminoAcidWithLabel( aminoAcid, label, massType );
+
+			this.residueMasses[ residue ] = mass;
+		}
+
+		this.waterMass = AtomUtils.ATOM_OXYGEN.getMass( massType ) + 2 * AtomUtils.ATOM_HYDROGEN.getMass( massType );
+	}
+
+	/**
+	 * Get the mass of the given residue
+	 *
+	 * @param residue The residue symbol, e.g. K
+	 * @return The mass, or NaN if the residue is not a valid amino acid
+	 */
+	public double getResidueMass( int residue ) {
+		return residue >= 0 && residue < _TABLE_SIZE ? residueMasses[ residue ] : Double.NaN;
+	}
+
+	/**
+	 * Get the summed mass of the residues from start (inclusive) to end (exclusive) in the given sequence
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMassOfResidues( CharSequence sequence, int start, int end ) throws InvalidAminoAcidException {
+
+		double mass = 0.0;
+
+		for( int i = start; i < end; i++ )
+			mass += getResidueMass( sequence.charAt( i ) );
+
+		if( Double.isNaN( mass ) )
+			throwForInvalidResidue( sequence, start, end );
+
+		return mass;
+	}
+
+	/**
+	 * Get the summed mass of the residues from start (inclusive) to end (exclusive) in the given sequence
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMassOfResidues( char[] sequence, int start, int end ) throws InvalidAminoAcidException {
+
+		double mass = 0.0;
+
+		for( int i = start; i < end; i++ )
+			mass += getResidueMass( sequence[ i ] );
+
+		if( Double.isNaN( mass ) )
+			throwForInvalidResidue( new String( sequence, start, end - start ), 0, end - start );
+
+		return mass;
+	}
+
+	/**
+	 * Get the summed mass of the residues from start (inclusive) to end (exclusive) in the given sequence of
+	 * single byte residue symbols
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMassOfResidues( byte[] sequence, int start, int end ) throws InvalidAminoAcidException {
+
+		double mass = 0.0;
+
+		for( int i = start; i < end; i++ )
+			mass += getResidueMass( sequence[ i ] & 0xFF );
+
+		if( Double.isNaN( mass ) ) {
+
+			for( int i = start; i < end; i++ )
+				AminoAcidUtils.getAminoAcidBySymbol( (char)( sequence[ i ] & 0xFF ) );
+		}
+
+		return mass;
+	}
+
+	/**
+	 * Get the mass of the peptide from start (inclusive) to end (exclusive) in the given sequence, i.e. the mass
+	 * of the residues plus water
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMass( CharSequence sequence, int start, int end ) throws InvalidAminoAcidException {
+		return getMassOfResidues( sequence, start, end ) + waterMass;
+	}
+
+	/**
+	 * Get the mass of the peptide from start (inclusive) to end (exclusive) in the given sequence, i.e. the mass
+	 * of the residues plus water
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMass( char[] sequence, int start, int end ) throws InvalidAminoAcidException {
+		return getMassOfResidues( sequence, start, end ) + waterMass;
+	}
+
+	/**
+	 * Get the mass of the peptide from start (inclusive) to end (exclusive) in the given sequence of single byte
+	 * residue symbols, i.e. the mass of the residues plus water
+	 *
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws InvalidAminoAcidException If any of the residues is not a valid amino acid
+	 */
+	public double getMass( byte[] sequence, int start, int end ) throws InvalidAminoAcidException {
+		return getMassOfResidues( sequence, start, end ) + waterMass;
+	}
+
+	/**
+	 * The mass of water (H2O) for this table's mass type, which is added to the residue masses to get a peptide mass
+	 *
+	 * @return
+	 */
+	public double getWaterMass() {
+		return waterMass;
+	}
+
+	/**
+	 * Throw the same exception as AminoAcidUtils would for the first invalid residue
+	 */
+	private static void throwForInvalidResidue( CharSequence sequence, int start, int end ) {
+		for( int i = start; i < end; i++ )
+			AminoAcidUtils.getAminoAcidBySymbol( sequence.charAt( i ) );
+	}
+
+
+	private static final int _TABLE_SIZE = 128;
+
+	private static final ConcurrentMap<String, ResidueMassTable> _TABLES = new ConcurrentHashMap<>();
+
+	private final double[] residueMasses;
+	private final double waterMass;
+
+}
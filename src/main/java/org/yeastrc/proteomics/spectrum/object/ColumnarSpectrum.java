@@ -0,0 +1,230 @@
+package org.yeastrc.proteomics.spectrum.object;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A spectrum held as two primitive arrays, the m/z of each peak in ascending order and its intensity, instead
+ * of a Peak object per peak. A peak takes 12 bytes, so many more spectra can be held in memory than as Spectrum.
+ * Peaks with the same m/z are in the order they were given. Immutable.
+ *
+ * Peak objects are created only on request, by getPeak(), getPeaks() and toSpectrum().
+ */
+public final class ColumnarSpectrum {
+
+	/**
+	 * Get a spectrum with the given peaks. The arrays are copied, and the peaks sorted by m/z if they aren't already.
+	 * @param massToCharges The m/z of each peak
+	 * @param intensities The intensity of each peak
+	 * @return
+	 */
+	public static ColumnarSpectrum getInstance( double[] massToCharges, float[] intensities ) {
+
+		if( massToCharges.length != intensities.length )
+			throw new IllegalArgumentException( "Got " + massToCharges.length + " m/z values but " + intensities.length + " intensities." );
+
+		return sortPeaks( massToCharges.clone(), intensities.clone() );
+	}
+
+	/**
+	 * Get a spectrum of the given peaks, sorting them into new arrays if they aren't sorted by m/z. The arrays
+	 * become the spectrum's if they are.
+	 */
+	private static ColumnarSpectrum sortPeaks( double[] massToCharges, float[] intensities ) {
+
+		boolean sorted = true;
+		for( int i = 1; i < massToCharges.length; i++ ) {
+			if( Double.compare( massToCharges[ i - 1 ], massToCharges[ i ] ) > 0 ) {
+				sorted = false;
+				break;
+			}
+		}
+
+		if( sorted )
+			return new ColumnarSpectrum( massToCharges, intensities );
+
+		// a stable sort, so equal m/z stay in the given order
+		Integer[] order = new Integer[ massToCharges.length ];
+		for( int i = 0; i < order.length; i++ )
+			order[ i ] = i;
+
+		Arrays.sort( order, ( a, b ) -> Double.compare( massToCharges[ a ], massToCharges[ b ] ) );
+
+		double[] sortedMassToCharges = new double[ order.length ];
+		float[] sortedIntensities = new float[ order.length ];
+
+		for( int i = 0; i < order.length; i++ ) {
+			sortedMassToCharges[ i ] = massToCharges[ order[ i ] ];
+			sortedIntensities[ i ] = intensities[ order[ i ] ];
+		}
+
+		return new ColumnarSpectrum( sortedMassToCharges, sortedIntensities );
+	}
+
+	/**
+	 * Get a columnar copy of the current peaks of the given spectrum, sorted by m/z. Peaks with the same m/z are
+	 * in the order of the peak list. Intensities are narrowed to float.
+	 * @param spectrum
+	 * @return
+	 */
+	public static ColumnarSpectrum fromSpectrum( Spectrum spectrum ) {
+
+		List<Peak> peaks = spectrum.getPeaks();
+
+		double[] massToCharges = new double[ peaks.size() ];
+		float[] intensities = new float[ peaks.size() ];
+
+		int i = 0;
+		for( Peak peak : peaks ) {
+			massToCharges[ i ] = peak.getMassToCharge();
+			intensities[ i ] = (float)peak.getIntensity();
+			i++;
+		}
+
+		return sortPeaks( massToCharges, intensities );
+	}
+
+	private ColumnarSpectrum( double[] massToCharges, float[] intensities ) {
+		this.massToCharges = massToCharges;
+		this.intensities = intensities;
+	}
+
+	/**
+	 * Get a spectrum with the first numPeaks of the given peaks, which must be sorted by m/z. For building the
+	 * output of spectrum processors from their scratch arrays. The peaks are copied.
+	 * @param sortedMassToCharges
+	 * @param intensities
+	 * @param numPeaks
+	 * @return
+	 */
+	public static ColumnarSpectrum getSortedInstance( double[] sortedMassToCharges, float[] intensities, int numPeaks ) {
+
+		for( int i = 1; i < numPeaks; i++ ) {
+			if( !( sortedMassToCharges[ i - 1 ] <= sortedMassToCharges[ i ] ) )
+				throw new IllegalArgumentException( "Peak m/z values must be sorted in ascending order, they are not at index " + i );
+		}
+
+		return new ColumnarSpectrum( Arrays.copyOf( sortedMassToCharges, numPeaks ), Arrays.copyOf( intensities, numPeaks ) );
+	}
+
+	public int getNumPeaks() {
+		return massToCharges.length;
+	}
+
+	public double getMassToCharge( int peak ) {
+		return massToCharges[ peak ];
+	}
+
+	public float getIntensity( int peak ) {
+		return intensities[ peak ];
+	}
+
+	/**
+	 * Get the m/z of each peak, in ascending order. The returned array must not be modified.
+	 * @return
+	 */
+	public double[] getMassToCharges() {
+		return massToCharges;
+	}
+
+	/**
+	 * Get the intensity of each peak. The returned array must not be modified.
+	 * @return
+	 */
+	public float[] getIntensities() {
+		return intensities;
+	}
+
+	/**
+	 * Returns a sum of all the intensities of all the peaks
+	 * @return
+	 */
+	public double getTotalIntensity() {
+
+		if( this.totalIntensity == 0.0 ) {
+			double total = 0.0;
+			for( float intensity : this.intensities )
+				total += intensity;
+
+			this.totalIntensity = total;
+		}
+
+		return this.totalIntensity;
+	}
+
+	/**
+	 * Get a new Peak for the given peak. Its spectrum is null.
+	 * @param peak
+	 * @return
+	 */
+	public Peak getPeak( int peak ) {
+		return new Peak( null, massToCharges[ peak ], intensities[ peak ] );
+	}
+
+	/**
+	 * Get a read only view of the peaks, in order of m/z. Each get() creates a new Peak. Its spectrum is null.
+	 * @return
+	 */
+	public List<Peak> getPeaks() {
+		return new PeakList( null );
+	}
+
+	/**
+	 * Get a Spectrum for legacy Peak consumers, with a read only view of these peaks as its peak list. Each
+	 * get() of the peak list creates a new Peak, whose spectrum is the returned Spectrum.
+	 * @return
+	 */
+	public Spectrum toSpectrum() {
+
+		PeakList peakList = new PeakList( null );
+		Spectrum spectrum = new Spectrum( peakList );
+		peakList.spectrum = spectrum;
+
+		return spectrum;
+	}
+
+	@Override
+	public boolean equals( Object o ) {
+		if( this == o ) return true;
+		if( !( o instanceof ColumnarSpectrum ) ) return false;
+		ColumnarSpectrum that = (ColumnarSpectrum) o;
+		return Arrays.equals( massToCharges, that.massToCharges ) && Arrays.equals( intensities, that.intensities );
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode( massToCharges ) + Arrays.hashCode( intensities );
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnarSpectrum[numPeaks=" + massToCharges.length + "]";
+	}
+
+
+	private final class PeakList extends AbstractList<Peak> {
+
+		PeakList( Spectrum spectrum ) {
+			this.spectrum = spectrum;
+		}
+
+		@Override
+		public Peak get( int index ) {
+			return new Peak( spectrum, massToCharges[ index ], intensities[ index ] );
+		}
+
+		@Override
+		public int size() {
+			return massToCharges.length;
+		}
+
+		private Spectrum spectrum;
+	}
+
+
+	private final double[] massToCharges;
+	private final float[] intensities;
+	private volatile double totalIntensity = 0.0;
+
+}
@@ -10,10 +10,13 @@ public class Spectrum {
 	 */
 	public double getTotalIntensity() {
 		
+		// summed into a local, so threads that get here at once each store the whole sum
 		if( this.totalIntensity == 0.0 ) {
+			double total = 0.0;
 			for( Peak p : this.peaks ) {
-				this.totalIntensity += p.getIntensity();
+				total += p.getIntensity();
 			}
+			this.totalIntensity = total;
 		}
 		
 		return this.totalIntensity;
@@ -25,7 +28,7 @@ public class Spectrum {
 	}
 
 	private final List<Peak> peaks;
-	private double totalIntensity = 0.0;
+	private volatile double totalIntensity = 0.0;
 	
 	
 	public Spectrum( List<Peak> peaks ) {
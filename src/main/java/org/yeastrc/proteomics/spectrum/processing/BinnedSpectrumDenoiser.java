@@ -1,10 +1,10 @@
 package org.yeastrc.proteomics.spectrum.processing;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeSet;
 
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
 import org.yeastrc.proteomics.spectrum.object.Peak;
 import org.yeastrc.proteomics.spectrum.object.Spectrum;
 
@@ -15,103 +15,440 @@ import org.yeastrc.proteomics.spectrum.object.Spectrum;
  * end so that the final bin contains the final peak. E.g., the
  * first bin will be mz >= 100 < 200 if the first peak is 136 and the binWidth
  * is 100. If the binWidth is 25, the first bin would be mz >= 125 and < 150
- * 
+ *
+ * The bin width may be fractional. Optionally the bins may be sliding windows
+ * that start at every multiple of a step smaller than the bin width, in which
+ * case a peak is kept if it is among the most intense numPeaks peaks of any
+ * window it is in. The bins of these are given by getFractionalBins().
+ *
+ * The peaks are visited once, in order of m/z, with the most intense peaks of
+ * the current bin kept in a min-heap of at most numPeaks peaks.
+ *
  * @author Michael Riffle
  *
  */
-public class BinnedSpectrumDenoiser implements SpectrumProcessor {
-
+public class BinnedSpectrumDenoiser implements SpectrumProcessor, SpectrumProcessingStage {
+	
+	/**
+	 * Process the input spectrum. The peaks are read from its peak list each time, and sorted by m/z in
+	 * arrays reused by the thread. The kept peaks are the same Peak objects.
+	 * @param spectrum
+	 * @return
+	 * @throws Exception
+	 */
 	@Override
 	public Spectrum processSpectrum(Spectrum spectrum) throws Exception {
 		
-		List<SpectrumBin> bins = this.getBins( spectrum );
-		List<Peak> newPeaks = new ArrayList<Peak>();		// the new list of peaks we're building for the new spectrum
+		validate( spectrum.getPeaks() == null ? 0 : spectrum.getPeaks().size() );
+		
+		PeakBuffer peaks = _SCRATCH.get().peakBuffer;
+		peaks.load( spectrum, Double.NaN );
+		
+		process( peaks );
+		
+		return peaks.toSpectrum();
+	}
+	
+	/**
+	 * Process the input columnar spectrum. The same peaks are kept as by processSpectrum( Spectrum ).
+	 * @param spectrum
+	 * @return
+	 * @throws Exception
+	 */
+	@Override
+	public ColumnarSpectrum processSpectrum( ColumnarSpectrum spectrum ) throws Exception {
+		
+		validate( spectrum.getNumPeaks() );
+		
+		double[] massToCharges = spectrum.getMassToCharges();
+		float[] intensities = spectrum.getIntensities();
+		
+		Scratch scratch = getScratch( massToCharges.length );
+		
+		double[] doubleIntensities = scratch.intensities;
+		for( int i = 0; i < intensities.length; i++ )
+			doubleIntensities[ i ] = intensities[ i ];
+		
+		int[] keptPeaks = scratch.keptPeaks;
+		int numKeptPeaks = this.selectPeaks( massToCharges, doubleIntensities, null, massToCharges.length, keptPeaks, scratch );
+		
+		double[] newMassToCharges = new double[ numKeptPeaks ];
+		float[] newIntensities = new float[ numKeptPeaks ];
+		
+		for( int i = 0; i < numKeptPeaks; i++ ) {
+			newMassToCharges[ i ] = massToCharges[ keptPeaks[ i ] ];
+			newIntensities[ i ] = intensities[ keptPeaks[ i ] ];
+		}
+		
+		return ColumnarSpectrum.getSortedInstance( newMassToCharges, newIntensities, numKeptPeaks );
+	}
+	
+	/**
+	 * Keep the same peaks of the buffer as processSpectrum( Spectrum ) would, considering the peaks of each
+	 * bin in the buffer's order. The buffer is left sorted by m/z, and then intensity. An empty buffer is
+	 * left empty.
+	 * @param peaks
+	 * @throws Exception
+	 */
+	@Override
+	public void process( PeakBuffer peaks ) throws Exception {
+		
+		if( peaks.getSize() == 0 )
+			return;
+		
+		validate( peaks.getSize() );
+		
+		int[] listIndexes = null;
+		if( !peaks.isSortedByMassToCharge() ) {
+			listIndexes = peaks.getIndexScratch();
+			peaks.sortByMassToCharge( listIndexes );
+		}
+		
+		Scratch scratch = getScratch( peaks.getSize() );
+		int numKeptPeaks = this.selectPeaks( peaks.getMassToCharges(), peaks.getIntensities(), listIndexes, peaks.getSize(), scratch.keptPeaks, scratch );
+		
+		peaks.reorder( scratch.keptPeaks, numKeptPeaks );
+	}
+	
+	private void validate( int numSpectrumPeaks ) throws Exception {
+		
+		if( numSpectrumPeaks < 1 )
+			throw new Exception( "Spectrum has no peaks." );
+		
+		if( !( this.binWidth > 0 ) || this.numPeaks < 1 )
+			throw new Exception( "Bin width and/or num peaks haven't been defined." );
+	}
+	
+	/**
+	 * Choose the peaks to keep from peaks sorted by m/z, in one sweep over the bins in order of m/z.
+	 *
+	 * Within a bin the peaks are considered in the order of the spectrum's peak list. Until the bin has numPeaks
+	 * peaks each is kept, unless a peak with the same m/z and intensity already is. After that a peak replaces
+	 * the least intense kept peak (the lowest m/z of those if there is a tie) if it is more intense. These are
+	 * the rules of the TreeSet of Peaks this denoiser used before, so the same peaks are kept.
+	 *
+	 * @param massToCharges The m/z of each peak, sorted
+	 * @param intensities The intensity of each peak
+	 * @param listIndexes The index of each peak in the peak list, or null if the peak list is sorted by m/z
+	 * @param n The number of peaks
+	 * @param keptPeaks Receives the indexes of the kept peaks, sorted by m/z and then intensity
+	 * @param scratch Scratch arrays with room for n peaks
+	 * @return The number of kept peaks
+	 */
+	private int selectPeaks( double[] massToCharges, double[] intensities, int[] listIndexes, int n, int[] keptPeaks, Scratch scratch ) {
+		
+		// peaks with the same m/z and intensity are the same Peak to a TreeSet. label each with the first of them
+		int[] duplicateOf = scratch.duplicateOf;
+		for( int i = 0; i < n; i++ ) {
+			duplicateOf[ i ] = i;
+			for( int j = i - 1; j >= 0 && massToCharges[ j ] == massToCharges[ i ]; j-- ) {
+				if( intensities[ j ] == intensities[ i ] )
+					duplicateOf[ i ] = duplicateOf[ j ];
+			}
+		}
+		
+		boolean[] isKept = scratch.isKept;
+		boolean[] isInHeap = scratch.isInHeap;		// by the first of each set of duplicates, all false between bins
+		int[] heap = scratch.getHeap( Math.min( this.numPeaks, n ) );		// never holds more than a bin's peaks
+		long[] binOrder = listIndexes == null ? null : scratch.binOrder;
+		
+		Arrays.fill( isKept, 0, n, false );
+		
+		int first = 0;
+		int end = 0;
+		long bin = getFirstBin( massToCharges[ 0 ] );
 		
-		// loop over each of the bins, then loop over and find peaks that fit in that bin and determine which of those to keep
-		// in the peak list for this specific bin. Then add the peak list for the bin to the new list of peaks we're building.
-		for( SpectrumBin bin : bins ) {
-			Collection<Peak> binPeaks = new TreeSet<Peak>();
+		while( first < n ) {
+			
+			double binStart = bin * this.binStep;
+			double binEnd = binStart + this.binWidth;
+			
+			while( first < n && massToCharges[ first ] < binStart )
+				first++;
+			
+			if( first == n )
+				break;
 			
-			for( Peak p : spectrum.getPeaks() ) {
+			// skip over empty bins
+			if( massToCharges[ first ] >= binEnd ) {
+				bin = Math.max( bin + 1, getFirstBin( massToCharges[ first ] ) );
+				continue;
+			}
+			
+			end = Math.max( end, first );
+			while( end < n && massToCharges[ end ] < binEnd )
+				end++;
+			
+			// consider the peaks of this bin in peak list order
+			int binSize = end - first;
+			if( binOrder != null ) {
+				for( int i = first; i < end; i++ )
+					binOrder[ i - first ] = ( (long)listIndexes[ i ] << 32 ) | i;
+				
+				Arrays.sort( binOrder, 0, binSize );
+			}
+			
+			int heapSize = 0;
+			
+			for( int k = 0; k < binSize; k++ ) {
+				
+				int peak = binOrder == null ? first + k : (int)binOrder[ k ];
+				
+				if( heapSize < this.numPeaks ) {
+					if( !isInHeap[ duplicateOf[ peak ] ] )
+						heapSize = heapAdd( heap, heapSize, peak, massToCharges, intensities, isInHeap, duplicateOf );
 				
-				// only examine peaks with a m/z in the range of the current bin
-				if( p.getMassToCharge() >= bin.start && p.getMassToCharge() < bin.end ) {
+				} else if( intensities[ peak ] > intensities[ heap[ 0 ] ] ) {
 					
-					if( binPeaks.size() < this.numPeaks ) {
-						binPeaks.add( p );
-					} else {
-						
-						// iterate over peaks chosen so far, determine which one (if any) should be removed in favor of the current peak
-						Peak peakToRemove = null;
-						for( Peak binPeak : binPeaks ) {
-							if( p.getIntensity() > binPeak.getIntensity() ) {
-								if( peakToRemove == null || binPeak.getIntensity() < peakToRemove.getIntensity() ) {
-									peakToRemove = binPeak;
-								}
-							}
-						}
-						
-						if( peakToRemove != null ) {
-							binPeaks.remove( peakToRemove );
-							binPeaks.add( p );
-						}
-						
-					}
+					isInHeap[ duplicateOf[ heap[ 0 ] ] ] = false;
+					heap[ 0 ] = heap[ --heapSize ];
+					heapSiftDown( heap, heapSize, 0, massToCharges, intensities );
 					
+					// a TreeSet doesn't add a duplicate of a peak it has, so the bin has one fewer peak
+					if( !isInHeap[ duplicateOf[ peak ] ] )
+						heapSize = heapAdd( heap, heapSize, peak, massToCharges, intensities, isInHeap, duplicateOf );
 				}
-				
-			}//end iteration over peaks
+			}
+			
+			for( int i = 0; i < heapSize; i++ ) {
+				isKept[ heap[ i ] ] = true;
+				isInHeap[ duplicateOf[ heap[ i ] ] ] = false;
+			}
 			
-			// add all the peaks for this bin to the new peak list
-			newPeaks.addAll( binPeaks );
+			bin++;
+		}
+		
+		// in order of m/z, and of intensity for peaks of the same m/z (in different sliding windows, duplicates may both be kept)
+		int numKeptPeaks = 0;
+		for( int i = 0; i < n; i++ ) {
+			if( !isKept[ i ] )
+				continue;
 			
-		}//end iteration over bins
+			int position = numKeptPeaks;
+			while( position > 0 && massToCharges[ keptPeaks[ position - 1 ] ] == massToCharges[ i ] && intensities[ keptPeaks[ position - 1 ] ] > intensities[ i ] )
+				position--;
+			
+			if( position > 0 && duplicateOf[ keptPeaks[ position - 1 ] ] == duplicateOf[ i ] )
+				continue;
+			
+			System.arraycopy( keptPeaks, position, keptPeaks, position + 1, numKeptPeaks - position );
+			keptPeaks[ position ] = i;
+			numKeptPeaks++;
+		}
 		
-		return new Spectrum( newPeaks );		
-	}	
+		return numKeptPeaks;
+	}
+	
+	/**
+	 * The first bin whose end is above the given m/z
+	 */
+	private long getFirstBin( double massToCharge ) {
+		
+		long bin = (long)Math.floor( ( massToCharge - this.binWidth ) / this.binStep ) + 1;
+		
+		// correct for any rounding
+		while( ( bin - 1 ) * this.binStep + this.binWidth > massToCharge )
+			bin--;
+		while( bin * this.binStep + this.binWidth <= massToCharge )
+			bin++;
+		
+		return bin;
+	}
+	
+	/**
+	 * Scratch arrays for this thread with room for at least the given number of peaks
+	 */
+	private static Scratch getScratch( int numPeaks ) {
+		
+		Scratch scratch = _SCRATCH.get();
+		
+		if( scratch.keptPeaks.length < numPeaks ) {
+			scratch = new Scratch( Math.max( numPeaks, scratch.keptPeaks.length * 2 ), scratch.peakBuffer );
+			_SCRATCH.set( scratch );
+		}
+		
+		return scratch;
+	}
+	
+	private static final class Scratch {
+		
+		Scratch( int numPeaks, PeakBuffer peakBuffer ) {
+			this.peakBuffer = peakBuffer;
+			this.keptPeaks = new int[ numPeaks ];
+			this.duplicateOf = new int[ numPeaks ];
+			this.isKept = new boolean[ numPeaks ];
+			this.isInHeap = new boolean[ numPeaks ];
+			this.binOrder = new long[ numPeaks ];
+			this.intensities = new double[ numPeaks ];
+		}
+		
+		int[] getHeap( int numPeaks ) {
+			if( this.heap.length < numPeaks )
+				this.heap = new int[ numPeaks ];
+			
+			return this.heap;
+		}
+		
+		private final int[] keptPeaks;
+		private final int[] duplicateOf;
+		private final boolean[] isKept;
+		private final boolean[] isInHeap;
+		private final long[] binOrder;
+		private final double[] intensities;
+		private int[] heap = new int[ 0 ];
+		
+		// the peaks of a Spectrum being processed, sorted by m/z
+		private final PeakBuffer peakBuffer;
+	}
+	
+	private static final ThreadLocal<Scratch> _SCRATCH = ThreadLocal.withInitial( () -> new Scratch( 1024, PeakBuffer.getInstance() ) );
+	
+	private static int heapAdd( int[] heap, int heapSize, int peak, double[] massToCharges, double[] intensities, boolean[] isInHeap, int[] duplicateOf ) {
+		
+		isInHeap[ duplicateOf[ peak ] ] = true;
+		
+		// sift up
+		int i = heapSize;
+		while( i > 0 ) {
+			int parent = ( i - 1 ) >>> 1;
+			if( !isWeaker( peak, heap[ parent ], massToCharges, intensities ) )
+				break;
+			
+			heap[ i ] = heap[ parent ];
+			i = parent;
+		}
+		heap[ i ] = peak;
+		
+		return heapSize + 1;
+	}
+	
+	private static void heapSiftDown( int[] heap, int heapSize, int i, double[] massToCharges, double[] intensities ) {
+		
+		int peak = heap[ i ];
+		
+		while( true ) {
+			int child = 2 * i + 1;
+			if( child >= heapSize )
+				break;
+			
+			if( child + 1 < heapSize && isWeaker( heap[ child + 1 ], heap[ child ], massToCharges, intensities ) )
+				child++;
+			
+			if( !isWeaker( heap[ child ], peak, massToCharges, intensities ) )
+				break;
+			
+			heap[ i ] = heap[ child ];
+			i = child;
+		}
+		heap[ i ] = peak;
+	}
+	
+	/**
+	 * Whether peak a would be replaced before peak b: it is less intense, or as intense with a lower m/z
+	 */
+	private static boolean isWeaker( int a, int b, double[] massToCharges, double[] intensities ) {
+		
+		if( intensities[ a ] != intensities[ b ] )
+			return intensities[ a ] < intensities[ b ];
+		
+		return massToCharges[ a ] < massToCharges[ b ];
+	}
 	
 	/**
 	 * Get the bins calculated for this BinnedSpectrumDenoiser given the
 	 * binWidth and numPeaks defined.
 	 * @param spectrum
 	 * @return
-	 * @throws Exception
+	 * @throws Exception If the bin width is fractional or the bins are sliding windows, use getFractionalBins()
 	 */
 	public List<SpectrumBin> getBins( Spectrum spectrum ) throws Exception {
 		
-		if( spectrum.getPeaks() == null || spectrum.getPeaks().size() < 1 )
-			throw new Exception( "Spectrum has no peaks." );
+		validate( spectrum.getPeaks() == null ? 0 : spectrum.getPeaks().size() );
+		
+		return getBins( getMinMassToCharge( spectrum ), getMaxMassToCharge( spectrum ) );
+	}
+	
+	/**
+	 * Get the bins calculated for this BinnedSpectrumDenoiser for the given columnar spectrum
+	 * @param spectrum
+	 * @return
+	 * @throws Exception If the bin width is fractional or the bins are sliding windows, use getFractionalBins()
+	 */
+	public List<SpectrumBin> getBins( ColumnarSpectrum spectrum ) throws Exception {
+		
+		validate( spectrum.getNumPeaks() );
+		
+		// the peaks are in order of m/z
+		return getBins( spectrum.getMassToCharge( 0 ), spectrum.getMassToCharge( spectrum.getNumPeaks() - 1 ) );
+	}
+	
+	private List<SpectrumBin> getBins( double minMz, double maxMz ) throws Exception {
+		
+		if( this.binStep != this.binWidth || this.binWidth != (int)this.binWidth )
+			throw new Exception( "Bin width is fractional or bins are sliding windows, use getFractionalBins()." );
 		
 		List<SpectrumBin> bins = new ArrayList<SpectrumBin>();
 		
-		if( this.binWidth <= 0 || this.numPeaks < 1 )
-			throw new Exception( "Bin width and/or num peaks haven't been defined." );
-			
-
-		double minMz = 0.0;
-		double maxMz = 0.0;
-				
-		// find min and max peaks--it is not assumed that the peaks are in order of m/z,
-		// though such an assumption could possibly be made. Review in future.
-		for (Peak p : spectrum.getPeaks()) {
-			if (minMz == 0.0 || p.getMassToCharge() < minMz)
-				minMz = p.getMassToCharge();
-
-			if (maxMz == 0.0 || p.getMassToCharge() > maxMz)
-				maxMz = p.getMassToCharge();
-		}
-
-		int firstStart = getPreviousMultiple(this.binWidth, minMz);
-		int lastStart = getPreviousMultiple(this.binWidth, maxMz);
-
-		for (int i = firstStart; i <= lastStart; i += this.binWidth) {
-			SpectrumBin bin = new SpectrumBin( i, i + this.binWidth );
-			bins.add(bin);
-		}
-
+		for( long bin = getFirstBin( minMz ); bin * this.binStep <= maxMz; bin++ )
+			bins.add( new SpectrumBin( (int)( bin * this.binStep ), (int)( bin * this.binStep + this.binWidth ) ) );
+		
 		return bins;
 	}
 	
+	/**
+	 * Get the bins calculated for this BinnedSpectrumDenoiser, for any bin width and step
+	 * @param spectrum
+	 * @return
+	 * @throws Exception
+	 */
+	public List<FractionalSpectrumBin> getFractionalBins( Spectrum spectrum ) throws Exception {
+		
+		validate( spectrum.getPeaks() == null ? 0 : spectrum.getPeaks().size() );
+		
+		return getFractionalBins( getMinMassToCharge( spectrum ), getMaxMassToCharge( spectrum ) );
+	}
+	
+	/**
+	 * Get the bins calculated for this BinnedSpectrumDenoiser for the given columnar spectrum, for any bin width and step
+	 * @param spectrum
+	 * @return
+	 * @throws Exception
+	 */
+	public List<FractionalSpectrumBin> getFractionalBins( ColumnarSpectrum spectrum ) throws Exception {
+		
+		validate( spectrum.getNumPeaks() );
+		
+		return getFractionalBins( spectrum.getMassToCharge( 0 ), spectrum.getMassToCharge( spectrum.getNumPeaks() - 1 ) );
+	}
+	
+	private List<FractionalSpectrumBin> getFractionalBins( double minMz, double maxMz ) {
+		
+		List<FractionalSpectrumBin> bins = new ArrayList<FractionalSpectrumBin>();
+		
+		for( long bin = getFirstBin( minMz ); bin * this.binStep <= maxMz; bin++ )
+			bins.add( new FractionalSpectrumBin( bin * this.binStep, bin * this.binStep + this.binWidth ) );
+		
+		return bins;
+	}
+	
+	private static double getMinMassToCharge( Spectrum spectrum ) {
+		
+		double minMz = Double.POSITIVE_INFINITY;
+		for( Peak p : spectrum.getPeaks() )
+			minMz = Math.min( minMz, p.getMassToCharge() );
+		
+		return minMz;
+	}
+	
+	private static double getMaxMassToCharge( Spectrum spectrum ) {
+		
+		double maxMz = Double.NEGATIVE_INFINITY;
+		for( Peak p : spectrum.getPeaks() )
+			maxMz = Math.max( maxMz, p.getMassToCharge() );
+		
+		return maxMz;
+	}
+	
 	/**
 	 * Get the previous multiple of "range" from the starting value.
 	 * E.g., if range is 50, this method would return 150 for a value
@@ -148,21 +485,70 @@ public class BinnedSpectrumDenoiser implements SpectrumProcessor {
 	public static BinnedSpectrumDenoiser getInstance( int binWidth, int numPeaks ) {
 		return new BinnedSpectrumDenoiser( binWidth, numPeaks );
 	}
-
+	
+	/**
+	 * Get a denoiser with bins of the given, possibly fractional, width
+	 * @param binWidth
+	 * @param numPeaks
+	 * @return
+	 */
+	public static BinnedSpectrumDenoiser getInstance( double binWidth, int numPeaks ) {
+		return new BinnedSpectrumDenoiser( binWidth, binWidth, numPeaks );
+	}
+	
+	/**
+	 * Get a denoiser with sliding windows of the given width, one starting at each multiple of binStep
+	 * @param binWidth
+	 * @param binStep Must be > 0 and <= binWidth
+	 * @param numPeaks
+	 * @return
+	 */
+	public static BinnedSpectrumDenoiser getInstance( double binWidth, double binStep, int numPeaks ) {
+		
+		if( !( binStep > 0 ) || binStep > binWidth )
+			throw new IllegalArgumentException( "binStep must be > 0 and <= binWidth." );
+		
+		return new BinnedSpectrumDenoiser( binWidth, binStep, numPeaks );
+	}
+	
 	public BinnedSpectrumDenoiser( int binWidth, int numPeaks ) {
+		this( binWidth, binWidth, numPeaks );
+	}
+	
+	private BinnedSpectrumDenoiser( double binWidth, double binStep, int numPeaks ) {
 		this.binWidth = binWidth;
+		this.binStep = binStep;
 		this.numPeaks = numPeaks;
 	}
 	
+	/**
+	 * The bin width, rounded down if it is fractional
+	 * @return
+	 */
 	public int getBinWidth() {
+		return (int)binWidth;
+	}
+	/**
+	 * The bin width, which may be fractional
+	 * @return
+	 */
+	public double getFractionalBinWidth() {
 		return binWidth;
 	}
+	/**
+	 * The distance between the starts of consecutive bins, the bin width unless they are sliding windows
+	 * @return
+	 */
+	public double getBinStep() {
+		return binStep;
+	}
 	public int getNumPeaks() {
 		return numPeaks;
 	}
-
-
-	private final int binWidth;
-	private final int numPeaks;
 	
+	
+	private final double binWidth;
+	private final double binStep;
+	private final int numPeaks;
+
 }
@@ -0,0 +1,23 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+/**
+ * A bin of a BinnedSpectrumDenoiser whose width or step is fractional, m/z >= start and < end
+ */
+public class FractionalSpectrumBin {
+	
+	public double getStart() {
+		return start;
+	}
+	public double getEnd() {
+		return end;
+	}
+	
+	public FractionalSpectrumBin( double start, double end ) {
+		this.start = start;
+		this.end = end;
+	}
+	
+	public final double start;
+	public final double end;
+	
+}
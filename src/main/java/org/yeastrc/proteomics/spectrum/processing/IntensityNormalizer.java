@@ -0,0 +1,53 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+/**
+ * A SpectrumProcessingStage that scales the intensities of a spectrum's peaks so that the most intense
+ * peak has the given intensity. Spectra with no peaks above 0 intensity are unchanged.
+ */
+public class IntensityNormalizer implements SpectrumProcessingStage {
+
+	/**
+	 * Get a normalizer that scales the most intense peak to the given intensity, e.g. 100
+	 * @param maxIntensity
+	 * @return
+	 */
+	public static IntensityNormalizer getInstance( double maxIntensity ) {
+
+		if( !( maxIntensity > 0 ) )
+			throw new IllegalArgumentException( "maxIntensity must be > 0." );
+
+		return new IntensityNormalizer( maxIntensity );
+	}
+
+	private IntensityNormalizer( double maxIntensity ) {
+		this.maxIntensity = maxIntensity;
+	}
+
+	@Override
+	public void process( PeakBuffer peaks ) {
+
+		double[] intensities = peaks.getIntensities();
+		int size = peaks.getSize();
+
+		double mostIntense = 0.0;
+		for( int i = 0; i < size; i++ ) {
+			if( intensities[ i ] > mostIntense )
+				mostIntense = intensities[ i ];
+		}
+
+		if( mostIntense == 0.0 )
+			return;
+
+		double scale = this.maxIntensity / mostIntense;
+		for( int i = 0; i < size; i++ )
+			intensities[ i ] *= scale;
+	}
+
+	public double getMaxIntensity() {
+		return maxIntensity;
+	}
+
+
+	private final double maxIntensity;
+
+}
@@ -0,0 +1,361 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+/**
+ * A mutable buffer of peaks in primitive arrays, which the stages of a SpectrumProcessingPipeline change in
+ * place. The arrays grow as needed and are reused for each spectrum loaded, so processing a spectrum allocates
+ * nothing once they are large enough. Not safe to use from multiple threads, the pipeline has one per thread.
+ *
+ * The peaks start in the order of the loaded spectrum's peak list. Stages remove peaks, change intensities
+ * and may sort the peaks by m/z.
+ */
+public final class PeakBuffer {
+
+	/**
+	 * Get a new, empty buffer
+	 * @return
+	 */
+	public static PeakBuffer getInstance() {
+		return new PeakBuffer();
+	}
+
+	private PeakBuffer() { }
+
+	/**
+	 * Replace the contents of this buffer with the peaks of the given spectrum
+	 * @param spectrum
+	 * @param precursorMassToCharge The m/z of the spectrum's precursor, or NaN if it isn't known
+	 */
+	public void load( Spectrum spectrum, double precursorMassToCharge ) {
+
+		clearSourcePeaks();
+
+		List<Peak> peaks = spectrum.getPeaks();
+		ensureCapacity( peaks.size() );
+
+		if( this.sourcePeaks.length < peaks.size() )
+			this.sourcePeaks = new Peak[ this.massToCharges.length ];
+
+		int i = 0;
+		for( Peak peak : peaks ) {
+			this.massToCharges[ i ] = peak.getMassToCharge();
+			this.intensities[ i ] = peak.getIntensity();
+			this.sourceIndexes[ i ] = i;
+			this.sourcePeaks[ i ] = peak;
+			i++;
+		}
+
+		this.size = i;
+		this.numSourcePeaks = i;
+		this.precursorMassToCharge = precursorMassToCharge;
+		this.isSorted = checkSorted();
+	}
+
+	/**
+	 * Replace the contents of this buffer with the peaks of the given columnar spectrum
+	 * @param spectrum
+	 * @param precursorMassToCharge The m/z of the spectrum's precursor, or NaN if it isn't known
+	 */
+	public void load( ColumnarSpectrum spectrum, double precursorMassToCharge ) {
+
+		clearSourcePeaks();
+
+		double[] spectrumMassToCharges = spectrum.getMassToCharges();
+		float[] spectrumIntensities = spectrum.getIntensities();
+		ensureCapacity( spectrumMassToCharges.length );
+
+		System.arraycopy( spectrumMassToCharges, 0, this.massToCharges, 0, spectrumMassToCharges.length );
+		for( int i = 0; i < spectrumIntensities.length; i++ ) {
+			this.intensities[ i ] = spectrumIntensities[ i ];
+			this.sourceIndexes[ i ] = i;
+		}
+
+		this.size = spectrumMassToCharges.length;
+		this.precursorMassToCharge = precursorMassToCharge;
+		this.isSorted = true;
+	}
+
+	/**
+	 * Get a new spectrum with the peaks in this buffer, in their current order. Peaks of a loaded Spectrum
+	 * whose m/z and intensity are unchanged are the same Peak objects, other peaks are new.
+	 * @return
+	 */
+	public Spectrum toSpectrum() {
+
+		List<Peak> peaks = new ArrayList<Peak>( this.size );
+		Spectrum spectrum = new Spectrum( peaks );
+
+		for( int i = 0; i < this.size; i++ ) {
+			Peak source = this.numSourcePeaks > 0 ? this.sourcePeaks[ this.sourceIndexes[ i ] ] : null;
+
+			if( source != null && source.getMassToCharge() == this.massToCharges[ i ] && source.getIntensity() == this.intensities[ i ] )
+				peaks.add( source );
+			else
+				peaks.add( new Peak( spectrum, this.massToCharges[ i ], this.intensities[ i ] ) );
+		}
+
+		clearSourcePeaks();
+
+		return spectrum;
+	}
+
+	/**
+	 * Get a new columnar spectrum with the peaks in this buffer. Intensities are narrowed to float.
+	 * @return
+	 */
+	public ColumnarSpectrum toColumnarSpectrum() {
+
+		clearSourcePeaks();
+
+		float[] floatIntensities = new float[ this.size ];
+		for( int i = 0; i < this.size; i++ )
+			floatIntensities[ i ] = (float)this.intensities[ i ];
+
+		if( this.isSorted )
+			return ColumnarSpectrum.getSortedInstance( this.massToCharges, floatIntensities, this.size );
+
+		return ColumnarSpectrum.getInstance( Arrays.copyOf( this.massToCharges, this.size ), floatIntensities );
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public double getMassToCharge( int peak ) {
+		return massToCharges[ peak ];
+	}
+
+	public double getIntensity( int peak ) {
+		return intensities[ peak ];
+	}
+
+	public void setIntensity( int peak, double intensity ) {
+		intensities[ peak ] = intensity;
+	}
+
+	/**
+	 * The m/z of the precursor of the loaded spectrum, or NaN if it isn't known
+	 * @return
+	 */
+	public double getPrecursorMassToCharge() {
+		return precursorMassToCharge;
+	}
+
+	/**
+	 * Returns a sum of all the intensities of all the peaks
+	 * @return
+	 */
+	public double getTotalIntensity() {
+
+		double totalIntensity = 0.0;
+		for( int i = 0; i < this.size; i++ )
+			totalIntensity += this.intensities[ i ];
+
+		return totalIntensity;
+	}
+
+	/**
+	 * Copy a peak over another, to compact the buffer after removing peaks. Peaks must be copied to a lower
+	 * index, so that the peaks stay in the same order.
+	 * @param from
+	 * @param to
+	 */
+	public void copyPeak( int from, int to ) {
+		massToCharges[ to ] = massToCharges[ from ];
+		intensities[ to ] = intensities[ from ];
+		sourceIndexes[ to ] = sourceIndexes[ from ];
+	}
+
+	/**
+	 * Keep only the first size peaks
+	 * @param size
+	 */
+	public void truncate( int size ) {
+
+		if( size < 0 || size > this.size )
+			throw new IllegalArgumentException( "Can't truncate " + this.size + " peaks to " + size );
+
+		this.size = size;
+	}
+
+	/**
+	 * Whether the peaks are in order of m/z
+	 * @return
+	 */
+	public boolean isSortedByMassToCharge() {
+		return isSorted;
+	}
+
+	/**
+	 * Sort the peaks by m/z. Peaks with the same m/z stay in their current order.
+	 * @param previousIndexes If not null, receives the index before sorting of each peak
+	 */
+	public void sortByMassToCharge( int[] previousIndexes ) {
+
+		int[] order = getOrder();
+		for( int i = 0; i < this.size; i++ )
+			order[ i ] = i;
+
+		if( !this.isSorted ) {
+			// a bottom up merge sort, which is stable
+			int[] source = order;
+			int[] target = this.orderScratch;
+
+			for( int width = 1; width < this.size; width *= 2 ) {
+				for( int low = 0; low < this.size; low += 2 * width ) {
+					int middle = Math.min( low + width, this.size );
+					int high = Math.min( low + 2 * width, this.size );
+
+					int a = low;
+					int b = middle;
+					for( int k = low; k < high; k++ ) {
+						if( a < middle && ( b >= high || this.massToCharges[ source[ a ] ] <= this.massToCharges[ source[ b ] ] ) )
+							target[ k ] = source[ a++ ];
+						else
+							target[ k ] = source[ b++ ];
+					}
+				}
+
+				int[] swap = source;
+				source = target;
+				target = swap;
+			}
+
+			if( source != order )
+				System.arraycopy( source, 0, order, 0, this.size );
+
+			reorder( order, this.size );
+		}
+
+		if( previousIndexes != null )
+			System.arraycopy( order, 0, previousIndexes, 0, this.size );
+
+		this.isSorted = true;
+	}
+
+	/**
+	 * Keep only the given peaks, in the given order
+	 * @param order The indexes of the peaks to keep
+	 * @param length The number of peaks to keep
+	 */
+	public void reorder( int[] order, int length ) {
+
+		for( int i = 0; i < length; i++ ) {
+			this.spareMassToCharges[ i ] = this.massToCharges[ order[ i ] ];
+			this.spareIntensities[ i ] = this.intensities[ order[ i ] ];
+			this.spareSourceIndexes[ i ] = this.sourceIndexes[ order[ i ] ];
+		}
+
+		double[] swapMassToCharges = this.massToCharges;
+		this.massToCharges = this.spareMassToCharges;
+		this.spareMassToCharges = swapMassToCharges;
+
+		double[] swapIntensities = this.intensities;
+		this.intensities = this.spareIntensities;
+		this.spareIntensities = swapIntensities;
+
+		int[] swapSourceIndexes = this.sourceIndexes;
+		this.sourceIndexes = this.spareSourceIndexes;
+		this.spareSourceIndexes = swapSourceIndexes;
+
+		this.size = length;
+		this.isSorted = checkSorted();
+	}
+
+	/**
+	 * The m/z array, whose first getSize() elements are the peaks' m/z. For stages in this package.
+	 */
+	double[] getMassToCharges() {
+		return massToCharges;
+	}
+
+	/**
+	 * The intensity array, whose first getSize() elements are the peaks' intensities. For stages in this package.
+	 */
+	double[] getIntensities() {
+		return intensities;
+	}
+
+	/**
+	 * A scratch array of indexes at least as long as the buffer's capacity
+	 */
+	int[] getIndexScratch() {
+
+		if( this.indexScratch.length < this.massToCharges.length )
+			this.indexScratch = new int[ this.massToCharges.length ];
+
+		return this.indexScratch;
+	}
+
+	private int[] getOrder() {
+
+		if( this.order.length < this.massToCharges.length ) {
+			this.order = new int[ this.massToCharges.length ];
+			this.orderScratch = new int[ this.massToCharges.length ];
+		}
+
+		return this.order;
+	}
+
+	private boolean checkSorted() {
+
+		for( int i = 1; i < this.size; i++ ) {
+			if( Double.compare( this.massToCharges[ i - 1 ], this.massToCharges[ i ] ) > 0 )
+				return false;
+		}
+
+		return true;
+	}
+
+	private void ensureCapacity( int capacity ) {
+
+		if( this.massToCharges.length >= capacity )
+			return;
+
+		int length = Math.max( capacity, this.massToCharges.length * 2 );
+
+		this.massToCharges = new double[ length ];
+		this.intensities = new double[ length ];
+		this.sourceIndexes = new int[ length ];
+		this.spareMassToCharges = new double[ length ];
+		this.spareIntensities = new double[ length ];
+		this.spareSourceIndexes = new int[ length ];
+	}
+
+	/**
+	 * Don't hold on to the peaks of a spectrum that has been processed
+	 */
+	private void clearSourcePeaks() {
+		Arrays.fill( this.sourcePeaks, 0, this.numSourcePeaks, null );
+		this.numSourcePeaks = 0;
+	}
+
+
+	private static final int _INITIAL_CAPACITY = 256;
+
+	private double[] massToCharges = new double[ _INITIAL_CAPACITY ];
+	private double[] intensities = new double[ _INITIAL_CAPACITY ];
+	private int[] sourceIndexes = new int[ _INITIAL_CAPACITY ];
+	private int size;
+
+	private double[] spareMassToCharges = new double[ _INITIAL_CAPACITY ];
+	private double[] spareIntensities = new double[ _INITIAL_CAPACITY ];
+	private int[] spareSourceIndexes = new int[ _INITIAL_CAPACITY ];
+	private int[] order = new int[ 0 ];
+	private int[] orderScratch = new int[ 0 ];
+	private int[] indexScratch = new int[ 0 ];
+
+	private Peak[] sourcePeaks = new Peak[ 0 ];
+	private int numSourcePeaks;
+
+	private double precursorMassToCharge = Double.NaN;
+	private boolean isSorted = true;
+
+}
@@ -0,0 +1,57 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import org.yeastrc.proteomics.mass.MassTolerance;
+
+/**
+ * A SpectrumProcessingStage that removes the peaks within a tolerance of the m/z of the spectrum's
+ * precursor. Spectra whose precursor m/z isn't known are unchanged.
+ */
+public class PrecursorPeakRemover implements SpectrumProcessingStage {
+
+	/**
+	 * Get a remover of the peaks within the given tolerance of the precursor m/z
+	 * @param tolerance
+	 * @return
+	 */
+	public static PrecursorPeakRemover getInstance( MassTolerance tolerance ) {
+
+		if( tolerance == null )
+			throw new IllegalArgumentException( "tolerance cannot be null" );
+
+		return new PrecursorPeakRemover( tolerance );
+	}
+
+	private PrecursorPeakRemover( MassTolerance tolerance ) {
+		this.tolerance = tolerance;
+	}
+
+	@Override
+	public void process( PeakBuffer peaks ) {
+
+		double precursorMassToCharge = peaks.getPrecursorMassToCharge();
+		if( Double.isNaN( precursorMassToCharge ) )
+			return;
+
+		double minMassToCharge = tolerance.getMinMass( precursorMassToCharge );
+		double maxMassToCharge = tolerance.getMaxMass( precursorMassToCharge );
+
+		double[] massToCharges = peaks.getMassToCharges();
+		int size = peaks.getSize();
+
+		int keptPeaks = 0;
+		for( int i = 0; i < size; i++ ) {
+			if( massToCharges[ i ] < minMassToCharge || massToCharges[ i ] > maxMassToCharge )
+				peaks.copyPeak( i, keptPeaks++ );
+		}
+
+		peaks.truncate( keptPeaks );
+	}
+
+	public MassTolerance getTolerance() {
+		return tolerance;
+	}
+
+
+	private final MassTolerance tolerance;
+
+}
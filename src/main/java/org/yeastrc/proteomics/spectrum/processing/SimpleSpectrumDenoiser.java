@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
 import org.yeastrc.proteomics.spectrum.object.Peak;
 import org.yeastrc.proteomics.spectrum.object.Spectrum;
 
@@ -16,121 +17,272 @@ import org.yeastrc.proteomics.spectrum.object.Spectrum;
  * @version 1/0
  *
  */
-public class SimpleSpectrumDenoiser implements SpectrumProcessor {
+public class SimpleSpectrumDenoiser implements SpectrumProcessor, SpectrumProcessingStage {
 
 	/**
 	 * Process the input spectrum and return a new spectrum which has been "denoised" according
 	 * to the values set in this processor.
+	 * 
+	 * The intensities of the peaks that pass the fraction of total intensity filter are gathered into
+	 * a scratch array reused by the thread, and the intensity of the Nth most intense peak found by
+	 * selection in linear time. The kept peaks are then collected in one more pass over the peaks.
+	 * If more peaks than there is room for have that intensity, the first of them are kept.
 	 * @param inputSpectrum The input spectrum
 	 * @return A new spectrum, which has been processed (peaks removed, added or changed)
 	 */
 	@Override
 	public Spectrum processSpectrum( Spectrum inputSpectrum ) {
-				
-		List<Peak> tmpPeaks = new ArrayList<Peak>();
-		List<Peak> newPeaks = null;
-
+		
+		List<Peak> peaks = inputSpectrum.getPeaks();
+		
 		// filter by fraction of total intensity
-		if( this.getFractionTotalIntensity() != 0.0 ) {
-			double cutoff = this.getFractionTotalIntensity() * inputSpectrum.getTotalIntensity();
-			for( Peak p : inputSpectrum.getPeaks() ) {
-				if( p.getIntensity() >= cutoff )
-					tmpPeaks.add( p );
+		boolean isIntensityFiltered = this.getFractionTotalIntensity() != 0.0;
+		double cutoff = isIntensityFiltered ? this.getFractionTotalIntensity() * inputSpectrum.getTotalIntensity() : 0.0;
+		
+		double[] intensities = getScratch( peaks.size() );
+		int numPeaks = 0;
+		for( Peak p : peaks ) {
+			if( !isIntensityFiltered || p.getIntensity() >= cutoff )
+				intensities[ numPeaks++ ] = p.getIntensity();
+		}
+		
+		// we are filtering out all but the top N peaks
+		boolean isTopFiltered = this.getMaxPeaks() > 0 && numPeaks > this.getMaxPeaks();
+		double intensityFilter = isTopFiltered ? selectNthLargest( intensities, numPeaks, this.getMaxPeaks() ) : 0.0;
+		int lastPlaceCount = isTopFiltered ? getLastPlaceCount( intensities, numPeaks, this.getMaxPeaks(), intensityFilter ) : 0;
+		
+		List<Peak> newPeaks = new ArrayList<Peak>( isTopFiltered ? this.getMaxPeaks() : numPeaks );
+		int lastPlacesIncluded = 0;
+		for( Peak p : peaks ) {
+			if( isIntensityFiltered && !( p.getIntensity() >= cutoff ) )
+				continue;
+			
+			if( !isTopFiltered || p.getIntensity() > intensityFilter )
+				newPeaks.add( p );
+			else if( p.getIntensity() == intensityFilter && lastPlacesIncluded < lastPlaceCount ) {
+				lastPlacesIncluded++;
+				newPeaks.add( p );
 			}
-		} else {
-			tmpPeaks.addAll( inputSpectrum.getPeaks() );
 		}
 		
+		if( isTopFiltered && newPeaks.size() != this.getMaxPeaks() ) {
+			throw new RuntimeException( "Got wrong number of filtered peaks. Expected " + this.getMaxPeaks() +" Got " + newPeaks.size() );
+		}
+		
+		return new Spectrum( newPeaks );
+	}
+	
+	/**
+	 * Process the input columnar spectrum and return a new columnar spectrum which has been "denoised" according
+	 * to the values set in this processor. The same peaks are kept as by processSpectrum( Spectrum ).
+	 * @param inputSpectrum The input spectrum
+	 * @return A new spectrum, with peaks removed
+	 */
+	@Override
+	public ColumnarSpectrum processSpectrum( ColumnarSpectrum inputSpectrum ) {
+		
+		double[] massToCharges = inputSpectrum.getMassToCharges();
+		float[] intensities = inputSpectrum.getIntensities();
+		
+		// filter by fraction of total intensity
+		boolean isIntensityFiltered = this.getFractionTotalIntensity() != 0.0;
+		double cutoff = isIntensityFiltered ? this.getFractionTotalIntensity() * inputSpectrum.getTotalIntensity() : 0.0;
+		
+		double[] selectedIntensities = getScratch( intensities.length );
+		int numPeaks = 0;
+		for( float intensity : intensities ) {
+			if( !isIntensityFiltered || intensity >= cutoff )
+				selectedIntensities[ numPeaks++ ] = intensity;
+		}
 		
 		// we are filtering out all but the top N peaks
-		if( this.getMaxPeaks() > 0 && tmpPeaks.size() > this.getMaxPeaks() ) {
+		boolean isTopFiltered = this.getMaxPeaks() > 0 && numPeaks > this.getMaxPeaks();
+		double intensityFilter = isTopFiltered ? selectNthLargest( selectedIntensities, numPeaks, this.getMaxPeaks() ) : 0.0;
+		int lastPlaceCount = isTopFiltered ? getLastPlaceCount( selectedIntensities, numPeaks, this.getMaxPeaks(), intensityFilter ) : 0;
+		
+		int numNewPeaks = isTopFiltered ? this.getMaxPeaks() : numPeaks;
+		double[] newMassToCharges = new double[ numNewPeaks ];
+		float[] newIntensities = new float[ numNewPeaks ];
+		
+		int keptPeaks = 0;
+		int lastPlacesIncluded = 0;
+		for( int i = 0; i < intensities.length; i++ ) {
+			if( isIntensityFiltered && !( intensities[ i ] >= cutoff ) )
+				continue;
 			
-			double[] sortedIntensities = new double[ tmpPeaks.size() ];
-			for( int i = 0; i < tmpPeaks.size(); i++ )
-				sortedIntensities[ i ] = tmpPeaks.get( i ).getIntensity();
+			if( !isTopFiltered || intensities[ i ] > intensityFilter || ( intensities[ i ] == intensityFilter && lastPlacesIncluded++ < lastPlaceCount ) ) {
+				newMassToCharges[ keptPeaks ] = massToCharges[ i ];
+				newIntensities[ keptPeaks ] = intensities[ i ];
+				keptPeaks++;
+			}
+		}
+		
+		return ColumnarSpectrum.getSortedInstance( newMassToCharges, newIntensities, keptPeaks );
+	}
+	
+	/**
+	 * Remove the same peaks from the buffer as processSpectrum( Spectrum ) would, in place. The remaining
+	 * peaks stay in the same order.
+	 * @param peaks
+	 */
+	@Override
+	public void process( PeakBuffer peaks ) {
+		
+		double[] intensities = peaks.getIntensities();
+		int size = peaks.getSize();
+		
+		// filter by fraction of total intensity
+		boolean isIntensityFiltered = this.getFractionTotalIntensity() != 0.0;
+		double cutoff = isIntensityFiltered ? this.getFractionTotalIntensity() * peaks.getTotalIntensity() : 0.0;
+		
+		double[] selectedIntensities = getScratch( size );
+		int numPeaks = 0;
+		for( int i = 0; i < size; i++ ) {
+			if( !isIntensityFiltered || intensities[ i ] >= cutoff )
+				selectedIntensities[ numPeaks++ ] = intensities[ i ];
+		}
+		
+		// we are filtering out all but the top N peaks
+		boolean isTopFiltered = this.getMaxPeaks() > 0 && numPeaks > this.getMaxPeaks();
+		double intensityFilter = isTopFiltered ? selectNthLargest( selectedIntensities, numPeaks, this.getMaxPeaks() ) : 0.0;
+		int lastPlaceCount = isTopFiltered ? getLastPlaceCount( selectedIntensities, numPeaks, this.getMaxPeaks(), intensityFilter ) : 0;
+		
+		int keptPeaks = 0;
+		int lastPlacesIncluded = 0;
+		for( int i = 0; i < size; i++ ) {
+			if( isIntensityFiltered && !( intensities[ i ] >= cutoff ) )
+				continue;
 			
-			Arrays.sort( sortedIntensities );
+			if( !isTopFiltered || intensities[ i ] > intensityFilter || ( intensities[ i ] == intensityFilter && lastPlacesIncluded++ < lastPlaceCount ) )
+				peaks.copyPeak( i, keptPeaks++ );
+		}
+		
+		peaks.truncate( keptPeaks );
+	}
+	
+	/**
+	 * Find the nth largest of the first length values by introselect: quickselect with a three way partition,
+	 * which falls back to sorting if it doesn't converge. The values are reordered.
+	 * @param values
+	 * @param length
+	 * @param n Must be between 1 and length
+	 * @return
+	 */
+	static double selectNthLargest( double[] values, int length, int n ) {
+		
+		// the index of the value in ascending order
+		int k = length - n;
+		
+		int low = 0;
+		int high = length - 1;
+		int depthLimit = 2 * ( 32 - Integer.numberOfLeadingZeros( length ) );
+		
+		while( high > low ) {
+			
+			if( depthLimit-- == 0 ) {
+				Arrays.sort( values, low, high + 1 );
+				break;
+			}
 			
-			// get the intensity to use as a filter
-			double intensityFilter = sortedIntensities[ sortedIntensities.length - this.getMaxPeaks() ];
+			double pivot = getMedian( values[ low ], values[ ( low + high ) >>> 1 ], values[ high ] );
 			
-						
-			// find the number of peaks that have this intensity value that we should include
-			// e.g., we have 6 peaks w/ the same intensity value which is the same as our intensityFilter cutoff
-			// however, we only have room to include 5 of them in our final list of N peaks
-			int lastPlaceCount = 0;
-			for( int i = (sortedIntensities.length - this.getMaxPeaks()); i < sortedIntensities.length; i++ ) {
+			// [low, lt) < pivot, [lt, i) == pivot, (gt, high] > pivot
+			int lt = low;
+			int gt = high;
+			int i = low;
+			while( i <= gt ) {
+				double value = values[ i ];
 				
-				if( sortedIntensities[ i ] == intensityFilter )
-					lastPlaceCount++;
-				else
-					break;
-			}
-						
-			// create a new list of peaks that only include the # of peaks requested
-			newPeaks = new ArrayList<Peak>( this.getMaxPeaks() );
-			int lastPlacesIncluded = 0;
-			for( Peak p : tmpPeaks ) {
-				if( p.getIntensity() > intensityFilter )
-					newPeaks.add( p );
-				else if( p.getIntensity() == intensityFilter ) {
-					if( lastPlacesIncluded < lastPlaceCount ) {
-						lastPlacesIncluded++;
-						newPeaks.add( p );
-					}
+				if( value < pivot ) {
+					values[ i++ ] = values[ lt ];
+					values[ lt++ ] = value;
+				} else if( value > pivot ) {
+					values[ i ] = values[ gt ];
+					values[ gt-- ] = value;
+				} else {
+					i++;
 				}
 			}
 			
-			
-			if( newPeaks.size() != this.getMaxPeaks() ) {
-				throw new RuntimeException( "Got wrong number of filtered peaks. Expected " + this.getMaxPeaks() +" Got " + newPeaks.size() );
-			}
-		} else {
-			newPeaks = tmpPeaks;
+			if( k < lt )
+				high = lt - 1;
+			else if( k > gt )
+				low = gt + 1;
+			else
+				break;
 		}
-
 		
-		return new Spectrum( newPeaks );
+		return values[ k ];
 	}
 	
 	/**
-	 * Get the number of max peaks that will be included for any spectrum processed by this denoiser.
-	 * @return
+	 * The number of peaks with the cutoff intensity there is room for in the top n, after those above it
 	 */
-	public int getMaxPeaks() {
-		return maxPeaks;
+	private static int getLastPlaceCount( double[] intensities, int length, int n, double intensityFilter ) {
+		
+		// after selection the values above the cutoff are all after it
+		int numAbove = 0;
+		for( int i = length - n + 1; i < length; i++ ) {
+			if( intensities[ i ] > intensityFilter )
+				numAbove++;
+		}
+		
+		return n - numAbove;
+	}
+	
+	private static double getMedian( double a, double b, double c ) {
+		
+		if( a < b ) {
+			if( b < c ) return b;
+			return a < c ? c : a;
+		}
+		
+		if( a < c ) return a;
+		return b < c ? c : b;
 	}
 	
 	/**
-	 * Set the number of max peaks that will be included for any spectrum processed by this denoiser.
-	 * @param maxPeaks
+	 * A scratch array of at least the given length for this thread
 	 */
-	private void setMaxPeaks(int maxPeaks) {
-		this.maxPeaks = maxPeaks;
+	private static double[] getScratch( int length ) {
+		
+		double[] scratch = _SCRATCH.get();
+		
+		if( scratch.length < length ) {
+			scratch = new double[ Math.max( length, scratch.length * 2 ) ];
+			_SCRATCH.set( scratch );
+		}
+		
+		return scratch;
 	}
-
+	
+	private static final ThreadLocal<double[]> _SCRATCH = ThreadLocal.withInitial( () -> new double[ 1024 ] );
+	
 	/**
-	 * Get the fraction of the total ion intensity for a spectrum that a given peak must have to be
-	 * included after denoising.
+	 * Get the number of max peaks that will be included for any spectrum processed by this denoiser.
 	 * @return
 	 */
-	public double getFractionTotalIntensity() {
-		return fractionTotalIntensity;
+	public int getMaxPeaks() {
+		return maxPeaks;
 	}
 	
 	/**
 	 * Get the fraction of the total ion intensity for a spectrum that a given peak must have to be
 	 * included after denoising.
-	 * @param fractionTotalIntensity
+	 * @return
 	 */
-	private void setFractionTotalIntensity(double fractionTotalIntensity) {
-		this.fractionTotalIntensity = fractionTotalIntensity;
+	public double getFractionTotalIntensity() {
+		return fractionTotalIntensity;
 	}
 	
-	private int maxPeaks = -1;
-	private double fractionTotalIntensity = 0.0;
+	// final, so an instance may be shared between threads. scratch arrays are per thread
+	private final int maxPeaks;
+	private final double fractionTotalIntensity;
 	
-	private SimpleSpectrumDenoiser() { }
+	private SimpleSpectrumDenoiser( int maxPeaks, double fractionTotalIntensity ) {
+		this.maxPeaks = maxPeaks;
+		this.fractionTotalIntensity = fractionTotalIntensity;
+	}
 	
 	/**
 	 * Get an instance of a SimpleSpectrumDenoiser with the supplied parameters
@@ -148,9 +300,7 @@ public class SimpleSpectrumDenoiser implements SpectrumProcessor {
 		if( fractionTotalIntensity < 0.0 || fractionTotalIntensity > 1.0 )
 			throw new IllegalArgumentException( "fractionTotalIntensity must be between 0 and 1." );
 		
-		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser();
-		ssd.setMaxPeaks( maxPeaks );
-		ssd.setFractionTotalIntensity( fractionTotalIntensity );
+		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser( maxPeaks, fractionTotalIntensity );
 		
 		return ssd;
 	}
@@ -166,8 +316,7 @@ public class SimpleSpectrumDenoiser implements SpectrumProcessor {
 		if( maxPeaks <= 0 )
 			throw new IllegalArgumentException( "maxPeaks must be > 0 " );
 		
-		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser();
-		ssd.setMaxPeaks( maxPeaks );
+		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser( maxPeaks, 0.0 );
 		
 		return ssd;
 	}
@@ -184,8 +333,7 @@ public class SimpleSpectrumDenoiser implements SpectrumProcessor {
 		if( fractionTotalIntensity < 0.0 || fractionTotalIntensity > 1.0 )
 			throw new IllegalArgumentException( "fractionTotalIntensity must be between 0 and 1." );
 		
-		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser();
-		ssd.setFractionTotalIntensity( fractionTotalIntensity );
+		SimpleSpectrumDenoiser ssd = new SimpleSpectrumDenoiser( -1, fractionTotalIntensity );
 		
 		return ssd;
 	}
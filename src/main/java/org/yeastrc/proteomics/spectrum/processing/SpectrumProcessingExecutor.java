@@ -0,0 +1,227 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+/**
+ * Processes all the spectra of a run with a SpectrumProcessor on a pool of worker threads. The spectra
+ * are read from an iterator (e.g. Stream.iterator()) on the calling thread, and the processed spectra are
+ * given to a consumer on the calling thread in the same order.
+ *
+ * At most maxPendingSpectra spectra are read ahead of the processed spectra given to the consumer, so a
+ * slow consumer or a slow spectrum holds up the reader instead of filling memory.
+ *
+ * The processor is shared by the workers, so must be safe to use from multiple threads. SimpleSpectrumDenoiser,
+ * BinnedSpectrumDenoiser and SpectrumProcessingPipeline are, their configuration is final and their scratch
+ * arrays are per thread.
+ *
+ * Close the executor to stop its threads.
+ */
+public class SpectrumProcessingExecutor implements AutoCloseable {
+
+	/**
+	 * Get an executor with the given number of worker threads
+	 * @param processor
+	 * @param numThreads
+	 * @param maxPendingSpectra The most spectra read but not yet given to the consumer, must be >= numThreads
+	 * @return
+	 */
+	public static SpectrumProcessingExecutor getInstance( SpectrumProcessor processor, int numThreads, int maxPendingSpectra ) {
+
+		if( processor == null )
+			throw new IllegalArgumentException( "processor cannot be null" );
+
+		if( numThreads < 1 )
+			throw new IllegalArgumentException( "numThreads must be >= 1." );
+
+		if( maxPendingSpectra < numThreads )
+			throw new IllegalArgumentException( "maxPendingSpectra must be >= numThreads." );
+
+		return new SpectrumProcessingExecutor( processor, numThreads, maxPendingSpectra );
+	}
+
+	/**
+	 * Get an executor with a worker thread per processor and up to 64 pending spectra per thread
+	 * @param processor
+	 * @return
+	 */
+	public static SpectrumProcessingExecutor getInstance( SpectrumProcessor processor ) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		return getInstance( processor, numThreads, numThreads * _DEFAULT_PENDING_SPECTRA_PER_THREAD );
+	}
+
+	private SpectrumProcessingExecutor( SpectrumProcessor processor, int numThreads, int maxPendingSpectra ) {
+		this.processor = processor;
+		this.maxPendingSpectra = maxPendingSpectra;
+		this.pool = new ForkJoinPool( numThreads );
+	}
+
+	/**
+	 * Process each spectrum, and give the processed spectra to the consumer in the same order
+	 * @param spectra
+	 * @param consumer
+	 * @return The number of spectra processed
+	 * @throws Exception The first exception thrown by the processor, after which no more spectra are processed
+	 */
+	public long processSpectra( Iterator<Spectrum> spectra, Consumer<Spectrum> consumer ) throws Exception {
+		return process( spectra, spectrum -> processor.processSpectrum( spectrum ), consumer );
+	}
+
+	/**
+	 * Process each columnar spectrum, and give the processed spectra to the consumer in the same order
+	 * @param spectra
+	 * @param consumer
+	 * @return The number of spectra processed
+	 * @throws Exception The first exception thrown by the processor, after which no more spectra are processed
+	 */
+	public long processColumnarSpectra( Iterator<ColumnarSpectrum> spectra, Consumer<ColumnarSpectrum> consumer ) throws Exception {
+		return process( spectra, spectrum -> processor.processSpectrum( spectrum ), consumer );
+	}
+
+	private <T> long process( Iterator<T> spectra, Task<T> task, Consumer<T> consumer ) throws Exception {
+
+		long start = System.nanoTime();
+		long count = 0;
+
+		// the pending spectra in the order they were read
+		ArrayDeque<PendingSpectrum<T>> pending = new ArrayDeque<PendingSpectrum<T>>( maxPendingSpectra );
+
+		try {
+
+			while( spectra.hasNext() ) {
+
+				if( pending.size() == maxPendingSpectra ) {
+					consumer.accept( getResult( pending.poll() ) );
+					count++;
+				}
+
+				PendingSpectrum<T> pendingSpectrum = new PendingSpectrum<T>( spectra.next(), task );
+				pendingSpectrum.future = pool.submit( pendingSpectrum );
+				pending.add( pendingSpectrum );
+			}
+
+			while( !pending.isEmpty() ) {
+				consumer.accept( getResult( pending.poll() ) );
+				count++;
+			}
+
+		} finally {
+
+			// only left if the processor or consumer failed
+			for( PendingSpectrum<T> pendingSpectrum : pending )
+				pendingSpectrum.future.cancel( false );
+
+			spectrumCount.addAndGet( count );
+			processingNanos.addAndGet( System.nanoTime() - start );
+		}
+
+		return count;
+	}
+
+	/**
+	 * Wait for the spectrum to be processed, and get the processed spectrum or throw what the processor threw
+	 */
+	private static <T> T getResult( PendingSpectrum<T> pendingSpectrum ) throws Exception {
+
+		pendingSpectrum.future.get();
+
+		if( pendingSpectrum.exception != null )
+			throw pendingSpectrum.exception;
+
+		return pendingSpectrum.result;
+	}
+
+	/**
+	 * The number of spectra processed, over all calls
+	 * @return
+	 */
+	public long getSpectrumCount() {
+		return spectrumCount.get();
+	}
+
+	/**
+	 * The number of spectra processed per second, over all calls
+	 * @return
+	 */
+	public double getSpectraPerSecond() {
+
+		long nanos = processingNanos.get();
+		return nanos == 0 ? 0.0 : spectrumCount.get() / ( nanos / 1E9 );
+	}
+
+	public int getNumThreads() {
+		return pool.getParallelism();
+	}
+
+	public int getMaxPendingSpectra() {
+		return maxPendingSpectra;
+	}
+
+	/**
+	 * Stop the worker threads, after any spectra being processed
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return String.format( "SpectrumProcessingExecutor[threads=%d, spectra=%d, spectra/s=%.1f]", getNumThreads(), getSpectrumCount(), getSpectraPerSecond() );
+	}
+
+
+	/**
+	 * Process one spectrum, which may throw a checked exception
+	 */
+	private interface Task<T> {
+		T process( T spectrum ) throws Exception;
+	}
+
+	/**
+	 * A spectrum read and submitted to the pool. The processor's exceptions are kept as they are, the pool
+	 * would wrap checked exceptions.
+	 */
+	private static final class PendingSpectrum<T> implements Runnable {
+
+		PendingSpectrum( T spectrum, Task<T> task ) {
+			this.spectrum = spectrum;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.result = task.process( spectrum );
+			} catch( Exception e ) {
+				this.exception = e;
+			}
+		}
+
+		private final T spectrum;
+		private final Task<T> task;
+		private ForkJoinTask<?> future;
+
+		// published to the reading thread by future.get()
+		private T result;
+		private Exception exception;
+	}
+
+
+	private static final int _DEFAULT_PENDING_SPECTRA_PER_THREAD = 64;
+
+	private final SpectrumProcessor processor;
+	private final int maxPendingSpectra;
+	private final ForkJoinPool pool;
+
+	private final AtomicLong spectrumCount = new AtomicLong();
+	private final AtomicLong processingNanos = new AtomicLong();
+
+}
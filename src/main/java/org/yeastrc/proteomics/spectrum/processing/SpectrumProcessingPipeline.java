@@ -0,0 +1,162 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+/**
+ * A SpectrumProcessor that runs a sequence of stages over a spectrum's peaks in place, in a PeakBuffer
+ * reused by the thread, and only creates the processed spectrum at the end. E.g.,
+ *
+ * <pre>
+ * SpectrumProcessingPipeline pipeline = SpectrumProcessingPipeline.getInstance(
+ *         PrecursorPeakRemover.getInstance( MassTolerance.daltons( 2 ) ),
+ *         SimpleSpectrumDenoiser.createInstance( 0.001 ),
+ *         BinnedSpectrumDenoiser.getInstance( 100, 10 ),
+ *         IntensityNormalizer.getInstance( 100 ) );
+ * </pre>
+ *
+ * keeps the same peaks as running the denoisers one after the other with processSpectrum().
+ *
+ * The time spent in each stage is counted, over all threads. Safe to use from multiple threads if the
+ * stages are.
+ */
+public class SpectrumProcessingPipeline implements SpectrumProcessor {
+
+	/**
+	 * Get a pipeline that runs the given stages in order
+	 * @param stages
+	 * @return
+	 */
+	public static SpectrumProcessingPipeline getInstance( SpectrumProcessingStage... stages ) {
+
+		for( SpectrumProcessingStage stage : stages ) {
+			if( stage == null )
+				throw new IllegalArgumentException( "Stages cannot be null." );
+		}
+
+		return new SpectrumProcessingPipeline( stages.clone() );
+	}
+
+	private SpectrumProcessingPipeline( SpectrumProcessingStage[] stages ) {
+		this.stages = stages;
+		this.stageNanos = new AtomicLongArray( stages.length );
+	}
+
+	@Override
+	public Spectrum processSpectrum( Spectrum inputSpectrum ) throws Exception {
+		return processSpectrum( inputSpectrum, Double.NaN );
+	}
+
+	/**
+	 * Process the input spectrum, whose precursor has the given m/z
+	 * @param inputSpectrum
+	 * @param precursorMassToCharge
+	 * @return
+	 * @throws Exception
+	 */
+	public Spectrum processSpectrum( Spectrum inputSpectrum, double precursorMassToCharge ) throws Exception {
+
+		PeakBuffer peaks = _PEAK_BUFFER.get();
+		peaks.load( inputSpectrum, precursorMassToCharge );
+
+		process( peaks );
+
+		return peaks.toSpectrum();
+	}
+
+	@Override
+	public ColumnarSpectrum processSpectrum( ColumnarSpectrum inputSpectrum ) throws Exception {
+		return processSpectrum( inputSpectrum, Double.NaN );
+	}
+
+	/**
+	 * Process the input columnar spectrum, whose precursor has the given m/z
+	 * @param inputSpectrum
+	 * @param precursorMassToCharge
+	 * @return
+	 * @throws Exception
+	 */
+	public ColumnarSpectrum processSpectrum( ColumnarSpectrum inputSpectrum, double precursorMassToCharge ) throws Exception {
+
+		PeakBuffer peaks = _PEAK_BUFFER.get();
+		peaks.load( inputSpectrum, precursorMassToCharge );
+
+		process( peaks );
+
+		return peaks.toColumnarSpectrum();
+	}
+
+	/**
+	 * Run the stages over the peaks in the given buffer
+	 * @param peaks
+	 * @throws Exception
+	 */
+	public void process( PeakBuffer peaks ) throws Exception {
+
+		for( int i = 0; i < stages.length; i++ ) {
+			long start = System.nanoTime();
+
+			stages[ i ].process( peaks );
+
+			stageNanos.addAndGet( i, System.nanoTime() - start );
+		}
+
+		spectrumCount.incrementAndGet();
+	}
+
+	public List<SpectrumProcessingStage> getStages() {
+		return Arrays.asList( stages.clone() );
+	}
+
+	/**
+	 * The total time spent in the given stage, in nanoseconds
+	 * @param stage The index of the stage
+	 * @return
+	 */
+	public long getStageNanos( int stage ) {
+		return stageNanos.get( stage );
+	}
+
+	/**
+	 * The number of spectra processed
+	 * @return
+	 */
+	public long getSpectrumCount() {
+		return spectrumCount.get();
+	}
+
+	/**
+	 * Set the stage times and spectrum count back to 0
+	 */
+	public void resetTimings() {
+
+		for( int i = 0; i < stages.length; i++ )
+			stageNanos.set( i, 0 );
+
+		spectrumCount.set( 0 );
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder( "SpectrumProcessingPipeline[spectra=" ).append( getSpectrumCount() );
+
+		for( int i = 0; i < stages.length; i++ )
+			sb.append( String.format( ", %s: %.3f ms", stages[ i ].getClass().getSimpleName(), getStageNanos( i ) / 1E6 ) );
+
+		return sb.append( "]" ).toString();
+	}
+
+
+	private static final ThreadLocal<PeakBuffer> _PEAK_BUFFER = ThreadLocal.withInitial( PeakBuffer::getInstance );
+
+	private final SpectrumProcessingStage[] stages;
+	private final AtomicLongArray stageNanos;
+	private final AtomicLong spectrumCount = new AtomicLong();
+
+}
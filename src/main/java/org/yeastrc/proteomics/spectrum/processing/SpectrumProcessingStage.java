@@ -0,0 +1,16 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+/**
+ * A step of a SpectrumProcessingPipeline, which changes the peaks in a PeakBuffer in place.
+ * Implementations must be safe to use from multiple threads, each with its own buffer.
+ */
+public interface SpectrumProcessingStage {
+	
+	/**
+	 * Process the peaks in the buffer in place
+	 * @param peaks
+	 * @throws Exception
+	 */
+	public void process( PeakBuffer peaks ) throws Exception;
+	
+}
@@ -1,5 +1,6 @@
 package org.yeastrc.proteomics.spectrum.processing;
 
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
 import org.yeastrc.proteomics.spectrum.object.Spectrum;
 
 public interface SpectrumProcessor {
@@ -12,5 +13,17 @@ public interface SpectrumProcessor {
 	 */
 	public Spectrum processSpectrum( Spectrum inputSpectrum ) throws Exception;
 
+	/**
+	 * Process the input columnar spectrum according to the implementing method and return
+	 * a new columnar spectrum (original spectrum is unchanged). Implementations should override
+	 * this to work on the arrays directly, by default the spectrum is converted to and from a
+	 * Spectrum.
+	 * @param inputSpectrum
+	 * @return
+	 */
+	public default ColumnarSpectrum processSpectrum( ColumnarSpectrum inputSpectrum ) throws Exception {
+		return ColumnarSpectrum.fromSpectrum( processSpectrum( inputSpectrum.toSpectrum() ) );
+	}
+
 	
 }
@@ -0,0 +1,63 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.protease.ProteaseCutSite;
+import org.yeastrc.proteomics.digestion.protease.ProteaseCutSiteBuilder;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigestionUtils_TestCutSites_FlankingSequences {
+
+    private IProtease _PROTEASE;
+
+    /**
+     * A made up protease that cuts after K or D when preceded by A or GK but not followed by PP,
+     * and before M when followed by KD.
+     */
+    @Before
+    public void setUp() {
+
+        final Collection<ProteaseCutSite> cutSites = new ArrayList<>();
+
+        cutSites.add( new ProteaseCutSiteBuilder()
+                .setCutAfter( true )
+                .setCutResidues( Arrays.asList( "K", "D" ) )
+                .setRequiredNTermSequences( Arrays.asList( "A", "GK" ) )
+                .setProhibitedCTermSequences( Arrays.asList( "PP" ) )
+                .createProteaseCutSite() );
+
+        cutSites.add( new ProteaseCutSiteBuilder()
+                .setCutAfter( false )
+                .setCutResidues( Arrays.asList( "M" ) )
+                .setRequiredCTermSequences( Arrays.asList( "KD" ) )
+                .createProteaseCutSite() );
+
+        _PROTEASE = () -> cutSites;
+    }
+
+
+    @Test
+    public void test() {
+
+        List<Integer> list = Arrays.asList( 3, 10, 11, 16 );
+
+        assertEquals( list, DigestionUtils.getSortedCutSitesInProtein( "GKDAKPPRAKEMKDAKDR", _PROTEASE ) );
+    }
+
+    @Test
+    public void testTerminalResidues() {
+
+        // flanking sequences are not checked for the first and last residue
+        List<Integer> list = Arrays.asList( 6, 8 );
+
+        assertEquals( list, DigestionUtils.getSortedCutSitesInProtein( "MKDGKDAKAD", _PROTEASE ) );
+    }
+
+}
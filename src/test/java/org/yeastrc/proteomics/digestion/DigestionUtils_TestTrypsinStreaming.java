@@ -0,0 +1,172 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigestionUtils_TestTrypsinStreaming {
+
+    private IProtease _TRYPSIN;
+    private DigestionParameters _DIGESTION_PARAMETERS;
+
+    @Before
+    public void setUp() {
+
+        _TRYPSIN = ProteaseFactory.getProteaseByName("trypsin");
+        _DIGESTION_PARAMETERS = new DigestionParameters();
+    }
+
+
+    @Test
+    public void testOrder() {
+
+        List<String> expected = new ArrayList<>();
+        expected.add( "1,5,0,true,false" );
+        expected.add( "1,6,1,true,false" );
+        expected.add( "1,8,2,true,true" );
+        expected.add( "6,1,0,false,false" );
+        expected.add( "6,3,1,false,true" );
+        expected.add( "7,2,0,false,true" );
+
+        List<String> streamed = new ArrayList<>();
+
+        DigestionUtils.digestProteinSequence( "ETLIKRLI", _TRYPSIN, _DIGESTION_PARAMETERS, null, null,
+                ( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ->
+                        streamed.add( proteinPosition + "," + peptideLength + "," + missedCleavages + "," + isNTerminal + "," + isCTerminal ) );
+
+        assertEquals( expected, streamed );
+    }
+
+    @Test
+    public void testMissedCleavagesAndMinLength() {
+
+        _DIGESTION_PARAMETERS.setNumMissedCleavages( 2 );
+        _DIGESTION_PARAMETERS.setMinPeptideLength( 6 );
+
+        // in the order they are streamed, by protein position and then length
+        List<DigestionProduct> expected = new ArrayList<>();
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( true );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 1 );
+            dp.setPeptideLength( 19 );
+            dp.setMissedCleavages( 1 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( true );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 1 );
+            dp.setPeptideLength( 23 );
+            dp.setMissedCleavages( 2 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 3 );
+            dp.setPeptideLength( 17 );
+            dp.setMissedCleavages( 0 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 3 );
+            dp.setPeptideLength( 21 );
+            dp.setMissedCleavages( 1 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 3 );
+            dp.setPeptideLength( 22 );
+            dp.setMissedCleavages( 2 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( false );
+            dp.setProteinPosition( 20 );
+            dp.setPeptideLength( 9 );
+            dp.setMissedCleavages( 2 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( true );
+            dp.setProteinPosition( 24 );
+            dp.setPeptideLength( 11 );
+            dp.setMissedCleavages( 2 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( true );
+            dp.setProteinPosition( 25 );
+            dp.setPeptideLength( 10 );
+            dp.setMissedCleavages( 1 );
+
+            expected.add( dp );
+        }
+
+        {
+            DigestionProduct dp = new DigestionProduct();
+            dp.setNTerminal( false );
+            dp.setCTerminal( true );
+            dp.setProteinPosition( 29 );
+            dp.setPeptideLength( 6 );
+            dp.setMissedCleavages( 0 );
+
+            expected.add( dp );
+        }
+
+        List<DigestionProduct> streamed = new ArrayList<>();
+
+        DigestionUtils.digestProteinSequence( "MKWVTFISLLLLFSSAYSRGVFRRDTHKSEIAHR", _TRYPSIN, _DIGESTION_PARAMETERS, null, null,
+                ( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) -> {
+
+                    DigestionProduct dp = new DigestionProduct();
+                    dp.setNTerminal( isNTerminal );
+                    dp.setCTerminal( isCTerminal );
+                    dp.setProteinPosition( proteinPosition );
+                    dp.setPeptideLength( peptideLength );
+                    dp.setMissedCleavages( missedCleavages );
+
+                    streamed.add( dp );
+                } );
+
+        assertEquals( expected, streamed );
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Digestion of titin-sized proteins with no limit on missed cleavages. Each start position should stop
+ * extending once the max length is passed, so the number of cut sites looked at is about linear rather
+ * than quadratic in the length of the protein.
+ */
+public class DigestionUtils_TestTrypsinTitinSized {
+
+    private IProtease _TRYPSIN;
+    private CountingDigestionParameters _DIGESTION_PARAMETERS;
+
+    private String _PROTEIN;
+
+    @Before
+    public void setUp() {
+
+        _TRYPSIN = ProteaseFactory.getProteaseByName("trypsin");
+        _DIGESTION_PARAMETERS = new CountingDigestionParameters();
+        _DIGESTION_PARAMETERS.setMaxPeptideLength( 40 );
+
+        // the length of human titin
+        Random random = new Random( 1 );
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+
+        StringBuilder protein = new StringBuilder();
+
+        for( int i = 0; i < 34350; i++ ) {
+            protein.append( residues.charAt( random.nextInt( residues.length() ) ) );
+        }
+
+        _PROTEIN = protein.toString();
+    }
+
+    @Test
+    public void test() {
+
+        List<String> expected = getExpectedDigestionProducts();
+        List<String> digested = new ArrayList<>();
+
+        _DIGESTION_PARAMETERS.numMissedCleavageChecks = 0;
+
+        DigestionUtils.digestProteinSequence( _PROTEIN, _TRYPSIN, _DIGESTION_PARAMETERS, null, null,
+                ( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ->
+                        digested.add( proteinPosition + "," + peptideLength + "," + missedCleavages + "," + isNTerminal + "," + isCTerminal ) );
+
+        assertEquals( expected, digested );
+
+        // the missed cleavage limit is checked once for each cut site looked at and once for the c-terminal
+        // product. Extending every start position to the end of the protein checks it millions of times.
+        int numStartPositions = DigestionUtils.getSortedCutSitesInProtein( _PROTEIN, _TRYPSIN ).size() + 1;
+        int maxChecks = 2 * ( expected.size() + numStartPositions );
+
+        assertTrue( "Checked the missed cleavage limit " + _DIGESTION_PARAMETERS.numMissedCleavageChecks + " times, expected at most " + maxChecks,
+                _DIGESTION_PARAMETERS.numMissedCleavageChecks <= maxChecks );
+    }
+
+    /**
+     * Every start/end pair of cut sites within the max length, found the slow way
+     */
+    private List<String> getExpectedDigestionProducts() {
+
+        int[] cutSites = DigestionUtils.getSortedCutSitesInProtein( _PROTEIN, _TRYPSIN ).stream().mapToInt( Integer::intValue ).toArray();
+
+        List<Integer> startPositions = new ArrayList<>();
+        startPositions.add( 1 );
+        for( int cutSite : cutSites ) {
+            startPositions.add( cutSite + 1 );
+        }
+
+        List<String> expected = new ArrayList<>();
+
+        for( int startPosition : startPositions ) {
+
+            int missedCleavages = 0;
+
+            for( int cutSite : cutSites ) {
+
+                if( cutSite < startPosition ) {
+                    continue;
+                }
+
+                addIfWithinLimits( expected, startPosition, cutSite, missedCleavages, false );
+                missedCleavages++;
+            }
+
+            addIfWithinLimits( expected, startPosition, _PROTEIN.length(), missedCleavages, true );
+        }
+
+        return expected;
+    }
+
+    private void addIfWithinLimits( List<String> expected, int startPosition, int endPosition, int missedCleavages, boolean isCTerminal ) {
+
+        int length = endPosition - startPosition + 1;
+
+        if( length > _DIGESTION_PARAMETERS.getMaxPeptideLength() ) {
+            return;
+        }
+
+        expected.add( startPosition + "," + length + "," + missedCleavages + "," + ( startPosition == 1 ) + "," + isCTerminal );
+    }
+
+    /**
+     * Counts how many times digestion asks for the missed cleavage limit
+     */
+    private static final class CountingDigestionParameters extends DigestionParameters {
+
+        @Override
+        public Integer getNumMissedCleavages() {
+            numMissedCleavageChecks++;
+            return super.getNumMissedCleavages();
+        }
+
+        private long numMissedCleavageChecks;
+    }
+
+}
@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
 import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -234,4 +235,13 @@ public class DigestionUtils_TestTrypsin_WithParametersWithMasses {
         assertEquals( products, DigestionUtils.digestProteinSequence( "ETLILHILRKPYTSKLIKRLIRL", _TRYPSIN, _DIGESTION_PARAMETERS ) );
     }
 
-}
\ No newline at end of file
+    @Test( expected = InvalidAminoAcidException.class )
+    public void testInvalidResiduePastMaxMass() {
+
+        // ETLILHILR is heavier than the max mass, but ETLILHILRXK must still be reported. XK is too short to be checked.
+        _DIGESTION_PARAMETERS.setMinPeptideLength( 3 );
+
+        DigestionUtils.digestProteinSequence( "ETLILHILRXK", _TRYPSIN, _DIGESTION_PARAMETERS );
+    }
+
+}
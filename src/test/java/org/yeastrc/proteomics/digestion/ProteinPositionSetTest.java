@@ -0,0 +1,208 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProteinPositionSetTest {
+
+    @Test
+    public void testPositions() {
+
+        ProteinPositionSet positions = ProteinPositionSet.of( 9, 3, 5, 3 );
+
+        assertEquals( 3, positions.size() );
+        assertEquals( Arrays.asList( 3, 5, 9 ), new ArrayList<>( positions ) );
+
+        assertTrue( positions.contains( 5 ) );
+        assertFalse( positions.contains( 4 ) );
+        assertFalse( positions.contains( 100 ) );
+        assertTrue( positions.contains( (Object)9 ) );
+
+        assertEquals( 3, positions.getNextPosition( 1 ) );
+        assertEquals( 5, positions.getNextPosition( 4 ) );
+        assertEquals( 5, positions.getNextPosition( 5 ) );
+        assertEquals( Integer.MAX_VALUE, positions.getNextPosition( 10 ) );
+
+        assertTrue( positions.containsAnyBetween( 4, 5 ) );
+        assertFalse( positions.containsAnyBetween( 6, 8 ) );
+
+        assertEquals( positions, ProteinPositionSet.of( Arrays.asList( 5, 9, 3 ) ) );
+    }
+
+    @Test
+    public void testLargePositions() {
+
+        // only the positions are stored, so this doesn't allocate anything sized by the positions
+        ProteinPositionSet positions = ProteinPositionSet.of( 7, Integer.MAX_VALUE );
+
+        assertTrue( positions.contains( Integer.MAX_VALUE ) );
+        assertFalse( positions.contains( Integer.MAX_VALUE - 1 ) );
+        assertFalse( positions.contains( -1 ) );
+        assertEquals( Integer.MAX_VALUE, positions.getNextPosition( 8 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testPositionsStartAtOne() {
+        ProteinPositionSet.of( 0, 2 );
+    }
+
+    @Test
+    public void testSameDigestionAsCollections() {
+
+        IProtease trypsin = ProteaseFactory.getProteaseByName("trypsin");
+        DigestionParameters parameters = new DigestionParameters();
+        parameters.setNumMissedCleavages( 2 );
+
+        String protein = "MKWVTFISLLLLFSSAYSRGVFRRDTHKSEIAHRFKDLGEEHFKGLVLIAFSQYLQQCPFDEHVKLVNELTEFAKTCVADESHAGCEKSLHTLFGDELCKVASLRETYGDMADCCEKQEPERNECFLSHKDDSPDLPKLKPDPNTLCDEFKADEKKFWGKYLYEIARRHPYFYAPELLYYANKYNGVFQECCQAEDKGACLLPKIETMREKVLASSARQRLRCASIQKFGERALKAWSVARLSQKFPKAEFVEVTKLVTDLTKVHKECCHGDLLECADDRADLAKYICDNQDTISSKLKECCDKPLLEKSHCIAEVEKDAIPENLPPLTADFAEDKDVCKNYQEAKDAFLGSFLYEYSRRHPEYAVSVLLRLAKEYEATLEECCAKDDPHACYSTVFDKLKHLVDEPQNLIKQNCDQFEKLGEYGFQNALIVRYTRKVPQVSTPTLVEVSRSLGKVGTRCCTKPESERMPCTEDYLSLILNRLCVLHEKTPVSEKVTKCCTESLVNRRPCFSALTPDETYVPKAFDEKLFTFHADICTLPDTEKQIKKQTALVELLKHKPKATEEQLKTVMENFVAFVDKCCAADDKEACFAVEGPKLVVSTQTALA";
+
+        List<Integer> excludedSites = Arrays.asList( 2, 24, 117, 300, 0 );
+        List<Integer> requiredPositions = Arrays.asList( 50, 51, 230, 231, 232, 580, 1000 );
+
+        assertEquals( DigestionUtils.digestProteinSequence( protein, trypsin, parameters, excludedSites, requiredPositions ),
+                DigestionUtils.digestProteinSequence( protein, trypsin, parameters,
+                        ProteinPositionSet.of( 2, 24, 117, 300 ), ProteinPositionSet.of( 50, 51, 230, 231, 232, 580, 1000 ) ) );
+    }
+
+    @Test
+    public void testSameDigestionAsOriginalCollectionCode() {
+
+        IProtease trypsin = ProteaseFactory.getProteaseByName("trypsin");
+        Random random = new Random( 1 );
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+
+        for( int i = 0; i < 200; i++ ) {
+
+            StringBuilder protein = new StringBuilder();
+            int length = 1 + random.nextInt( 300 );
+
+            for( int j = 0; j < length; j++ ) {
+                protein.append( residues.charAt( random.nextInt( residues.length() ) ) );
+            }
+
+            DigestionParameters parameters = new DigestionParameters();
+            parameters.setNumMissedCleavages( random.nextInt( 4 ) );
+
+            // positions past the end of the protein, and not at all, are included
+            List<Integer> excludedSites = getRandomPositions( random, length );
+            List<Integer> requiredPositions = random.nextInt( 4 ) == 0 ? null : getRandomPositions( random, length );
+
+            assertEquals( digestWithCollections( protein.toString(), trypsin, parameters, excludedSites, requiredPositions ),
+                    DigestionUtils.digestProteinSequence( protein.toString(), trypsin, parameters, excludedSites, requiredPositions ) );
+        }
+    }
+
+    private static List<Integer> getRandomPositions( Random random, int proteinLength ) {
+
+        List<Integer> positions = new ArrayList<>();
+        int numPositions = random.nextInt( 6 );
+
+        for( int i = 0; i < numPositions; i++ ) {
+            positions.add( 1 + random.nextInt( proteinLength + 10 ) );
+        }
+
+        if( random.nextBoolean() ) {
+            positions.add( Integer.MAX_VALUE );
+        }
+
+        return positions;
+    }
+
+    /**
+     * The digestion as originally written, testing excluded sites and required positions against the
+     * collections directly
+     */
+    private static Collection<DigestionProduct> digestWithCollections( String proteinSequence,
+                                                                       IProtease protease,
+                                                                       DigestionParameters parameters,
+                                                                       Collection<Integer> excludedSites,
+                                                                       Collection<Integer> requiredPositions ) {
+
+        List<Integer> sortedCutSites = new ArrayList<>();
+
+        for( int cutPosition : DigestionUtils.getSortedCutSitesInProtein( proteinSequence, protease ) ) {
+            if( !excludedSites.contains( cutPosition ) ) {
+                sortedCutSites.add( cutPosition );
+            }
+        }
+
+        List<Integer> startPositions = new ArrayList<>();
+        startPositions.add( 1 );
+        for( int cutPosition : sortedCutSites ) {
+            startPositions.add( cutPosition + 1 );
+        }
+
+        Collection<DigestionProduct> digestionProducts = new HashSet<>();
+
+        for( int startPosition : startPositions ) {
+
+            int numMissedCleavages = 0;
+
+            for( int cutSitePosition : sortedCutSites ) {
+
+                if( cutSitePosition < startPosition ) {
+                    continue;
+                }
+
+                addIfContainsARequiredPosition( digestionProducts, proteinSequence, startPosition, cutSitePosition, numMissedCleavages, requiredPositions );
+
+                numMissedCleavages++;
+
+                if( numMissedCleavages > parameters.getNumMissedCleavages() ) {
+                    break;
+                }
+            }
+
+            if( numMissedCleavages <= parameters.getNumMissedCleavages() ) {
+                addIfContainsARequiredPosition( digestionProducts, proteinSequence, startPosition, proteinSequence.length(), numMissedCleavages, requiredPositions );
+            }
+        }
+
+        return digestionProducts;
+    }
+
+    private static void addIfContainsARequiredPosition( Collection<DigestionProduct> digestionProducts,
+                                                        String proteinSequence,
+                                                        int startPosition,
+                                                        int endPosition,
+                                                        int numMissedCleavages,
+                                                        Collection<Integer> requiredPositions ) {
+
+        if( requiredPositions != null ) {
+
+            boolean containsARequiredPosition = false;
+
+            for( int requiredPosition : requiredPositions ) {
+                if( startPosition <= requiredPosition && requiredPosition <= endPosition ) {
+                    containsARequiredPosition = true;
+                }
+            }
+
+            if( !containsARequiredPosition ) {
+                return;
+            }
+        }
+
+        DigestionProduct dp = new DigestionProduct();
+
+        dp.setProteinPosition( startPosition );
+        dp.setPeptideLength( endPosition - startPosition + 1 );
+        dp.setMissedCleavages( numMissedCleavages );
+        dp.setNTerminal( startPosition == 1 );
+        dp.setCTerminal( endPosition == proteinSequence.length() );
+
+        digestionProducts.add( dp );
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.yeastrc.proteomics.digestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.digestion.protease.proteases.IProtease;
+import org.yeastrc.proteomics.fasta.FASTAReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProteomeDigesterTest {
+
+    private IProtease _TRYPSIN;
+    private DigestionParameters _DIGESTION_PARAMETERS;
+
+    private List<String> _PROTEINS;
+    private String _FASTA;
+
+    @Before
+    public void setUp() {
+
+        _TRYPSIN = ProteaseFactory.getProteaseByName("trypsin");
+        _DIGESTION_PARAMETERS = new DigestionParameters();
+        _DIGESTION_PARAMETERS.setNumMissedCleavages( 2 );
+        _DIGESTION_PARAMETERS.setMinPeptideLength( 4 );
+
+        // enough proteins to be split into several batches
+        Random random = new Random( 1 );
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+
+        _PROTEINS = new ArrayList<>();
+        StringBuilder fasta = new StringBuilder();
+
+        for( int i = 0; i < 2000; i++ ) {
+
+            StringBuilder protein = new StringBuilder();
+            int length = random.nextInt( 400 );
+
+            for( int j = 0; j < length; j++ ) {
+                protein.append( residues.charAt( random.nextInt( residues.length() ) ) );
+            }
+
+            _PROTEINS.add( protein.toString() );
+
+            fasta.append( ">protein" ).append( i ).append( " test protein\n" );
+            for( int j = 0; j < protein.length(); j += 60 ) {
+                fasta.append( protein, j, Math.min( j + 60, protein.length() ) ).append( "\n" );
+            }
+        }
+
+        _FASTA = fasta.toString();
+    }
+
+
+    @Test
+    public void testSameAsSequentialDigestion() throws Exception {
+
+        List<String> expected = new ArrayList<>();
+
+        for( int i = 0; i < _PROTEINS.size(); i++ ) {
+
+            final int proteinIndex = i;
+
+            DigestionUtils.digestProteinSequence( _PROTEINS.get( i ), _TRYPSIN, _DIGESTION_PARAMETERS, null, null,
+                    ( proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) ->
+                            expected.add( "protein" + proteinIndex + "," + proteinPosition + "," + peptideLength + "," + missedCleavages + "," + isNTerminal + "," + isCTerminal ) );
+        }
+
+        List<String> digested = new ArrayList<>();
+
+        ProteomeDigester digester = ProteomeDigester.getInstance( _TRYPSIN, _DIGESTION_PARAMETERS, 4 );
+
+        ProteomeDigestionStatistics statistics = digester.digestFASTA( FASTAReader.getInstance( new StringReader( _FASTA ) ),
+                ( protein, proteinIndex, proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) -> {
+
+                    assertEquals( _PROTEINS.get( proteinIndex ), protein.getSequence().toString() );
+
+                    digested.add( protein.getHeader().split( " " )[ 0 ] + "," + proteinPosition + "," + peptideLength + "," + missedCleavages + "," + isNTerminal + "," + isCTerminal );
+                } );
+
+        assertEquals( expected, digested );
+        assertEquals( _PROTEINS.size(), statistics.getNumProteins() );
+        assertEquals( expected.size(), statistics.getNumPeptides() );
+    }
+
+    @Test
+    public void testReadFailureStopsDigestion() throws Exception {
+
+        // fails half way through the file, before any batch has had to be passed to the consumer
+        Reader failingReader = new StringReader( _FASTA.substring( 0, _FASTA.length() / 2 ) ) {
+
+            @Override
+            public int read( char[] buffer, int offset, int length ) throws IOException {
+
+                int read = super.read( buffer, offset, length );
+
+                if( read == -1 ) {
+                    throw new IOException( "Read failed" );
+                }
+
+                return read;
+            }
+        };
+
+        List<Integer> digestedProteins = new ArrayList<>();
+
+        ProteomeDigester digester = ProteomeDigester.getInstance( _TRYPSIN, _DIGESTION_PARAMETERS, 1 );
+
+        try {
+            digester.digestFASTA( FASTAReader.getInstance( failingReader ),
+                    ( protein, proteinIndex, proteinPosition, peptideLength, missedCleavages, isNTerminal, isCTerminal ) -> digestedProteins.add( proteinIndex ) );
+
+            fail( "Expected an IOException" );
+
+        } catch( IOException e ) {
+            assertEquals( "Read failed", e.getMessage() );
+        }
+
+        assertTrue( "Digestion products passed to the consumer after a read failure", digestedProteins.isEmpty() );
+    }
+
+}
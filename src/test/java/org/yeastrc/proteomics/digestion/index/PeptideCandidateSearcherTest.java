@@ -0,0 +1,123 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.yeastrc.proteomics.digestion.DigestionParameters;
+import org.yeastrc.proteomics.digestion.ProteomeDigester;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.fasta.FASTAEntry;
+import org.yeastrc.proteomics.mass.MassTolerance;
+import org.yeastrc.proteomics.mass.MassUtils;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.PeptideMassCalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeptideCandidateSearcherTest {
+
+    private List<FASTAEntry> _PROTEINS;
+    private PeptideCandidateSearcher _SEARCHER;
+
+    @Before
+    public void setUp() {
+
+        Random random = new Random( 1 );
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+
+        _PROTEINS = new ArrayList<>();
+
+        for( int i = 0; i < 200; i++ ) {
+
+            StringBuilder protein = new StringBuilder();
+            int length = random.nextInt( 400 );
+
+            for( int j = 0; j < length; j++ ) {
+                protein.append( residues.charAt( random.nextInt( residues.length() ) ) );
+            }
+
+            _PROTEINS.add( new FASTAEntry( "protein" + i, protein.toString() ) );
+        }
+
+        DigestionParameters parameters = new DigestionParameters();
+        parameters.setNumMissedCleavages( 1 );
+
+        ProteomeDigester digester = ProteomeDigester.getInstance( ProteaseFactory.getProteaseByName( "trypsin" ), parameters, 2 );
+
+        _SEARCHER = PeptideCandidateSearcher.build( digester, _PROTEINS.iterator() );
+    }
+
+    @Test
+    public void testCandidates() throws Exception {
+
+        assertTrue( _SEARCHER.getNumCandidates() > 1000 );
+
+        for( int i = 0; i < _SEARCHER.getNumCandidates(); i++ ) {
+
+            if( i > 0 ) {
+                assertTrue( _SEARCHER.getMass( i - 1 ) <= _SEARCHER.getMass( i ) );
+            }
+
+            String sequence = _PROTEINS.get( _SEARCHER.getProteinIndex( i ) ).getSequence().toString();
+            String peptide = sequence.substring( _SEARCHER.getProteinPosition( i ) - 1, _SEARCHER.getProteinPosition( i ) - 1 + _SEARCHER.getPeptideLength( i ) );
+
+            assertEquals( PeptideMassCalculator.getInstance().getMassForPeptide( new Peptide( peptide ), MassUtils.MassType.MONOISOTOPIC ), _SEARCHER.getMass( i ), 0.0 );
+        }
+    }
+
+    @Test
+    public void testBatchSameAsSingleQueries() {
+
+        Random random = new Random( 2 );
+
+        double[] precursorMasses = new double[ 5000 ];
+        for( int i = 0; i < precursorMasses.length; i++ ) {
+
+            // some precursors exactly on a candidate mass
+            precursorMasses[ i ] = random.nextBoolean() ? 500 + random.nextDouble() * 3000 : _SEARCHER.getMass( random.nextInt( _SEARCHER.getNumCandidates() ) );
+        }
+
+        Arrays.sort( precursorMasses );
+
+        for( MassTolerance tolerance : Arrays.asList( MassTolerance.ppm( 10 ), MassTolerance.daltons( 0.5 ), MassTolerance.daltons( 0 ) ) ) {
+
+            int[][] batch = new int[ precursorMasses.length ][];
+            _SEARCHER.queryBatch( precursorMasses, tolerance, ( precursorIndex, first, end ) -> batch[ precursorIndex ] = new int[] { first, end } );
+
+            for( int i = 0; i < precursorMasses.length; i++ ) {
+
+                int[] single = new int[ 2 ];
+                _SEARCHER.query( precursorMasses[ i ], tolerance, ( precursorIndex, first, end ) -> { single[ 0 ] = first; single[ 1 ] = end; } );
+
+                assertEquals( single[ 0 ], batch[ i ][ 0 ] );
+                assertEquals( single[ 1 ], batch[ i ][ 1 ] );
+
+                // every candidate in the range is in tolerance, and the ones either side are not
+                for( int c = single[ 0 ]; c < single[ 1 ]; c++ ) {
+                    assertTrue( _SEARCHER.getMass( c ) >= tolerance.getMinMass( precursorMasses[ i ] ) );
+                    assertTrue( _SEARCHER.getMass( c ) <= tolerance.getMaxMass( precursorMasses[ i ] ) );
+                }
+
+                assertTrue( single[ 0 ] == 0 || _SEARCHER.getMass( single[ 0 ] - 1 ) < tolerance.getMinMass( precursorMasses[ i ] ) );
+                assertTrue( single[ 1 ] == _SEARCHER.getNumCandidates() || _SEARCHER.getMass( single[ 1 ] ) > tolerance.getMaxMass( precursorMasses[ i ] ) );
+            }
+        }
+
+        LatencyHistogram latencies = _SEARCHER.getLatencyHistogram();
+
+        assertEquals( 6 * precursorMasses.length, latencies.getCount() );
+        assertTrue( latencies.getPercentile( 50 ) <= latencies.getPercentile( 99 ) );
+        assertTrue( latencies.getPercentile( 99 ) <= latencies.getPercentile( 100 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testUnsortedBatch() {
+        _SEARCHER.queryBatch( new double[] { 1000, 900 }, MassTolerance.ppm( 10 ), ( precursorIndex, first, end ) -> { } );
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.yeastrc.proteomics.digestion.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.yeastrc.proteomics.digestion.DigestionParameters;
+import org.yeastrc.proteomics.digestion.ProteomeDigester;
+import org.yeastrc.proteomics.digestion.protease.ProteaseFactory;
+import org.yeastrc.proteomics.mass.MassUtils;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.peptide.peptide.PeptideMassCalculator;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeptideIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String _FASTA =
+            ">P1 first\n" +
+            "PEPTIDEKAAAGRSAMPLERK\n" +
+            ">P2 no peptides\n" +
+            "\n" +
+            ">P3 third\n" +
+            "PEPTIDEKSAMPLER\n" +
+            ">P4 unknown residue\n" +
+            "XXKAAAGR\n";
+
+    @Test
+    public void test() throws Exception {
+
+        File fastaFile = folder.newFile( "test.fasta" );
+        Files.write( fastaFile.toPath(), _FASTA.getBytes( StandardCharsets.US_ASCII ) );
+
+        DigestionParameters parameters = new DigestionParameters();
+        parameters.setNumMissedCleavages( 0 );
+
+        ProteomeDigester digester = ProteomeDigester.getInstance( ProteaseFactory.getProteaseByName( "trypsin" ), parameters, 2 );
+
+        File indexFile = folder.newFile( "test.index" );
+        int numPeptides = PeptideIndexBuilder.getInstance( digester ).build( fastaFile, indexFile );
+
+        try( PeptideIndex index = PeptideIndex.open( indexFile ) ) {
+
+            // PEPTIDEK, AAAGR, SAMPLER and K, XXK has no mass
+            assertEquals( 4, numPeptides );
+            assertEquals( 4, index.getNumPeptides() );
+            assertEquals( 4, index.getNumProteins() );
+            assertEquals( "P2 no peptides", index.getProteinHeader( 1 ) );
+
+            for( int i = 1; i < index.getNumPeptides(); i++ ) {
+                assertTrue( index.getPeptideMass( i - 1 ) <= index.getPeptideMass( i ) );
+            }
+
+            int peptide = index.findPeptide( "PEPTIDEK" );
+            assertEquals( "PEPTIDEK", index.getPeptideSequence( peptide ) );
+            assertEquals( 8, index.getPeptideLength( peptide ) );
+            assertEquals( PeptideMassCalculator.getInstance().getMassForPeptide( new Peptide( "PEPTIDEK" ), MassUtils.MassType.MONOISOTOPIC ), index.getPeptideMass( peptide ), 0.0 );
+
+            assertEquals( 2, index.getNumProteinReferences( peptide ) );
+            assertEquals( 0, index.getReferenceProteinIndex( peptide, 0 ) );
+            assertEquals( 1, index.getReferenceProteinPosition( peptide, 0 ) );
+            assertEquals( 2, index.getReferenceProteinIndex( peptide, 1 ) );
+            assertEquals( 1, index.getReferenceProteinPosition( peptide, 1 ) );
+
+            peptide = index.findPeptide( "AAAGR" );
+            assertEquals( 2, index.getNumProteinReferences( peptide ) );
+            assertEquals( 0, index.getReferenceProteinIndex( peptide, 0 ) );
+            assertEquals( 9, index.getReferenceProteinPosition( peptide, 0 ) );
+            assertEquals( 3, index.getReferenceProteinIndex( peptide, 1 ) );
+            assertEquals( 4, index.getReferenceProteinPosition( peptide, 1 ) );
+
+            assertEquals( -1, index.findPeptide( "XXK" ) );
+            assertEquals( -1, index.findPeptide( "PEPTIDER" ) );
+
+            // K and AAAGR are the only peptides under 500
+            assertEquals( 0, index.findFirstPeptide( 0.0 ) );
+            assertEquals( "K", index.getPeptideSequence( 0 ) );
+            assertEquals( 2, index.findFirstPeptide( 500.0 ) );
+            assertEquals( "AAAGR", index.getPeptideSequence( 1 ) );
+            assertEquals( index.getNumPeptides(), index.findFirstPeptide( 10000.0 ) );
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.yeastrc.proteomics.fasta;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFASTAFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String _FASTA =
+            "text before the first entry is ignored\n" +
+            ">sp|P1|ONE regular lines\n" +
+            "MKWVTFISLL\n" +
+            "LLFSSAYSRG\n" +
+            "VFRR\n" +
+            ">sp|P2|TWO single line\n" +
+            "PEPTIDEK\n" +
+            ">sp|P3|THREE windows line endings\r\n" +
+            "ACDEFG\r\n" +
+            "HIKLMN\r\n" +
+            "PQ\r\n" +
+            ">sp|P4|FOUR uneven lines\n" +
+            "ACDEF\n" +
+            "GHIKLMN\n" +
+            "PQ\n" +
+            ">sp|P5|FIVE whitespace and blank lines\n" +
+            "\n" +
+            "ACD EFG\n" +
+            "\n" +
+            "HIK\n" +
+            ">sp|P6|SIX empty\n" +
+            ">sp|P7|SEVEN trailing blank lines\n" +
+            "MKR\n" +
+            "TTL\n" +
+            "\n" +
+            "\n" +
+            ">sp|P8|EIGHT no final line ending\n" +
+            "WWWWW\n" +
+            "YY";
+
+    @Test
+    public void testSameAsFASTAReader() throws Exception {
+
+        File file = folder.newFile( "test.fasta" );
+        Files.write( file.toPath(), _FASTA.getBytes( StandardCharsets.US_ASCII ) );
+
+        List<FASTAEntry> expected = new ArrayList<>();
+
+        try( FASTAReader reader = FASTAReader.getInstance( new StringReader( _FASTA ) ) ) {
+            FASTAEntry entry;
+            while( ( entry = reader.readNext() ) != null ) {
+                expected.add( entry );
+            }
+        }
+
+        try( MappedFASTAFile mappedFile = MappedFASTAFile.open( file ) ) {
+
+            assertEquals( expected.size(), mappedFile.getNumEntries() );
+
+            int i = 0;
+            for( FASTAEntry entry : mappedFile ) {
+
+                assertEquals( expected.get( i ).getHeader(), entry.getHeader() );
+                assertEquals( expected.get( i ).getSequence().toString(), entry.getSequence().toString() );
+                assertEquals( expected.get( i ).getSequence().length(), mappedFile.getSequenceLength( i ) );
+
+                i++;
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceView() throws Exception {
+
+        File file = folder.newFile( "test.fasta" );
+        Files.write( file.toPath(), _FASTA.getBytes( StandardCharsets.US_ASCII ) );
+
+        try( MappedFASTAFile mappedFile = MappedFASTAFile.open( file ) ) {
+
+            MappedProteinSequence sequence = mappedFile.getSequence( 0 );
+
+            assertEquals( 24, sequence.length() );
+            assertEquals( 'M', sequence.charAt( 0 ) );
+            assertEquals( 'L', sequence.charAt( 10 ) );
+            assertEquals( 'R', sequence.charAt( 23 ) );
+            assertEquals( 'R', sequence.byteAt( 18 ) );
+
+            CharSequence subSequence = sequence.subSequence( 8, 22 );
+            assertEquals( "LLLLFSSAYSRGVF", subSequence.toString() );
+            assertEquals( "SAYS", subSequence.subSequence( 6, 10 ).toString() );
+
+            assertEquals( "HIKLMN", mappedFile.getSequence( 2 ).subSequence( 6, 12 ).toString() );
+
+            try {
+                sequence.charAt( 24 );
+                assertTrue( false );
+            } catch( IndexOutOfBoundsException e ) { ; }
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+package org.yeastrc.proteomics.ion.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.ion.utils.IonUtils;
+import org.yeastrc.proteomics.mass.MassTolerance;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class FragmentIonSearcherTest {
+
+	/**
+	 * The original linear scan over every peak
+	 */
+	static Peak findPeakLinear( Spectrum spectrum, double calculatedIonMZ, double massTolerance, int matchType ) {
+		Peak match = null;
+		double limit = massTolerance / 2;
+
+		for( Peak peak : spectrum.getPeaks() ) {
+			if( Math.abs( calculatedIonMZ - peak.getMassToCharge() ) <= limit ) {
+				if( match == null ) {
+					match = peak;
+				} else if( matchType == IonUtils.MATCH_TYPE_INTENSITY ) {
+					if( peak.getIntensity() > match.getIntensity() ) {
+						match = peak;
+					} else if( peak.getIntensity() == match.getIntensity() ) {
+						if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) < 0 )
+							match = peak;
+					}
+				} else if( matchType == IonUtils.MATCH_TYPE_PROXIMITY ) {
+					if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) < 0 ) {
+						match = peak;
+					} else if( IonUtils.compareMassToCharge( Math.abs( calculatedIonMZ - peak.getMassToCharge() ), Math.abs( calculatedIonMZ - match.getMassToCharge() ) ) == 0 ) {
+						if( peak.getIntensity() > match.getIntensity() )
+							match = peak;
+					}
+				}
+			}
+		}
+
+		return match;
+	}
+
+	@Test
+	public void sameAsLinearScan() {
+
+		Random random = new Random( 17 );
+
+		for( int matchType : new int[] { IonUtils.MATCH_TYPE_INTENSITY, IonUtils.MATCH_TYPE_PROXIMITY } ) {
+
+			// the widest window holds a few hundred peaks
+			for( double massTolerance : new double[] { 0.1, 0.5, 1.0, 3.0, 100.0 } ) {
+
+				FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( massTolerance, matchType, MassType.MONOISOTOPIC );
+
+				for( boolean sorted : new boolean[] { true, false } ) {
+
+					Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1000, 500, 0.25, 5, sorted );
+
+					for( int i = 0; i < 2000; i++ ) {
+						double mz = 90 + random.nextInt( 4400 ) * 0.125;
+						assertSame( findPeakLinear( spectrum, mz, massTolerance, matchType ), searcher.findPeak( spectrum, mz ) );
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void peaksAddedAfterSearch() {
+
+		FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 1.0, IonUtils.MATCH_TYPE_INTENSITY, MassType.MONOISOTOPIC );
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 200.0, 10 ) );
+
+		assertNull( searcher.findPeak( spectrum, 100.0 ) );
+
+		Peak added = new Peak( spectrum, 100.1, 5 );
+		peaks.add( added );
+
+		assertSame( added, searcher.findPeak( spectrum, 100.0 ) );
+
+		peaks.remove( added );
+
+		assertNull( searcher.findPeak( spectrum, 100.0 ) );
+	}
+
+	@Test
+	public void peaksReplacedAfterSearch() {
+
+		FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 1.0, IonUtils.MATCH_TYPE_INTENSITY, MassType.MONOISOTOPIC );
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.0, 1 ) );
+		peaks.add( new Peak( spectrum, 200.0, 2 ) );
+
+		double[] ionMZs = { 200.0, 300.0 };
+		int[] matchedPeakIndexes = new int[ 2 ];
+
+		assertSame( peaks.get( 1 ), searcher.findPeak( spectrum, 200.0 ) );
+		assertEquals( 1, searcher.matchPeaks( ionMZs, 2, spectrum, matchedPeakIndexes, null ) );
+
+		Peak replacement = new Peak( spectrum, 300.0, 3 );
+		peaks.set( 1, replacement );
+
+		assertNull( searcher.findPeak( spectrum, 200.0 ) );
+		assertSame( replacement, searcher.findPeak( spectrum, 300.0 ) );
+
+		assertEquals( 1, searcher.matchPeaks( ionMZs, 2, spectrum, matchedPeakIndexes, null ) );
+		assertEquals( -1, matchedPeakIndexes[ 0 ] );
+		assertEquals( 1, matchedPeakIndexes[ 1 ] );
+
+		// out of m/z order
+		peaks.set( 0, new Peak( spectrum, 400.0, 4 ) );
+
+		assertEquals( 1, searcher.matchPeaks( ionMZs, 2, spectrum, matchedPeakIndexes, null ) );
+		assertEquals( -1, matchedPeakIndexes[ 0 ] );
+		assertEquals( 1, matchedPeakIndexes[ 1 ] );
+	}
+
+	@Test
+	public void findFragmentIon() throws Exception {
+
+		FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 0.02, IonUtils.MATCH_TYPE_PROXIMITY, MassType.MONOISOTOPIC );
+		assertEquals( MassType.MONOISOTOPIC, searcher.getMassType() );
+
+		FragmentIon ion = FragmentIon.createInstance( new Peptide( "PEP" ), 1, IonUtils.ION_TYPE_B, 3 );
+		double mz = ion.getMassToCharge( MassType.MONOISOTOPIC );
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, mz + 0.5, 100 ) );
+		peaks.add( new Peak( spectrum, mz + 0.005, 10 ) );
+		peaks.add( new Peak( spectrum, mz - 0.002, 1 ) );
+
+		Peak match = searcher.findPeak( spectrum, ion );
+		assertNotNull( match );
+		assertSame( peaks.get( 2 ), match );
+
+		assertSame( peaks.get( 1 ), FragmentIonSearcher.getInstance( 0.02, IonUtils.MATCH_TYPE_INTENSITY, MassType.MONOISOTOPIC ).findPeak( spectrum, ion ) );
+		assertNull( FragmentIonSearcher.getInstance( 0.002, IonUtils.MATCH_TYPE_INTENSITY, MassType.MONOISOTOPIC ).findPeak( spectrum, mz + 0.1 ) );
+	}
+
+	@Test
+	public void matchPeaksSameAsFindPeak() {
+
+		Random random = new Random( 19 );
+
+		for( int matchType : new int[] { IonUtils.MATCH_TYPE_INTENSITY, IonUtils.MATCH_TYPE_PROXIMITY } ) {
+			for( double massTolerance : new double[] { 0.1, 1.0, 3.0 } ) {
+
+				FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( massTolerance, matchType, MassType.MONOISOTOPIC );
+
+				for( boolean sorted : new boolean[] { true, false } ) {
+
+					Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 500, 500, 0.25, 5, sorted );
+
+					double[] ionMZs = new double[ 1000 ];
+					for( int i = 0; i < ionMZs.length; i++ )
+						ionMZs[ i ] = 90 + random.nextInt( 4400 ) * 0.125;
+					Arrays.sort( ionMZs );
+
+					int[] matchedPeakIndexes = new int[ ionMZs.length ];
+					double[] massErrors = new double[ ionMZs.length ];
+
+					int numMatched = searcher.matchPeaks( ionMZs, ionMZs.length, spectrum, matchedPeakIndexes, massErrors );
+
+					int expectedMatched = 0;
+					for( int i = 0; i < ionMZs.length; i++ ) {
+						Peak expected = searcher.findPeak( spectrum, ionMZs[ i ] );
+
+						if( expected == null ) {
+							assertEquals( -1, matchedPeakIndexes[ i ] );
+							assertEquals( Double.NaN, massErrors[ i ], 0 );
+						} else {
+							expectedMatched++;
+							assertSame( expected, spectrum.getPeaks().get( matchedPeakIndexes[ i ] ) );
+							assertEquals( expected.getMassToCharge() - ionMZs[ i ], massErrors[ i ], 0 );
+						}
+					}
+
+					assertEquals( expectedMatched, numMatched );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void matchPeaksArrays() {
+
+		FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 0.02, IonUtils.MATCH_TYPE_PROXIMITY, MassType.MONOISOTOPIC );
+
+		double[] peakMZs = { 100.0, 100.005, 200.0, 300.0 };
+		double[] intensities = { 5, 10, 1, 1 };
+		int[] matchedPeakIndexes = new int[ 3 ];
+
+		assertEquals( 2, searcher.matchPeaks( new double[] { 100.004, 150.0, 300.009 }, 3, peakMZs, intensities, peakMZs.length, matchedPeakIndexes, null ) );
+		assertEquals( 1, matchedPeakIndexes[ 0 ] );
+		assertEquals( -1, matchedPeakIndexes[ 1 ] );
+		assertEquals( 3, matchedPeakIndexes[ 2 ] );
+
+		try {
+			searcher.matchPeaks( new double[] { 200.0, 100.0 }, 2, peakMZs, intensities, peakMZs.length, matchedPeakIndexes, null );
+			fail( "Expected unsorted ion m/z values to be rejected" );
+		} catch( IllegalArgumentException e ) { }
+	}
+
+	@Test
+	public void ppmTolerance() {
+
+		Random random = new Random( 23 );
+
+		for( int matchType : new int[] { IonUtils.MATCH_TYPE_INTENSITY, IonUtils.MATCH_TYPE_PROXIMITY } ) {
+			for( double ppm : new double[] { 10, 200, 2000 } ) {
+
+				FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( MassTolerance.ppm( ppm ), matchType, MassType.MONOISOTOPIC );
+				assertEquals( Double.NaN, searcher.getMassTolerance(), 0 );
+
+				for( boolean sorted : new boolean[] { true, false } ) {
+
+					Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1000, 500, 0.25, 5, sorted );
+
+					double[] ionMZs = new double[ 1000 ];
+					for( int i = 0; i < ionMZs.length; i++ )
+						ionMZs[ i ] = 90 + random.nextInt( 4400 ) * 0.125 + random.nextInt( 3 ) * 0.0001;
+					Arrays.sort( ionMZs );
+
+					int[] matchedPeakIndexes = new int[ ionMZs.length ];
+					searcher.matchPeaks( ionMZs, ionMZs.length, spectrum, matchedPeakIndexes, null );
+
+					for( int i = 0; i < ionMZs.length; i++ ) {
+						// the linear scan's window is +/- half the tolerance
+						Peak expected = findPeakLinear( spectrum, ionMZs[ i ], 2 * ionMZs[ i ] * ppm / 1E6, matchType );
+
+						assertSame( expected, searcher.findPeak( spectrum, ionMZs[ i ] ) );
+						assertSame( expected, matchedPeakIndexes[ i ] == -1 ? null : spectrum.getPeaks().get( matchedPeakIndexes[ i ] ) );
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void daltonTolerance() {
+
+		FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 0.02, IonUtils.MATCH_TYPE_PROXIMITY, MassType.MONOISOTOPIC );
+		assertEquals( 0.02, searcher.getMassTolerance(), 0 );
+		assertEquals( MassTolerance.daltons( 0.01 ), searcher.getTolerance() );
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 1000.009, 1 ) );
+
+		assertSame( peaks.get( 0 ), searcher.findPeak( spectrum, 1000.0 ) );
+
+		// 10 ppm of 1000 is 0.01, of 100 only 0.001
+		searcher = FragmentIonSearcher.getInstance( MassTolerance.ppm( 10 ), IonUtils.MATCH_TYPE_PROXIMITY, MassType.MONOISOTOPIC );
+		assertSame( peaks.get( 0 ), searcher.findPeak( spectrum, 1000.0 ) );
+
+		peaks.set( 0, new Peak( spectrum, 100.009, 1 ) );
+		assertNull( searcher.findPeak( new Spectrum( peaks ), 100.0 ) );
+	}
+
+	@Test
+	public void columnarSpectrum() {
+
+		Random random = new Random( 31 );
+
+		for( int matchType : new int[] { IonUtils.MATCH_TYPE_INTENSITY, IonUtils.MATCH_TYPE_PROXIMITY } ) {
+
+			FragmentIonSearcher searcher = FragmentIonSearcher.getInstance( 1.0, matchType, MassType.MONOISOTOPIC );
+
+			ColumnarSpectrum spectrum = ColumnarSpectrum.fromSpectrum( RandomSpectra.getRandomSpectrum( random, 1000, 500, 0.25, 5, false ) );
+			Spectrum view = spectrum.toSpectrum();
+
+			double[] ionMZs = new double[ 1000 ];
+			for( int i = 0; i < ionMZs.length; i++ )
+				ionMZs[ i ] = 90 + random.nextInt( 4400 ) * 0.125;
+			Arrays.sort( ionMZs );
+
+			int[] matchedPeakIndexes = new int[ ionMZs.length ];
+			searcher.matchPeaks( ionMZs, ionMZs.length, spectrum, matchedPeakIndexes, null );
+
+			for( int i = 0; i < ionMZs.length; i++ ) {
+				Peak expected = findPeakLinear( view, ionMZs[ i ], 1.0, matchType );
+				int index = searcher.findPeakIndex( spectrum, ionMZs[ i ] );
+
+				assertEquals( expected, index == -1 ? null : spectrum.getPeak( index ) );
+				assertEquals( index, matchedPeakIndexes[ i ] );
+			}
+		}
+	}
+
+}
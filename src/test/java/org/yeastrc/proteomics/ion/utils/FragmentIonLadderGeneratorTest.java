@@ -0,0 +1,120 @@
+package org.yeastrc.proteomics.ion.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.ion.object.FragmentIon;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.LabelFactory;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+
+public class FragmentIonLadderGeneratorTest {
+
+	static final String sequence = "GPAVLIMCFYWHKRQNEDST";
+
+	static final int[] ionTypes = { IonUtils.ION_TYPE_A, IonUtils.ION_TYPE_B, IonUtils.ION_TYPE_C, IonUtils.ION_TYPE_X,
+			IonUtils.ION_TYPE_Y, IonUtils.ION_TYPE_Z, IonUtils.ION_TYPE_Z_DOT };
+
+	@Test
+	public void sameAsFragmentIon() throws Exception {
+
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "15N" );
+
+		for( MassType massType : MassType.values() ) {
+			for( IsotopeLabel l : new IsotopeLabel[] { null, label } ) {
+				for( int ionType : ionTypes ) {
+					for( int charge = 1; charge <= 3; charge++ ) {
+
+						double[] ladder = FragmentIonLadderGenerator.getInstance( massType ).getLadder( new Peptide( sequence, l ), ionType, charge );
+						assertEquals( sequence.length() - 1, ladder.length );
+
+						for( int index = 1; index < sequence.length(); index++ ) {
+
+							boolean isNTerminal = ionType == IonUtils.ION_TYPE_A || ionType == IonUtils.ION_TYPE_B || ionType == IonUtils.ION_TYPE_C;
+							String fragment = isNTerminal ? sequence.substring( 0, index ) : sequence.substring( sequence.length() - index );
+
+							FragmentIon ion = FragmentIon.createInstance( new Peptide( fragment, l ), charge, ionType, index );
+
+							assertEquals( ion.getMassToCharge( massType ), ladder[ index - 1 ], 1E-9 );
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void modifications() throws Exception {
+
+		Map<Integer, Double> modifications = new HashMap<>();
+		modifications.put( 0, 42.010565 );		// N-terminus
+		modifications.put( 4, 79.966331 );		// the T
+		modifications.put( 7, 0.984016 );		// the last E
+
+		Peptide peptide = new Peptide( "PEPTIDE", modifications );
+		FragmentIonLadderGenerator generator = FragmentIonLadderGenerator.getInstance( MassType.MONOISOTOPIC );
+
+		double[] b = generator.getLadder( peptide, IonUtils.ION_TYPE_B, 1 );
+		double[] y = generator.getLadder( peptide, IonUtils.ION_TYPE_Y, 1 );
+
+		double[] unmodifiedB = generator.getLadder( new Peptide( "PEPTIDE" ), IonUtils.ION_TYPE_B, 1 );
+		double[] unmodifiedY = generator.getLadder( new Peptide( "PEPTIDE" ), IonUtils.ION_TYPE_Y, 1 );
+
+		assertEquals( unmodifiedB[ 0 ] + 42.010565, b[ 0 ], 1E-9 );
+		assertEquals( unmodifiedB[ 1 ] + 42.010565, b[ 1 ], 1E-9 );
+		assertEquals( unmodifiedB[ 2 ] + 42.010565, b[ 2 ], 1E-9 );
+		assertEquals( unmodifiedB[ 3 ] + 42.010565 + 79.966331, b[ 3 ], 1E-9 );
+		assertEquals( unmodifiedB[ 5 ] + 42.010565 + 79.966331, b[ 5 ], 1E-9 );
+
+		assertEquals( unmodifiedY[ 0 ] + 0.984016, y[ 0 ], 1E-9 );
+		assertEquals( unmodifiedY[ 2 ] + 0.984016, y[ 2 ], 1E-9 );
+		assertEquals( unmodifiedY[ 3 ] + 0.984016 + 79.966331, y[ 3 ], 1E-9 );
+	}
+
+	@Test
+	public void manyLaddersIntoOneBuffer() {
+
+		Peptide peptide = new Peptide( sequence );
+		FragmentIonLadderGenerator generator = FragmentIonLadderGenerator.getInstance( MassType.MONOISOTOPIC );
+
+		int[] types = { IonUtils.ION_TYPE_B, IonUtils.ION_TYPE_Y };
+		int[] charges = { 1, 2 };
+		double[] buffer = new double[ 100 ];
+
+		int n = generator.getLadders( peptide, types, charges, buffer );
+		assertEquals( 4 * ( sequence.length() - 1 ), n );
+
+		int ladderLength = sequence.length() - 1;
+
+		for( int t = 0; t < types.length; t++ ) {
+			for( int c = 0; c < charges.length; c++ ) {
+
+				double[] ladder = generator.getLadder( peptide, types[ t ], charges[ c ] );
+
+				for( int i = 0; i < ladderLength; i++ )
+					assertEquals( ladder[ i ], buffer[ ( t * charges.length + c ) * ladderLength + i ], 0.0 );
+			}
+		}
+	}
+
+	@Test
+	public void singleResidue() {
+		assertEquals( 0, FragmentIonLadderGenerator.getInstance( MassType.MONOISOTOPIC ).getLadder( new Peptide( "K" ), IonUtils.ION_TYPE_B, 1 ).length );
+	}
+
+	@Test( expected = InvalidAminoAcidException.class )
+	public void invalidResidue() {
+		FragmentIonLadderGenerator.getInstance( MassType.MONOISOTOPIC ).getLadder( new Peptide( "PEPBTIDE" ), IonUtils.ION_TYPE_B, 1 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void bufferTooSmall() {
+		FragmentIonLadderGenerator.getInstance( MassType.MONOISOTOPIC ).getLadders( new Peptide( sequence ), new int[] { IonUtils.ION_TYPE_B }, new int[] { 1 }, new double[ 5 ] );
+	}
+
+}
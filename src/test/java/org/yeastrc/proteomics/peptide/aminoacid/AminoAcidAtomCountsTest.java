@@ -0,0 +1,48 @@
+package org.yeastrc.proteomics.peptide.aminoacid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.peptide.atom.Atom;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+
+public class AminoAcidAtomCountsTest {
+
+	static final String residues = "ARNDCEQGHILKMFPSTUWYVOJ";
+
+	@Test
+	public void sameAsParsedAtomCount() {
+
+		for( char residue : residues.toCharArray() ) {
+
+			AminoAcid aminoAcid = AminoAcidUtils.getAminoAcidBySymbol( residue );
+			Map<Atom, Integer> parsedAtomCount = aminoAcid.getParsedAtomCount();
+			int[] atomCounts = aminoAcid.getAtomCounts();
+
+			assertEquals( AtomUtils.NUM_ATOM_INDEXES, atomCounts.length );
+
+			for( int i = 0; i < AtomUtils.NUM_ATOM_INDEXES; i++ ) {
+				Integer expected = parsedAtomCount.get( AtomUtils.getIndexedAtom( i ) );
+				assertEquals( expected == null ? 0 : expected, atomCounts[ i ] );
+			}
+
+			// computed once per amino acid
+			assertSame( atomCounts, aminoAcid.getAtomCounts() );
+			assertSame( parsedAtomCount, aminoAcid.getParsedAtomCount() );
+		}
+	}
+
+	@Test
+	public void atomIndexes() {
+
+		assertEquals( AtomUtils.ATOM_INDEX_SULFUR, AtomUtils.getAtomIndex( AtomUtils.ATOM_SULFUR ) );
+		assertEquals( AtomUtils.ATOM_SELENIUM, AtomUtils.getIndexedAtom( AtomUtils.ATOM_INDEX_SELENIUM ) );
+		assertEquals( -1, AtomUtils.getAtomIndex( AtomUtils.ATOM_PROTON ) );
+
+		assertEquals( 1, AminoAcidUtils.getAminoAcidBySymbol( 'M' ).getAtomCounts()[ AtomUtils.ATOM_INDEX_SULFUR ] );
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.yeastrc.proteomics.peptide.atom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.LabelFactory;
+
+public class CompositionTest {
+
+	@Test
+	public void parseAndFormula() {
+
+		Composition lysine = Composition.parse( "C6H12N2O" );
+
+		assertEquals( Composition.of( 6, 12, 2, 1, 0, 0 ), lysine );
+		assertEquals( "C6H12N2O", lysine.getFormula() );
+		assertEquals( 12, lysine.getCount( AtomUtils.ATOM_INDEX_HYDROGEN ) );
+		assertEquals( 2, lysine.getCount( AtomUtils.ATOM_NITROGEN ) );
+
+		// Hill order regardless of input order, whitespace ignored
+		assertEquals( "C3H7NO2S", Composition.parse( "S O2 N H7 C3" ).getFormula() );
+		assertEquals( "C3H5NOSe", Composition.parse( "C3H5NOSe" ).getFormula() );
+
+		// negative counts
+		Composition deamidation = Composition.parse( "H-1N-1O" );
+		assertEquals( -1, deamidation.getCount( AtomUtils.ATOM_INDEX_NITROGEN ) );
+		assertEquals( "H-1N-1O", deamidation.getFormula() );
+
+		assertEquals( "", Composition.EMPTY.getFormula() );
+	}
+
+	@Test
+	public void labeledFormula() {
+
+		Composition labeled = Composition.parse( "C6H12[15N]2O" );
+
+		assertTrue( labeled.isLabeled() );
+		assertEquals( 2, labeled.getCount( AtomUtils.ATOM_INDEX_NITROGEN ) );
+		assertEquals( 2, labeled.getLabeledCount( AtomUtils.ATOM_INDEX_NITROGEN ) );
+		assertEquals( 0, labeled.getUnlabeledCount( AtomUtils.ATOM_INDEX_NITROGEN ) );
+		assertEquals( "C6H12[15N]2O", labeled.getFormula() );
+
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "15N" );
+		assertEquals( labeled, Composition.parse( "C6H12N2O" ).withLabel( label ) );
+		assertEquals( "C6H12N[15N]O", Composition.parse( "C6H12N[15N]O" ).getFormula() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void parseUnknownElement() {
+		Composition.parse( "C6H12Xx2" );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void parseUnknownIsotope() {
+		Composition.parse( "C6[14N]" );
+	}
+
+	@Test
+	public void arithmetic() {
+
+		Composition a = Composition.parse( "C6H12N2O" );
+		Composition b = Composition.parse( "H2O" );
+
+		assertEquals( Composition.parse( "C6H14N2O2" ), a.add( b ) );
+		assertEquals( a, a.add( b ).subtract( b ) );
+		assertEquals( Composition.parse( "C18H36N6O3" ), a.multiply( 3 ) );
+		assertEquals( Composition.EMPTY, a.subtract( a ) );
+		assertEquals( a.hashCode(), Composition.parse( "OC6N2H12" ).hashCode() );
+
+		// labels are kept through arithmetic, and dropped when no labeled atoms remain
+		Composition labeled = Composition.parse( "[15N]2" );
+		assertEquals( Composition.parse( "C6H12N2O[15N]2" ), a.add( labeled ) );
+		assertEquals( Composition.parse( "[15N]6" ), labeled.multiply( 3 ) );
+		assertFalse( a.add( labeled ).subtract( labeled ).isLabeled() );
+		assertEquals( a, a.add( labeled ).subtract( labeled ) );
+	}
+
+	@Test
+	public void mass() {
+
+		for( MassType massType : MassType.values() ) {
+
+			double water = AtomUtils.ATOM_OXYGEN.getMass( massType ) + 2 * AtomUtils.ATOM_HYDROGEN.getMass( massType );
+			assertEquals( water, Composition.WATER.getMass( massType ), 1E-9 );
+
+			IsotopeLabel label = LabelFactory.getInstance().getLabel( "18O" );
+			assertEquals( water + label.getMassChange( massType ), Composition.WATER.withLabel( label ).getMass( massType ), 1E-9 );
+		}
+	}
+
+}
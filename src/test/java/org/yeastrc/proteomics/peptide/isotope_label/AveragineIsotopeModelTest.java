@@ -0,0 +1,86 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+
+public class AveragineIsotopeModelTest {
+
+	@Test
+	public void averagineComposition() {
+
+		Composition composition = AveragineIsotopeModel.getAveragineComposition( 1000.0 );
+
+		// hydrogens make up the mass lost by rounding
+		assertEquals( Composition.parse( "C44H95N12O13" ), composition );
+		assertEquals( 1000.0, composition.getMass( MassType.MONOISOTOPIC ), 0.6 );
+	}
+
+	@Test
+	public void gridPointsAreExact() {
+
+		AveragineIsotopeModel model = AveragineIsotopeModel.getInstance( 50.0, 2000.0, 6 );
+
+		double[] probabilities = new double[ 6 ];
+		double[] massShifts = new double[ 6 ];
+
+		IsotopeDistribution expected = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution(
+				AveragineIsotopeModel.getAveragineComposition( 1500.0 ), 0, 6, 0.0 );
+
+		assertEquals( 6, model.getEnvelope( 1500.0, probabilities, massShifts ) );
+
+		for( int i = 0; i < 6; i++ ) {
+			assertEquals( expected.getProbability( i ), probabilities[ i ], 1E-12 );
+			assertEquals( expected.getMassShift( i ), massShifts[ i ], 1E-12 );
+		}
+	}
+
+	@Test
+	public void interpolatedBetweenGridPoints() {
+
+		AveragineIsotopeModel model = AveragineIsotopeModel.getInstance( 50.0, 2000.0, 6 );
+
+		double[] low = new double[ 6 ];
+		double[] high = new double[ 6 ];
+		double[] between = new double[ 6 ];
+
+		model.getEnvelope( 1500.0, low, null );
+		model.getEnvelope( 1550.0, high, null );
+		model.getEnvelope( 1510.0, between, null );
+
+		for( int i = 0; i < 6; i++ )
+			assertEquals( 0.8 * low[ i ] + 0.2 * high[ i ], between[ i ], 1E-12 );
+
+		// the monoisotopic peak shrinks as the mass grows
+		assertTrue( high[ 0 ] < between[ 0 ] && between[ 0 ] < low[ 0 ] );
+	}
+
+	@Test
+	public void wholeRange() {
+
+		AveragineIsotopeModel model = AveragineIsotopeModel.getInstance();
+		double[] probabilities = new double[ model.getNumPeaks() ];
+
+		model.getEnvelope( 0.0, probabilities, null );
+		assertEquals( 1.0, probabilities[ 0 ], 0.0 );
+
+		model.getEnvelope( model.getMaxMass(), probabilities, null );
+
+		double sum = 0.0;
+		for( double probability : probabilities )
+			sum += probability;
+
+		assertEquals( 1.0, sum, 0.01 );
+		assertSame( model, AveragineIsotopeModel.getInstance() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void massAboveMaxMass() {
+		AveragineIsotopeModel.getInstance().getEnvelope( 10000.1, new double[ AveragineIsotopeModel.DEFAULT_NUM_PEAKS ], null );
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+
+public class IsotopeDistributionCacheTest {
+
+	@Test
+	public void sameAsCalculator() {
+
+		IsotopeDistributionCache cache = IsotopeDistributionCache.getInstance( 10 );
+		Composition composition = Composition.parse( "C34H53N7O15S2" );
+
+		for( int charge = 0; charge <= 4; charge++ ) {
+			for( double cutoff : new double[] { 0.0, 1E-5, 1E-2 } ) {
+
+				IsotopeDistribution expected = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( composition, charge, 8, cutoff );
+				IsotopeDistribution cached = cache.getIsotopeDistribution( composition, charge, 8, cutoff );
+
+				assertEquals( expected.getNumPeaks(), cached.getNumPeaks() );
+
+				for( int i = 0; i < expected.getNumPeaks(); i++ ) {
+					assertEquals( expected.getProbability( i ), cached.getProbability( i ), 1E-15 );
+					assertEquals( expected.getMassShift( i ), cached.getMassShift( i ), 1E-12 );
+				}
+			}
+		}
+
+		// every charge and cutoff shares the one entry
+		assertEquals( 1, cache.getSize() );
+		assertEquals( 1, cache.getMissCount() );
+		assertEquals( 14, cache.getHitCount() );
+	}
+
+	@Test
+	public void sameCompositionSharesEntry() throws Exception {
+
+		IsotopeDistributionCache cache = IsotopeDistributionCache.getInstance( 10 );
+
+		IsotopeDistribution a = cache.getIsotopeDistribution( Collections.singleton( new Peptide( "PEPTIDEK" ) ), 2, 6 );
+		IsotopeDistribution b = cache.getIsotopeDistribution( Collections.singleton( new Peptide( "KEDITPEP" ) ), 2, 6 );
+
+		assertEquals( a, b );
+		assertEquals( 1, cache.getMissCount() );
+		assertEquals( 1, cache.getHitCount() );
+
+		// a label changes the composition
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "15N" );
+		cache.getIsotopeDistribution( Collections.singleton( new Peptide( "PEPTIDEK", label ) ), 2, 6 );
+		assertEquals( 2, cache.getMissCount() );
+
+		// as do crosslinked peptides
+		cache.getIsotopeDistribution( Arrays.asList( new Peptide( "PEPTIDEK" ), new Peptide( "PEPTIDEK" ) ), 2, 6 );
+		assertEquals( 3, cache.getMissCount() );
+		assertEquals( 3, cache.getSize() );
+	}
+
+	@Test
+	public void leastRecentlyUsedEvicted() {
+
+		IsotopeDistributionCache cache = IsotopeDistributionCache.getInstance( 1 );
+
+		cache.getIsotopeDistribution( Composition.parse( "C10" ), 1, 4, 0.0 );
+		cache.getIsotopeDistribution( Composition.parse( "C20" ), 1, 4, 0.0 );
+		cache.getIsotopeDistribution( Composition.parse( "C10" ), 1, 4, 0.0 );
+
+		assertEquals( 1, cache.getSize() );
+		assertEquals( 3, cache.getMissCount() );
+
+		cache.getIsotopeDistribution( Composition.parse( "C10" ), 1, 4, 0.0 );
+		assertEquals( 1, cache.getHitCount() );
+
+		cache.clear();
+		assertEquals( 0, cache.getSize() );
+	}
+
+	@Test
+	public void boundedSize() {
+
+		IsotopeDistributionCache cache = IsotopeDistributionCache.getInstance( 400 );
+
+		for( int i = 1; i <= 1000; i++ )
+			cache.getIsotopeDistribution( Composition.of( i, 2 * i, 0, 1, 0, 0 ), 1, 4, 0.0 );
+
+		assertEquals( 1000, cache.getMissCount() );
+		assertEquals( true, cache.getSize() <= 400 );
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.yeastrc.proteomics.peptide.isotope_label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.peptide.Peptide;
+
+public class IsotopeDistributionCalculatorTest {
+
+	@Test
+	public void sameAsIsotopeAbundanceCalculator() throws Exception {
+
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "15N" );
+
+		// no sulfur, as IsotopeAbundanceCalculator uses the wrong abundance for 36S
+		for( Peptide peptide : new Peptide[] { new Peptide( "PEPTIDEK" ), new Peptide( "GPAVLIFYWHKRQNEDST" ), new Peptide( "PEPTIDEK", label ) } ) {
+
+			Map<BigDecimal, Double> combinations = IsotopeAbundanceCalculator.getInstance().getIsotopMassShiftProbabilities( peptide, 2, 1E-12 );
+
+			// sum the combinations into peaks by nominal mass shift
+			double[] expectedProbabilities = new double[ 6 ];
+			double[] expectedMassMoments = new double[ 6 ];
+
+			for( Map.Entry<BigDecimal, Double> combination : combinations.entrySet() ) {
+				int peak = (int)Math.round( combination.getKey().doubleValue() );
+
+				if( peak < expectedProbabilities.length ) {
+					expectedProbabilities[ peak ] += combination.getValue();
+					expectedMassMoments[ peak ] += combination.getValue() * combination.getKey().doubleValue();
+				}
+			}
+
+			IsotopeDistribution distribution = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( peptide, 2, 6 );
+
+			assertEquals( 6, distribution.getNumPeaks() );
+			assertEquals( 0.0, distribution.getMassShift( 0 ), 0.0 );
+
+			for( int i = 0; i < 6; i++ ) {
+				// IsotopeAbundanceCalculator treats 17O and 18O as independent, so the probabilities differ slightly
+				assertEquals( expectedProbabilities[ i ], distribution.getProbability( i ), 1E-4 );
+				assertEquals( expectedMassMoments[ i ] / expectedProbabilities[ i ], distribution.getMassShift( i ), 1E-4 );
+			}
+		}
+	}
+
+	@Test
+	public void singleAtom() {
+
+		IsotopeDistribution distribution = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( Composition.parse( "S" ), 0, 5, 0.0 );
+
+		assertEquals( 5, distribution.getNumPeaks() );
+		assertEquals( 1.0 - 0.0076 - 0.0429 - 0.0002, distribution.getProbability( 0 ), 1E-12 );
+		assertEquals( 0.0076, distribution.getProbability( 1 ), 1E-12 );
+		assertEquals( 0.0429, distribution.getProbability( 2 ), 1E-12 );
+		assertEquals( 0.0, distribution.getProbability( 3 ), 0.0 );
+		assertEquals( 0.0002, distribution.getProbability( 4 ), 1E-12 );
+		assertEquals( 3.99501, distribution.getMassShift( 4 ), 1E-9 );
+	}
+
+	@Test
+	public void trailingPeaksBelowCutoffAreDropped() {
+
+		// water has very little beyond the M+2 peak
+		IsotopeDistribution distribution = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( Composition.WATER, 0, 10, 1E-5 );
+
+		assertEquals( 3, distribution.getNumPeaks() );
+		assertEquals( 0, distribution.getMostAbundantPeak() );
+	}
+
+	@Test
+	public void labeledAtomsHaveNoIsotopics() {
+
+		IsotopeDistribution distribution = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution(
+				Composition.parse( "[13C]6[15N]2" ), 0, 4, 0.0 );
+
+		assertEquals( 1, distribution.getNumPeaks() );
+		assertEquals( 1.0, distribution.getProbability( 0 ), 0.0 );
+	}
+
+	@Test
+	public void largeComposition() {
+
+		// about 20 kDa of averagine
+		Composition composition = Composition.of( 889, 1397, 244, 264, 7, 0 );
+
+		double[] massShifts = new double[ IsotopeDistributionCalculator.MAX_PEAKS ];
+		double[] probabilities = new double[ IsotopeDistributionCalculator.MAX_PEAKS ];
+
+		int n = IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( composition, 10, IsotopeDistributionCalculator.MAX_PEAKS, 0.0, massShifts, probabilities );
+		assertEquals( IsotopeDistributionCalculator.MAX_PEAKS, n );
+
+		// the envelope peaks far from the monoisotopic peak, and the peaks are about a neutron apart
+		double sum = 0.0;
+		int mostAbundant = 0;
+
+		for( int i = 0; i < n; i++ ) {
+			sum += probabilities[ i ];
+
+			if( probabilities[ i ] > probabilities[ mostAbundant ] )
+				mostAbundant = i;
+		}
+
+		assertTrue( mostAbundant > 8 && mostAbundant < 16 );
+		assertEquals( 1.0, sum, 1E-4 );
+		assertEquals( 30.1, massShifts[ 30 ], 0.1 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void tooManyPeaks() {
+		IsotopeDistributionCalculator.getInstance().getIsotopeDistribution( Composition.WATER, 0, IsotopeDistributionCalculator.MAX_PEAKS + 1, 0.0 );
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.yeastrc.proteomics.peptide.peptide;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.atom.AtomUtils;
+import org.yeastrc.proteomics.peptide.atom.Composition;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.LabelFactory;
+
+public class PeptideCompositionCalculatorTest {
+
+	// peptide string we're testing--one of each amino acid
+	static final String sequence = "GPAVLIMCFYWHKRQNEDST";
+
+	@Test
+	public void compositionOfPeptide() {
+
+		// PEPTIDE is C34H53N7O15
+		assertEquals( Composition.parse( "C34H53N7O15" ), PeptideCompositionCalculator.getInstance().getCompositionForPeptide( new Peptide( "PEPTIDE" ) ) );
+	}
+
+	@Test
+	public void sameMassAsPeptideMassCalculator() {
+
+		for( String labelName : new String[] { null, "13C", "15N", "18O", "2H" } ) {
+
+			IsotopeLabel label = labelName == null ? null : LabelFactory.getInstance().getLabel( labelName );
+			Peptide peptide = new Peptide( sequence, label );
+			Composition composition = PeptideCompositionCalculator.getInstance().getCompositionForPeptide( peptide );
+
+			for( MassType massType : MassType.values() ) {
+				double expected = PeptideMassCalculator.getInstance().getMassForPeptide( peptide, massType );
+				assertEquals( expected, composition.getMass( massType ), 1E-6 );
+			}
+		}
+	}
+
+	@Test
+	public void labelOnResiduesOnly() {
+
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "18O" );
+		Composition composition = PeptideCompositionCalculator.getInstance().getCompositionForPeptide( new Peptide( "PEPTIDE", label ) );
+
+		// all but the C-terminal OH are labeled
+		assertEquals( 15, composition.getCount( AtomUtils.ATOM_INDEX_OXYGEN ) );
+		assertEquals( 14, composition.getLabeledCount( AtomUtils.ATOM_INDEX_OXYGEN ) );
+	}
+
+	@Test
+	public void modifications() {
+
+		Map<Integer, Composition> modifications = new HashMap<>();
+		modifications.put( 4, Composition.parse( "O" ) );
+		modifications.put( 0, Composition.parse( "C2H2O" ) );
+
+		Peptide peptide = new Peptide( "PEPTIDE" );
+		Composition composition = PeptideCompositionCalculator.getInstance().getCompositionForPeptide( peptide, modifications );
+
+		// acetylated N-terminus and an extra O
+		assertEquals( Composition.parse( "C36H55N7O17" ), composition );
+	}
+
+	@Test
+	public void rangeOfSequence() {
+
+		Composition expected = PeptideCompositionCalculator.getInstance().getCompositionOfResidues( "LIMCF", 0, 5, null );
+		assertEquals( expected, PeptideCompositionCalculator.getInstance().getCompositionOfResidues( sequence, 4, 9, null ) );
+	}
+
+	@Test( expected = InvalidAminoAcidException.class )
+	public void invalidResidue() {
+		PeptideCompositionCalculator.getInstance().getCompositionForPeptide( new Peptide( "PEPBTIDE" ) );
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.yeastrc.proteomics.peptide.peptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.mass.MassUtils.MassType;
+import org.yeastrc.proteomics.peptide.aminoacid.InvalidAminoAcidException;
+import org.yeastrc.proteomics.peptide.isotope_label.IsotopeLabel;
+import org.yeastrc.proteomics.peptide.isotope_label.LabelFactory;
+
+public class ResidueMassTableTest {
+
+	// peptide string we're testing--one of each amino acid
+	static final String sequence = "GPAVLIMCFYWHKRQNEDST";
+
+	@Test
+	public void sameAsPeptideMassCalculator() {
+
+		IsotopeLabel label = LabelFactory.getInstance().getLabel( "15N" );
+
+		for( MassType massType : MassType.values() ) {
+			for( IsotopeLabel l : new IsotopeLabel[] { null, label } ) {
+
+				double expected = PeptideMassCalculator.getInstance().getMassForPeptide( new Peptide( sequence, l ), massType );
+				ResidueMassTable table = ResidueMassTable.getInstance( massType, l );
+
+				assertEquals( expected, table.getMass( sequence, 0, sequence.length() ), 0.0 );
+				assertEquals( expected, table.getMass( sequence.toCharArray(), 0, sequence.length() ), 0.0 );
+				assertEquals( expected, table.getMass( sequence.getBytes( StandardCharsets.US_ASCII ), 0, sequence.length() ), 0.0 );
+			}
+		}
+	}
+
+	@Test
+	public void rangeOfSequence() {
+
+		ResidueMassTable table = ResidueMassTable.getInstance( MassType.MONOISOTOPIC );
+		double expected = PeptideMassCalculator.getInstance().getMassForPeptide( new Peptide( "LIMCF" ), MassType.MONOISOTOPIC );
+
+		assertEquals( expected, table.getMass( sequence, 4, 9 ), 0.0 );
+		assertEquals( expected, table.getMass( sequence.toCharArray(), 4, 9 ), 0.0 );
+		assertEquals( expected, table.getMass( sequence.getBytes( StandardCharsets.US_ASCII ), 4, 9 ), 0.0 );
+	}
+
+	@Test
+	public void invalidResidues() {
+
+		ResidueMassTable table = ResidueMassTable.getInstance( MassType.MONOISOTOPIC );
+
+		assertTrue( Double.isNaN( table.getResidueMass( 'X' ) ) );
+		assertTrue( Double.isNaN( table.getResidueMass( 'k' ) ) );
+		assertTrue( Double.isNaN( table.getResidueMass( 300 ) ) );
+
+		// outside the range being summed
+		assertEquals( table.getResidueMass( 'K' ) + table.getWaterMass(), table.getMass( "XKX", 1, 2 ), 0.0 );
+
+		try {
+			table.getMass( "PEPXIDE", 0, 7 );
+			assertTrue( false );
+		} catch( InvalidAminoAcidException e ) {
+			assertEquals( "Unknown amino acid residue: X", e.getMessage() );
+		}
+
+		try {
+			table.getMass( "PEPXIDE".getBytes( StandardCharsets.US_ASCII ), 0, 7 );
+			assertTrue( false );
+		} catch( InvalidAminoAcidException e ) { ; }
+	}
+
+}
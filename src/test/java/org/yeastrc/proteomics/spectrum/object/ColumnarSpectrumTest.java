@@ -0,0 +1,120 @@
+package org.yeastrc.proteomics.spectrum.object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ColumnarSpectrumTest {
+
+	@Test
+	public void sortsPeaks() {
+
+		ColumnarSpectrum spectrum = ColumnarSpectrum.getInstance( new double[] { 300.0, 100.0, 200.0, 100.0 }, new float[] { 3, 1, 2, 4 } );
+
+		assertEquals( 4, spectrum.getNumPeaks() );
+		assertArrayEquals( new double[] { 100.0, 100.0, 200.0, 300.0 }, spectrum.getMassToCharges(), 0 );
+
+		// equal m/z stay in the given order
+		assertArrayEquals( new float[] { 1, 4, 2, 3 }, spectrum.getIntensities(), 0 );
+		assertEquals( 10.0, spectrum.getTotalIntensity(), 0 );
+	}
+
+	@Test
+	public void copiesArrays() {
+
+		double[] massToCharges = { 100.0, 200.0 };
+		float[] intensities = { 1, 2 };
+
+		ColumnarSpectrum spectrum = ColumnarSpectrum.getInstance( massToCharges, intensities );
+		massToCharges[ 0 ] = 500.0;
+		intensities[ 0 ] = 5;
+
+		assertEquals( 100.0, spectrum.getMassToCharge( 0 ), 0 );
+		assertEquals( 1.0, spectrum.getIntensity( 0 ), 0 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void unequalLengths() {
+		ColumnarSpectrum.getInstance( new double[] { 100.0, 200.0 }, new float[] { 1 } );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void unsortedSortedInstance() {
+		ColumnarSpectrum.getSortedInstance( new double[] { 200.0, 100.0 }, new float[] { 1, 2 }, 2 );
+	}
+
+	@Test
+	public void sortedInstance() {
+
+		ColumnarSpectrum spectrum = ColumnarSpectrum.getSortedInstance( new double[] { 100.0, 200.0, 0.0 }, new float[] { 1, 2, 0 }, 2 );
+
+		assertEquals( ColumnarSpectrum.getInstance( new double[] { 100.0, 200.0 }, new float[] { 1, 2 } ), spectrum );
+	}
+
+	@Test
+	public void sortedInstanceCopiesArrays() {
+
+		double[] massToCharges = { 100.0, 200.0 };
+		float[] intensities = { 1, 2 };
+
+		ColumnarSpectrum spectrum = ColumnarSpectrum.getSortedInstance( massToCharges, intensities, 2 );
+		massToCharges[ 0 ] = 50.0;
+		intensities[ 0 ] = 5;
+
+		assertEquals( 100.0, spectrum.getMassToCharge( 0 ), 0 );
+		assertEquals( 1.0, spectrum.getIntensity( 0 ), 0 );
+	}
+
+	@Test
+	public void fromChangedSpectrum() {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 200.0, 2 ) );
+		peaks.add( new Peak( spectrum, 100.0, 1 ) );
+
+		assertArrayEquals( new double[] { 100.0, 200.0 }, ColumnarSpectrum.fromSpectrum( spectrum ).getMassToCharges(), 0 );
+
+		// the current peaks are read each time
+		peaks.set( 1, new Peak( spectrum, 300.0, 3 ) );
+
+		ColumnarSpectrum columnar = ColumnarSpectrum.fromSpectrum( spectrum );
+		assertArrayEquals( new double[] { 200.0, 300.0 }, columnar.getMassToCharges(), 0 );
+		assertArrayEquals( new float[] { 2, 3 }, columnar.getIntensities(), 0 );
+	}
+
+	@Test
+	public void spectrumRoundTrip() {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 250.5, 10 ) );
+		peaks.add( new Peak( spectrum, 120.25, 20 ) );
+		peaks.add( new Peak( spectrum, 400.0, 5 ) );
+
+		ColumnarSpectrum columnar = ColumnarSpectrum.fromSpectrum( spectrum );
+		assertArrayEquals( new double[] { 120.25, 250.5, 400.0 }, columnar.getMassToCharges(), 0 );
+		assertArrayEquals( new float[] { 20, 10, 5 }, columnar.getIntensities(), 0 );
+
+		Spectrum view = columnar.toSpectrum();
+		assertEquals( 3, view.getPeaks().size() );
+		assertEquals( new Peak( null, 250.5, 10 ), view.getPeaks().get( 1 ) );
+		assertSame( view, view.getPeaks().get( 1 ).getSpectrum() );
+		assertEquals( 35.0, view.getTotalIntensity(), 0 );
+
+		assertEquals( columnar, ColumnarSpectrum.fromSpectrum( view ) );
+		assertEquals( new Peak( null, 400.0, 5 ), columnar.getPeak( 2 ) );
+		assertEquals( columnar.getPeaks(), view.getPeaks() );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void peaksAreReadOnly() {
+		ColumnarSpectrum.getInstance( new double[] { 100.0 }, new float[] { 1 } ).getPeaks().add( new Peak( null, 200.0, 1 ) );
+	}
+
+}
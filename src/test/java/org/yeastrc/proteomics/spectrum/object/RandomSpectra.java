@@ -0,0 +1,42 @@
+package org.yeastrc.proteomics.spectrum.object;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random spectra for tests. Public so that tests in other packages can use it.
+ */
+public final class RandomSpectra {
+
+	/**
+	 * Get a spectrum with random peaks, whose m/z are from 100 to 100 + massToChargeRange
+	 * @param random
+	 * @param numPeaks
+	 * @param massToChargeRange The width of the range of m/z values
+	 * @param massToChargeStep The m/z values are multiples of this above 100, or any value if it is 0
+	 * @param numIntensities The intensities are whole numbers from 0 to numIntensities - 1
+	 * @param sorted Whether the peak list is sorted by m/z
+	 * @return
+	 */
+	public static Spectrum getRandomSpectrum( Random random, int numPeaks, double massToChargeRange, double massToChargeStep, int numIntensities, boolean sorted ) {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+
+		int numSteps = massToChargeStep > 0 ? (int)Math.round( massToChargeRange / massToChargeStep ) : 0;
+
+		for( int i = 0; i < numPeaks; i++ ) {
+			double massToCharge = massToChargeStep > 0 ? random.nextInt( numSteps ) * massToChargeStep : random.nextDouble() * massToChargeRange;
+			peaks.add( new Peak( spectrum, 100 + massToCharge, random.nextInt( numIntensities ) ) );
+		}
+
+		if( sorted )
+			Collections.sort( peaks );
+
+		return spectrum;
+	}
+
+	private RandomSpectra() { }
+}
@@ -0,0 +1,254 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class BinnedSpectrumDenoiserTest {
+
+	/**
+	 * The original algorithm, a scan of every peak for every bin with a TreeSet per bin
+	 */
+	static List<Peak> processSpectrumOriginal( Spectrum spectrum, int binWidth, int numPeaks ) {
+
+		double minMz = 0.0;
+		double maxMz = 0.0;
+
+		for( Peak p : spectrum.getPeaks() ) {
+			if( minMz == 0.0 || p.getMassToCharge() < minMz )
+				minMz = p.getMassToCharge();
+
+			if( maxMz == 0.0 || p.getMassToCharge() > maxMz )
+				maxMz = p.getMassToCharge();
+		}
+
+		List<Peak> newPeaks = new ArrayList<Peak>();
+
+		for( int start = BinnedSpectrumDenoiser.getPreviousMultiple( binWidth, minMz ); start <= BinnedSpectrumDenoiser.getPreviousMultiple( binWidth, maxMz ); start += binWidth ) {
+			Collection<Peak> binPeaks = new TreeSet<Peak>();
+
+			for( Peak p : spectrum.getPeaks() ) {
+				if( p.getMassToCharge() >= start && p.getMassToCharge() < start + binWidth ) {
+
+					if( binPeaks.size() < numPeaks ) {
+						binPeaks.add( p );
+					} else {
+						Peak peakToRemove = null;
+						for( Peak binPeak : binPeaks ) {
+							if( p.getIntensity() > binPeak.getIntensity() ) {
+								if( peakToRemove == null || binPeak.getIntensity() < peakToRemove.getIntensity() )
+									peakToRemove = binPeak;
+							}
+						}
+
+						if( peakToRemove != null ) {
+							binPeaks.remove( peakToRemove );
+							binPeaks.add( p );
+						}
+					}
+				}
+			}
+
+			newPeaks.addAll( binPeaks );
+		}
+
+		return newPeaks;
+	}
+
+	@Test
+	public void sameAsOriginal() throws Exception {
+
+		Random random = new Random( 37 );
+
+		for( int binWidth : new int[] { 1, 7, 50, 100 } ) {
+			for( int numPeaks : new int[] { 1, 3, 10 } ) {
+
+				BinnedSpectrumDenoiser denoiser = BinnedSpectrumDenoiser.getInstance( binWidth, numPeaks );
+
+				for( int i = 0; i < 20; i++ ) {
+					Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 1500 ), 2000, 0.5, 6, i % 2 == 0 );
+
+					List<Peak> expected = processSpectrumOriginal( spectrum, binWidth, numPeaks );
+					List<Peak> peaks = denoiser.processSpectrum( spectrum ).getPeaks();
+
+					assertEquals( expected.size(), peaks.size() );
+					for( int j = 0; j < expected.size(); j++ )
+						assertSame( expected.get( j ), peaks.get( j ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void fractionalWidth() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.1, 5 ) );
+		peaks.add( new Peak( spectrum, 100.3, 7 ) );
+		peaks.add( new Peak( spectrum, 100.6, 1 ) );
+		peaks.add( new Peak( spectrum, 100.7, 2 ) );
+		peaks.add( new Peak( spectrum, 102.0, 3 ) );
+
+		// bins [100.0, 100.5), [100.5, 101.0) and [102.0, 102.5)
+		BinnedSpectrumDenoiser denoiser = BinnedSpectrumDenoiser.getInstance( 0.5, 1 );
+		assertEquals( 0.5, denoiser.getFractionalBinWidth(), 0 );
+		assertEquals( 0, denoiser.getBinWidth() );
+
+		List<Peak> kept = denoiser.processSpectrum( spectrum ).getPeaks();
+		assertEquals( 3, kept.size() );
+		assertSame( peaks.get( 1 ), kept.get( 0 ) );
+		assertSame( peaks.get( 3 ), kept.get( 1 ) );
+		assertSame( peaks.get( 4 ), kept.get( 2 ) );
+
+		assertEquals( 5, denoiser.getFractionalBins( spectrum ).size() );
+		assertEquals( 100.0, denoiser.getFractionalBins( spectrum ).get( 0 ).getStart(), 0 );
+		assertEquals( 100.5, denoiser.getFractionalBins( spectrum ).get( 0 ).getEnd(), 0 );
+	}
+
+	@Test( expected = Exception.class )
+	public void fractionalWidthIntBins() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.1, 5 ) );
+
+		BinnedSpectrumDenoiser.getInstance( 0.5, 1 ).getBins( spectrum );
+	}
+
+	@Test
+	public void intBins() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 236.0, 5 ) );
+		peaks.add( new Peak( spectrum, 136.0, 5 ) );
+
+		BinnedSpectrumDenoiser denoiser = BinnedSpectrumDenoiser.getInstance( 100, 1 );
+		assertEquals( 100, denoiser.getBinWidth() );
+
+		List<SpectrumBin> bins = denoiser.getBins( spectrum );
+		assertEquals( 2, bins.size() );
+		assertEquals( 100, bins.get( 0 ).start );
+		assertEquals( 200, bins.get( 0 ).getEnd() );
+		assertEquals( 200, bins.get( 1 ).getStart() );
+		assertEquals( 300, bins.get( 1 ).end );
+	}
+
+	@Test
+	public void peaksChangedAfterProcessing() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.0, 5 ) );
+
+		BinnedSpectrumDenoiser denoiser = BinnedSpectrumDenoiser.getInstance( 10, 1 );
+		assertEquals( 1, denoiser.processSpectrum( spectrum ).getPeaks().size() );
+
+		// the peak list is read again for each call, a replaced peak is seen too
+		Peak added = new Peak( spectrum, 120.0, 1 );
+		peaks.add( added );
+
+		List<Peak> kept = denoiser.processSpectrum( spectrum ).getPeaks();
+		assertEquals( 2, kept.size() );
+		assertSame( added, kept.get( 1 ) );
+		assertEquals( 3, denoiser.getBins( spectrum ).size() );
+
+		Peak replacement = new Peak( spectrum, 140.0, 1 );
+		peaks.set( 1, replacement );
+
+		kept = denoiser.processSpectrum( spectrum ).getPeaks();
+		assertEquals( 2, kept.size() );
+		assertSame( replacement, kept.get( 1 ) );
+		assertEquals( 5, denoiser.getBins( spectrum ).size() );
+	}
+
+	@Test
+	public void hugeNumPeaks() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 150.0, 5 ) );
+		peaks.add( new Peak( spectrum, 120.0, 1 ) );
+
+		List<Peak> kept = BinnedSpectrumDenoiser.getInstance( 100, Integer.MAX_VALUE ).processSpectrum( spectrum ).getPeaks();
+		assertEquals( 2, kept.size() );
+		assertSame( peaks.get( 1 ), kept.get( 0 ) );
+		assertSame( peaks.get( 0 ), kept.get( 1 ) );
+	}
+
+	@Test
+	public void slidingWindows() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.0, 5 ) );
+		peaks.add( new Peak( spectrum, 109.0, 1 ) );
+		peaks.add( new Peak( spectrum, 112.0, 2 ) );
+		peaks.add( new Peak( spectrum, 125.0, 3 ) );
+
+		// windows of 20 starting every 5, the peak at 109 is not the most intense in any window it is in
+		BinnedSpectrumDenoiser denoiser = BinnedSpectrumDenoiser.getInstance( 20.0, 5.0, 1 );
+
+		List<Peak> kept = denoiser.processSpectrum( spectrum ).getPeaks();
+		assertEquals( 3, kept.size() );
+		assertSame( peaks.get( 0 ), kept.get( 0 ) );
+		assertSame( peaks.get( 2 ), kept.get( 1 ) );
+		assertSame( peaks.get( 3 ), kept.get( 2 ) );
+	}
+
+	@Test
+	public void slidingWindowsKeepBinPeaks() throws Exception {
+
+		Random random = new Random( 41 );
+
+		for( int i = 0; i < 20; i++ ) {
+			Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 1000 ), 2000, 0.5, 6, true );
+
+			// every peak kept with bins of 10 is in a window of 10 at a step of 5, so is also kept by the windows
+			List<Peak> binPeaks = BinnedSpectrumDenoiser.getInstance( 10, 2 ).processSpectrum( spectrum ).getPeaks();
+			List<Peak> windowPeaks = BinnedSpectrumDenoiser.getInstance( 10.0, 5.0, 2 ).processSpectrum( spectrum ).getPeaks();
+
+			assertTrue( windowPeaks.size() >= binPeaks.size() );
+			for( Peak peak : binPeaks )
+				assertTrue( windowPeaks.contains( peak ) );
+
+			List<Peak> sortedWindowPeaks = new ArrayList<>( windowPeaks );
+			Collections.sort( sortedWindowPeaks );
+			assertEquals( sortedWindowPeaks, windowPeaks );
+		}
+	}
+
+	@Test
+	public void columnarSameAsSpectrum() throws Exception {
+
+		Random random = new Random( 43 );
+
+		for( BinnedSpectrumDenoiser denoiser : new BinnedSpectrumDenoiser[] { BinnedSpectrumDenoiser.getInstance( 0.75, 2 ), BinnedSpectrumDenoiser.getInstance( 20.0, 7.5, 3 ) } ) {
+			for( int i = 0; i < 20; i++ ) {
+				ColumnarSpectrum spectrum = ColumnarSpectrum.fromSpectrum( RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 1000 ), 2000, 0.5, 6, false ) );
+
+				assertEquals( ColumnarSpectrum.fromSpectrum( denoiser.processSpectrum( spectrum.toSpectrum() ) ), denoiser.processSpectrum( spectrum ) );
+			}
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void stepLargerThanWidth() {
+		BinnedSpectrumDenoiser.getInstance( 10.0, 20.0, 1 );
+	}
+
+}
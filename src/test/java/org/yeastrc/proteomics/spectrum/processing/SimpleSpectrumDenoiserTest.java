@@ -0,0 +1,127 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class SimpleSpectrumDenoiserTest {
+
+	/**
+	 * The original algorithm, which sorts all the intensities
+	 */
+	static List<Peak> processSpectrumOriginal( Spectrum inputSpectrum, int maxPeaks, double fractionTotalIntensity ) {
+
+		List<Peak> tmpPeaks = new ArrayList<Peak>();
+
+		if( fractionTotalIntensity != 0.0 ) {
+			double cutoff = fractionTotalIntensity * inputSpectrum.getTotalIntensity();
+			for( Peak p : inputSpectrum.getPeaks() ) {
+				if( p.getIntensity() >= cutoff )
+					tmpPeaks.add( p );
+			}
+		} else {
+			tmpPeaks.addAll( inputSpectrum.getPeaks() );
+		}
+
+		if( maxPeaks <= 0 || tmpPeaks.size() <= maxPeaks )
+			return tmpPeaks;
+
+		double[] sortedIntensities = new double[ tmpPeaks.size() ];
+		for( int i = 0; i < tmpPeaks.size(); i++ )
+			sortedIntensities[ i ] = tmpPeaks.get( i ).getIntensity();
+
+		Arrays.sort( sortedIntensities );
+
+		double intensityFilter = sortedIntensities[ sortedIntensities.length - maxPeaks ];
+
+		int lastPlaceCount = 0;
+		for( int i = ( sortedIntensities.length - maxPeaks ); i < sortedIntensities.length && sortedIntensities[ i ] == intensityFilter; i++ )
+			lastPlaceCount++;
+
+		List<Peak> newPeaks = new ArrayList<Peak>( maxPeaks );
+		int lastPlacesIncluded = 0;
+		for( Peak p : tmpPeaks ) {
+			if( p.getIntensity() > intensityFilter )
+				newPeaks.add( p );
+			else if( p.getIntensity() == intensityFilter && lastPlacesIncluded++ < lastPlaceCount )
+				newPeaks.add( p );
+		}
+
+		return newPeaks;
+	}
+
+	@Test
+	public void sameAsOriginal() throws Exception {
+
+		Random random = new Random( 47 );
+
+		for( int maxPeaks : new int[] { 1, 10, 100 } ) {
+			for( double fraction : new double[] { 0.0, 0.0005, 0.002 } ) {
+
+				SimpleSpectrumDenoiser denoiser = fraction == 0.0 ? SimpleSpectrumDenoiser.createInstance( maxPeaks ) : SimpleSpectrumDenoiser.createInstance( maxPeaks, fraction );
+
+				for( int i = 0; i < 30; i++ ) {
+					Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 3000 ), 2000, 0, i % 3 == 0 ? 3 : 100000, false );
+
+					List<Peak> expected = processSpectrumOriginal( spectrum, maxPeaks, fraction );
+					List<Peak> peaks = denoiser.processSpectrum( spectrum ).getPeaks();
+
+					assertEquals( expected.size(), peaks.size() );
+					for( int j = 0; j < expected.size(); j++ )
+						assertSame( expected.get( j ), peaks.get( j ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void keepsFirstOfTies() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 100.0, 5 ) );
+		peaks.add( new Peak( spectrum, 200.0, 9 ) );
+		peaks.add( new Peak( spectrum, 300.0, 5 ) );
+		peaks.add( new Peak( spectrum, 400.0, 5 ) );
+		peaks.add( new Peak( spectrum, 500.0, 1 ) );
+
+		List<Peak> kept = SimpleSpectrumDenoiser.createInstance( 3 ).processSpectrum( spectrum ).getPeaks();
+
+		assertEquals( 3, kept.size() );
+		assertSame( peaks.get( 0 ), kept.get( 0 ) );
+		assertSame( peaks.get( 1 ), kept.get( 1 ) );
+		assertSame( peaks.get( 2 ), kept.get( 2 ) );
+	}
+
+	@Test
+	public void selectNthLargest() {
+
+		Random random = new Random( 53 );
+
+		for( int i = 0; i < 500; i++ ) {
+			int length = 1 + random.nextInt( 2000 );
+			double[] values = new double[ length ];
+
+			// random, few distinct, ascending and descending values
+			int kind = i % 4;
+			for( int j = 0; j < length; j++ )
+				values[ j ] = kind == 0 ? random.nextDouble() : kind == 1 ? random.nextInt( 4 ) : kind == 2 ? j : -j;
+
+			double[] sorted = values.clone();
+			Arrays.sort( sorted );
+
+			int n = 1 + random.nextInt( length );
+			assertEquals( sorted[ length - n ], SimpleSpectrumDenoiser.selectNthLargest( values, length, n ), 0 );
+		}
+	}
+
+}
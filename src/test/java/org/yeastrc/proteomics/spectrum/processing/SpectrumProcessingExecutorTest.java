@@ -0,0 +1,154 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class SpectrumProcessingExecutorTest {
+
+	static List<Spectrum> getRandomSpectra( Random random, int numSpectra ) {
+
+		List<Spectrum> spectra = new ArrayList<>();
+
+		for( int i = 0; i < numSpectra; i++ )
+			spectra.add( RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 1500 ), 2000, 0.25, 50, i % 2 == 0 ) );
+
+		return spectra;
+	}
+
+	@Test
+	public void sameAsSerial() throws Exception {
+
+		List<Spectrum> spectra = getRandomSpectra( new Random( 61 ), 400 );
+
+		SpectrumProcessor[] processors = {
+				SimpleSpectrumDenoiser.createInstance( 100, 0.001 ),
+				BinnedSpectrumDenoiser.getInstance( 100, 5 ),
+				SpectrumProcessingPipeline.getInstance( SimpleSpectrumDenoiser.createInstance( 300 ), BinnedSpectrumDenoiser.getInstance( 50.0, 25.0, 3 ), IntensityNormalizer.getInstance( 100 ) ),
+		};
+
+		for( SpectrumProcessor processor : processors ) {
+
+			List<Spectrum> results = new ArrayList<>();
+
+			try( SpectrumProcessingExecutor executor = SpectrumProcessingExecutor.getInstance( processor, 4, 16 ) ) {
+				assertEquals( spectra.size(), executor.processSpectra( spectra.iterator(), results::add ) );
+				assertEquals( spectra.size(), executor.getSpectrumCount() );
+				assertTrue( executor.getSpectraPerSecond() > 0 );
+
+				List<ColumnarSpectrum> columnarSpectra = new ArrayList<>();
+				for( Spectrum spectrum : spectra )
+					columnarSpectra.add( ColumnarSpectrum.fromSpectrum( spectrum ) );
+
+				List<ColumnarSpectrum> columnarResults = new ArrayList<>();
+				executor.processColumnarSpectra( columnarSpectra.iterator(), columnarResults::add );
+
+				for( int i = 0; i < columnarSpectra.size(); i++ )
+					assertEquals( processor.processSpectrum( columnarSpectra.get( i ) ), columnarResults.get( i ) );
+			}
+
+			assertEquals( spectra.size(), results.size() );
+
+			for( int i = 0; i < spectra.size(); i++ ) {
+				List<Peak> expected = processor.processSpectrum( spectra.get( i ) ).getPeaks();
+				List<Peak> peaks = results.get( i ).getPeaks();
+
+				assertEquals( expected.size(), peaks.size() );
+				for( int j = 0; j < expected.size(); j++ )
+					assertEquals( expected.get( j ), peaks.get( j ) );
+			}
+		}
+	}
+
+	@Test
+	public void readsAtMostMaxPendingAhead() throws Exception {
+
+		List<Spectrum> spectra = getRandomSpectra( new Random( 67 ), 200 );
+		int[] numRead = new int[ 1 ];
+		int[] numConsumed = new int[ 1 ];
+		int[] maxAhead = new int[ 1 ];
+
+		Iterator<Spectrum> reader = new Iterator<Spectrum>() {
+
+			@Override
+			public boolean hasNext() {
+				return numRead[ 0 ] < spectra.size();
+			}
+
+			@Override
+			public Spectrum next() {
+				maxAhead[ 0 ] = Math.max( maxAhead[ 0 ], numRead[ 0 ] - numConsumed[ 0 ] + 1 );
+				return spectra.get( numRead[ 0 ]++ );
+			}
+		};
+
+		List<Spectrum> results = new ArrayList<>();
+
+		try( SpectrumProcessingExecutor executor = SpectrumProcessingExecutor.getInstance( SimpleSpectrumDenoiser.createInstance( 50 ), 3, 8 ) ) {
+			executor.processSpectra( reader, spectrum -> { numConsumed[ 0 ]++; results.add( spectrum ); } );
+		}
+
+		assertEquals( 200, results.size() );
+		assertTrue( maxAhead[ 0 ] <= 8 );
+	}
+
+	@Test
+	public void processorException() throws Exception {
+
+		List<Spectrum> spectra = getRandomSpectra( new Random( 71 ), 50 );
+		spectra.set( 20, new Spectrum( new ArrayList<Peak>() ) );
+
+		List<Spectrum> results = new ArrayList<>();
+
+		try( SpectrumProcessingExecutor executor = SpectrumProcessingExecutor.getInstance( BinnedSpectrumDenoiser.getInstance( 100, 5 ), 4, 8 ) ) {
+			executor.processSpectra( spectra.iterator(), results::add );
+			fail( "Expected the exception for the empty spectrum" );
+		} catch( Exception e ) {
+			assertEquals( "Spectrum has no peaks.", e.getMessage() );
+		}
+
+		// the spectra before it were still passed on, in order
+		assertEquals( 20, results.size() );
+	}
+
+	@Test
+	public void ordered() throws Exception {
+
+		// a processor that takes longer for earlier spectra
+		SpectrumProcessor processor = spectrum -> {
+			Thread.sleep( spectrum.getPeaks().size() );
+			return spectrum;
+		};
+
+		List<Spectrum> spectra = new ArrayList<>();
+		for( int i = 0; i < 40; i++ ) {
+			List<Peak> peaks = new ArrayList<>();
+			for( int j = 0; j < ( 40 - i ) % 7; j++ )
+				peaks.add( new Peak( null, j, j ) );
+
+			spectra.add( new Spectrum( peaks ) );
+		}
+
+		List<Spectrum> results = new ArrayList<>();
+
+		try( SpectrumProcessingExecutor executor = SpectrumProcessingExecutor.getInstance( processor, 4, 10 ) ) {
+			executor.processSpectra( spectra.iterator(), results::add );
+		}
+
+		for( int i = 0; i < spectra.size(); i++ )
+			assertSame( spectra.get( i ), results.get( i ) );
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.mass.MassTolerance;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class SpectrumProcessingPipelineTest {
+
+	@Test
+	public void sameAsProcessors() throws Exception {
+
+		Random random = new Random( 59 );
+
+		SimpleSpectrumDenoiser simple = SimpleSpectrumDenoiser.createInstance( 200, 0.0005 );
+		BinnedSpectrumDenoiser binned = BinnedSpectrumDenoiser.getInstance( 50, 4 );
+		SimpleSpectrumDenoiser top = SimpleSpectrumDenoiser.createInstance( 30 );
+
+		SpectrumProcessingPipeline pipeline = SpectrumProcessingPipeline.getInstance( simple, binned, top );
+
+		for( int i = 0; i < 50; i++ ) {
+			Spectrum spectrum = RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 2000 ), 2000, 0.25, 50, i % 2 == 0 );
+
+			List<Peak> expected = top.processSpectrum( binned.processSpectrum( simple.processSpectrum( spectrum ) ) ).getPeaks();
+			List<Peak> peaks = pipeline.processSpectrum( spectrum ).getPeaks();
+
+			assertEquals( expected.size(), peaks.size() );
+			for( int j = 0; j < expected.size(); j++ )
+				assertSame( expected.get( j ), peaks.get( j ) );
+
+			ColumnarSpectrum columnar = ColumnarSpectrum.fromSpectrum( spectrum );
+			assertEquals( top.processSpectrum( binned.processSpectrum( simple.processSpectrum( columnar ) ) ), pipeline.processSpectrum( columnar ) );
+		}
+
+		assertEquals( 100, pipeline.getSpectrumCount() );
+		assertTrue( pipeline.getStageNanos( 1 ) > 0 );
+
+		pipeline.resetTimings();
+		assertEquals( 0, pipeline.getSpectrumCount() );
+		assertEquals( 0, pipeline.getStageNanos( 1 ) );
+	}
+
+	@Test
+	public void normalizeAndRemovePrecursor() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 300.0, 10 ) );
+		peaks.add( new Peak( spectrum, 500.0, 40 ) );
+		peaks.add( new Peak( spectrum, 200.0, 20 ) );
+		peaks.add( new Peak( spectrum, 501.5, 5 ) );
+
+		SpectrumProcessingPipeline pipeline = SpectrumProcessingPipeline.getInstance(
+				PrecursorPeakRemover.getInstance( MassTolerance.daltons( 1.0 ) ),
+				IntensityNormalizer.getInstance( 100 ) );
+
+		List<Peak> processed = pipeline.processSpectrum( spectrum, 500.5 ).getPeaks();
+
+		assertEquals( 2, processed.size() );
+		assertEquals( new Peak( null, 300.0, 50 ), processed.get( 0 ) );
+		assertEquals( new Peak( null, 200.0, 100 ), processed.get( 1 ) );
+
+		// without a precursor m/z only the intensities change
+		ColumnarSpectrum columnar = pipeline.processSpectrum( ColumnarSpectrum.fromSpectrum( spectrum ) );
+		assertEquals( ColumnarSpectrum.getInstance( new double[] { 200.0, 300.0, 500.0, 501.5 }, new float[] { 50, 25, 100, 12.5f } ), columnar );
+	}
+
+	@Test
+	public void allPeaksRemoved() throws Exception {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		peaks.add( new Peak( spectrum, 300.0, 10 ) );
+
+		SpectrumProcessingPipeline pipeline = SpectrumProcessingPipeline.getInstance(
+				PrecursorPeakRemover.getInstance( MassTolerance.ppm( 10 ) ),
+				BinnedSpectrumDenoiser.getInstance( 100, 1 ) );
+
+		assertEquals( 0, pipeline.processSpectrum( spectrum, 300.0 ).getPeaks().size() );
+		assertEquals( 1, pipeline.processSpectrum( spectrum, 400.0 ).getPeaks().size() );
+	}
+
+	@Test
+	public void peakBufferSort() {
+
+		List<Peak> peaks = new ArrayList<>();
+		Spectrum spectrum = new Spectrum( peaks );
+		for( double mz : new double[] { 5, 3, 9, 3, 1, 7, 3 } )
+			peaks.add( new Peak( spectrum, mz, peaks.size() ) );
+
+		PeakBuffer buffer = PeakBuffer.getInstance();
+		buffer.load( spectrum, Double.NaN );
+		assertFalse( buffer.isSortedByMassToCharge() );
+
+		int[] previousIndexes = new int[ peaks.size() ];
+		buffer.sortByMassToCharge( previousIndexes );
+
+		// equal m/z stay in order
+		int[] expected = { 4, 1, 3, 6, 0, 5, 2 };
+		for( int i = 0; i < expected.length; i++ ) {
+			assertEquals( expected[ i ], previousIndexes[ i ] );
+			assertEquals( expected[ i ], buffer.getIntensity( i ), 0 );
+		}
+
+		assertTrue( buffer.isSortedByMassToCharge() );
+		assertSame( peaks.get( 4 ), buffer.toSpectrum().getPeaks().get( 0 ) );
+	}
+
+}
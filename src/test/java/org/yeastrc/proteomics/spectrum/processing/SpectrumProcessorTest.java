@@ -0,0 +1,67 @@
+package org.yeastrc.proteomics.spectrum.processing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.yeastrc.proteomics.spectrum.object.ColumnarSpectrum;
+import org.yeastrc.proteomics.spectrum.object.Peak;
+import org.yeastrc.proteomics.spectrum.object.RandomSpectra;
+import org.yeastrc.proteomics.spectrum.object.Spectrum;
+
+public class SpectrumProcessorTest {
+
+	/**
+	 * A spectrum with coarse m/z and intensity values, so there are many ties
+	 */
+	/**
+	 * Process a columnar spectrum both natively and through the Spectrum conversion
+	 */
+	static void assertSameAsSpectrum( SpectrumProcessor processor, ColumnarSpectrum spectrum ) throws Exception {
+
+		ColumnarSpectrum expected = ColumnarSpectrum.fromSpectrum( processor.processSpectrum( spectrum.toSpectrum() ) );
+
+		assertEquals( expected, processor.processSpectrum( spectrum ) );
+	}
+
+	@Test
+	public void columnarSameAsSpectrum() throws Exception {
+
+		Random random = new Random( 29 );
+
+		SpectrumProcessor[] processors = {
+				SimpleSpectrumDenoiser.createInstance( 50 ),
+				SimpleSpectrumDenoiser.createInstance( 0.01 ),
+				SimpleSpectrumDenoiser.createInstance( 30, 0.005 ),
+				BinnedSpectrumDenoiser.getInstance( 100, 6 ),
+				BinnedSpectrumDenoiser.getInstance( 7, 2 ),
+		};
+
+		for( int i = 0; i < 50; i++ ) {
+
+			ColumnarSpectrum spectrum = ColumnarSpectrum.fromSpectrum( RandomSpectra.getRandomSpectrum( random, 1 + random.nextInt( 400 ), 2000, 0.25, 20, false ) );
+
+			for( SpectrumProcessor processor : processors )
+				assertSameAsSpectrum( processor, spectrum );
+		}
+	}
+
+	@Test
+	public void defaultConversion() throws Exception {
+
+		// a processor that only handles Spectrum
+		SpectrumProcessor processor = spectrum -> {
+			List<Peak> peaks = new ArrayList<>( spectrum.getPeaks() );
+			peaks.remove( 0 );
+			return new Spectrum( peaks );
+		};
+
+		ColumnarSpectrum spectrum = ColumnarSpectrum.getInstance( new double[] { 100.0, 200.0, 300.0 }, new float[] { 1, 2, 3 } );
+
+		assertEquals( ColumnarSpectrum.getInstance( new double[] { 200.0, 300.0 }, new float[] { 2, 3 } ), processor.processSpectrum( spectrum ) );
+	}
+
+}